@@ -9,13 +9,20 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.websocket.jakarta.server.config.JakartaWebSocketServletContainerInitializer;
 import org.hibernate.cfg.AvailableSettings;
 
 import com.codahale.metrics.json.MetricsModule;
+import com.commafeed.backend.HttpGetter;
+import com.commafeed.backend.VirtualThreadExecutors;
 import com.commafeed.backend.dao.UserDAO;
 import com.commafeed.backend.feed.FeedRefreshEngine;
+import com.commafeed.backend.feed.WebSubService;
 import com.commafeed.backend.model.AbstractModel;
+import com.commafeed.backend.model.ClusterLease;
 import com.commafeed.backend.model.Feed;
 import com.commafeed.backend.model.FeedCategory;
 import com.commafeed.backend.model.FeedEntry;
@@ -26,6 +33,7 @@ import com.commafeed.backend.model.FeedSubscription;
 import com.commafeed.backend.model.User;
 import com.commafeed.backend.model.UserRole;
 import com.commafeed.backend.model.UserSettings;
+import com.commafeed.backend.service.ClusterService;
 import com.commafeed.backend.service.UserService;
 import com.commafeed.backend.service.db.DatabaseStartupService;
 import com.commafeed.backend.service.db.H2MigrationService;
@@ -38,6 +46,7 @@ import com.commafeed.frontend.resource.EntryREST;
 import com.commafeed.frontend.resource.FeedREST;
 import com.commafeed.frontend.resource.ServerREST;
 import com.commafeed.frontend.resource.UserREST;
+import com.commafeed.frontend.resource.WebSubREST;
 import com.commafeed.frontend.resource.fever.FeverREST;
 import com.commafeed.frontend.servlet.CustomCssServlet;
 import com.commafeed.frontend.servlet.CustomJsServlet;
@@ -77,7 +86,9 @@ import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.websocket.server.ServerEndpointConfig;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public class CommaFeedApplication extends Application<CommaFeedConfiguration> {
 
 	public static final String USERNAME_ADMIN = "admin";
@@ -123,7 +134,7 @@ public class CommaFeedApplication extends Application<CommaFeedConfiguration> {
 
 		bootstrap.addBundle(hibernateBundle = new HibernateBundle<>(AbstractModel.class, Feed.class, FeedCategory.class, FeedEntry.class,
 				FeedEntryContent.class, FeedEntryStatus.class, FeedEntryTag.class, FeedSubscription.class, User.class, UserRole.class,
-				UserSettings.class) {
+				UserSettings.class, ClusterLease.class) {
 			@Override
 			public DataSourceFactory getDataSourceFactory(CommaFeedConfiguration configuration) {
 				DataSourceFactory factory = configuration.getDataSourceFactory();
@@ -189,6 +200,23 @@ public class CommaFeedApplication extends Application<CommaFeedConfiguration> {
 		// guice init
 		Injector injector = Guice.createInjector(new CommaFeedModule(hibernateBundle.getSessionFactory(), config, environment.metrics()));
 
+		// handle http requests on virtual threads, the thread pool of jetty is created after this method and configured when the server
+		// starts
+		if (Boolean.TRUE.equals(config.getApplicationSettings().getVirtualThreads())) {
+			if (VirtualThreadExecutors.isSupported()) {
+				environment.lifecycle().addEventListener(new LifeCycle.Listener() {
+					@Override
+					public void lifeCycleStarting(LifeCycle event) {
+						if (event instanceof Server server && server.getThreadPool() instanceof QueuedThreadPool threadPool) {
+							threadPool.setVirtualThreadsExecutor(VirtualThreadExecutors.newVirtualThreadPerTaskExecutor());
+						}
+					}
+				});
+			} else {
+				log.warn("virtual threads are not supported by this jvm, http requests will be handled by platform threads");
+			}
+		}
+
 		// session management
 		environment.servlets().setSessionHandler(config.getSessionHandlerFactory().build(config.getDataSourceFactory()));
 
@@ -208,6 +236,7 @@ public class CommaFeedApplication extends Application<CommaFeedConfiguration> {
 		environment.jersey().register(injector.getInstance(ServerREST.class));
 		environment.jersey().register(injector.getInstance(UserREST.class));
 		environment.jersey().register(injector.getInstance(FeverREST.class));
+		environment.jersey().register(injector.getInstance(WebSubREST.class));
 
 		// Servlets
 		environment.servlets().addServlet("next", injector.getInstance(NextUnreadServlet.class)).addMapping("/next");
@@ -236,16 +265,26 @@ public class CommaFeedApplication extends Application<CommaFeedConfiguration> {
 				.scheduledExecutorService("task-scheduler", true)
 				.threads(tasks.size())
 				.build();
+		ClusterService clusterService = injector.getInstance(ClusterService.class);
 		for (ScheduledTask task : tasks) {
-			task.register(executor);
+			task.register(executor, clusterService);
 		}
 
 		// database init/changelogs
 		environment.lifecycle().manage(injector.getInstance(DatabaseStartupService.class));
 
+		// leader election between the nodes sharing the database
+		environment.lifecycle().manage(clusterService);
+
+		// http clients, registered before their users so that they are closed after them
+		environment.lifecycle().manage(injector.getInstance(HttpGetter.class));
+
 		// start feed fetching engine
 		environment.lifecycle().manage(injector.getInstance(FeedRefreshEngine.class));
 
+		// websub subscription requests
+		environment.lifecycle().manage(injector.getInstance(WebSubService.class));
+
 		// prevent caching index.html, so that the webapp is always up to date
 		environment.servlets()
 				.addFilter("index-cache-busting-filter", new CacheBustingFilter())
@@ -12,8 +12,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.dropwizard.core.Configuration;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.DataSize;
 import io.dropwizard.util.Duration;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -104,6 +106,81 @@ public class CommaFeedConfiguration extends Configuration {
 		@Valid
 		private Integer databaseUpdateThreads;
 
+		@NotNull
+		@Min(1)
+		@Valid
+		private Integer databaseUpdateBatchSize = 1;
+
+		@NotNull
+		@Valid
+		private Duration databaseUpdateBatchWindow = Duration.milliseconds(100);
+
+		@NotNull
+		@Valid
+		private Boolean databaseUpdateLanes = false;
+
+		@NotNull
+		@Valid
+		private Boolean adaptiveThreadPools = false;
+
+		@NotNull
+		@Valid
+		private Boolean virtualThreads = false;
+
+		@NotNull
+		@Min(1)
+		@Valid
+		private Integer maxBackgroundThreads = 50;
+
+		@NotNull
+		@Min(1)
+		@Valid
+		private Integer maxDatabaseUpdateThreads = 10;
+
+		@NotNull
+		@Min(0)
+		@Valid
+		private Integer maxConcurrentFetchesPerHost = 0;
+
+		@NotNull
+		@Valid
+		private Duration minDelayBetweenFetchesPerHost = Duration.milliseconds(0);
+
+		@NotNull
+		@Min(0)
+		@Valid
+		private Integer maxParkedFeedsPerHost = 1000;
+
+		@NotNull
+		@Min(0)
+		@Valid
+		private Integer circuitBreakerFailureThreshold = 0;
+
+		@NotNull
+		@Valid
+		private Duration circuitBreakerOpenDuration = Duration.minutes(5);
+
+		@NotNull
+		@Valid
+		private Boolean adaptiveFetchTimeout = false;
+
+		@NotNull
+		@Valid
+		private DataSize maxResponseSize = DataSize.megabytes(20);
+
+		@NotNull
+		@Valid
+		private Boolean asyncFetch = false;
+
+		@NotNull
+		@Min(1)
+		@Valid
+		private Integer maxConcurrentAsyncFetches = 1000;
+
+		@NotNull
+		@Valid
+		private Boolean fetchCoalescing = false;
+
 		@NotNull
 		@Positive
 		@Valid
@@ -159,6 +236,62 @@ public class CommaFeedConfiguration extends Configuration {
 		@Valid
 		private Integer refreshIntervalMinutes;
 
+		@NotNull
+		@Valid
+		private Boolean statisticalRefreshInterval = false;
+
+		@NotNull
+		@Min(1)
+		@Max(99)
+		@Valid
+		private Integer newEntryProbabilityPercent = 50;
+
+		@NotNull
+		@Valid
+		private Boolean honorServerDirectedDelays = false;
+
+		@NotNull
+		@Valid
+		private Duration maxServerDirectedDelay = Duration.hours(24);
+
+		@NotNull
+		@Valid
+		private Boolean webSubEnabled = false;
+
+		@NotNull
+		@Valid
+		private Duration pushedFeedRefreshInterval = Duration.hours(12);
+
+		@NotNull
+		@Valid
+		private Boolean refreshPriorities = false;
+
+		@NotNull
+		@Min(1)
+		@Valid
+		private Integer popularFeedSubscribers = 10;
+
+		@NotNull
+		@Min(0)
+		@Valid
+		private Integer maxConcurrentRefreshesPerUser = 0;
+
+		@NotNull
+		@Valid
+		private Boolean streamingFeedParser = false;
+
+		@NotNull
+		@Valid
+		private Boolean inMemoryRefreshScheduler = false;
+
+		@NotNull
+		@Valid
+		private Boolean clustered = false;
+
+		@NotNull
+		@Valid
+		private Duration leaseDuration = Duration.minutes(5);
+
 		@NotNull
 		@Valid
 		private CacheType cache;
@@ -1,36 +1,67 @@
 package com.commafeed.backend;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
 import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.entity.UrlEncodedFormEntity;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.client5.http.protocol.RedirectLocations;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.NameValuePair;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
 import org.apache.hc.core5.util.TimeValue;
 import org.apache.hc.core5.util.Timeout;
 import org.eclipse.jetty.http.HttpStatus;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.commafeed.CommaFeedConfiguration;
 import com.google.common.collect.Iterables;
 import com.google.common.net.HttpHeaders;
 
+import io.dropwizard.lifecycle.Managed;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.Getter;
@@ -40,20 +71,70 @@ import nl.altindag.ssl.SSLFactory;
 import nl.altindag.ssl.apache5.util.Apache5SslUtils;
 
 /**
- * Smart HTTP getter: handles gzip, ssl, last modified and etag headers
+ * Smart HTTP getter: handles gzip, ssl, last modified and etag headers, and reports the cache and retry-after headers
+ *
+ * Response bodies larger than the configured maximum size are rejected while they are being read.
+ *
+ * Feeds can also be fetched with a non-blocking client, keeping a lot of requests in flight with a few I/O threads.
  *
  */
 @Singleton
 @Slf4j
-public class HttpGetter {
+public class HttpGetter implements Managed {
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	// buffers that grew larger than this while reading a big response are not kept for the next response
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+	// largest array size supported by all jvms
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
+	// buffers kept between responses, more are allocated if more responses are read at the same time
+	private static final int MAX_POOLED_BUFFERS = 32;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
 	private final CloseableHttpClient client;
+	// only created if async fetching is enabled
+	private final CloseableHttpAsyncClient asyncClient;
+	private final int maxResponseSize;
+	// buffers in which response bodies are read, reused from one response to the next whatever the thread reading the response
+	private final Queue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+	private final Timer connect;
+	private final Timer download;
+	private final Histogram fetchBytes;
+	private final Meter responseTooLarge;
 
 	@Inject
-	public HttpGetter(CommaFeedConfiguration config) {
+	public HttpGetter(CommaFeedConfiguration config, MetricRegistry metrics) {
 		String userAgent = Optional.ofNullable(config.getApplicationSettings().getUserAgent())
 				.orElseGet(() -> String.format("CommaFeed/%s (https://github.com/Athou/commafeed)", config.getVersion()));
-		this.client = newClient(userAgent, config.getApplicationSettings().getBackgroundThreads());
+		this.connectionManager = newConnectionManager(config.getApplicationSettings().getBackgroundThreads());
+		this.client = newClient(userAgent, connectionManager);
+		this.asyncClient = Boolean.TRUE.equals(config.getApplicationSettings().getAsyncFetch())
+				? newAsyncClient(userAgent, config.getApplicationSettings().getMaxConcurrentAsyncFetches())
+				: null;
+		this.maxResponseSize = (int) Math.min(config.getApplicationSettings().getMaxResponseSize().toBytes(), MAX_ARRAY_SIZE);
+		// from the start of the request until the response headers are received, including dns resolution and connection
+		this.connect = metrics.timer(MetricRegistry.name(getClass(), "connect"));
+		// reading the response body
+		this.download = metrics.timer(MetricRegistry.name(getClass(), "download"));
+		// size of the response bodies, after decompression
+		this.fetchBytes = metrics.histogram(MetricRegistry.name(getClass(), "fetchBytes"));
+		this.responseTooLarge = metrics.meter(MetricRegistry.name(getClass(), "responseTooLarge"));
+	}
+
+	/**
+	 * resize the connection pool, should follow the number of threads using this getter
+	 */
+	public void setMaxConnections(int maxConnections) {
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		connectionManager.setMaxTotal(maxConnections);
+	}
+
+	@Override
+	public void stop() {
+		if (asyncClient != null) {
+			asyncClient.close(CloseMode.GRACEFUL);
+		}
 	}
 
 	public HttpResult getBinary(String url, int timeout) throws IOException, NotModifiedException {
@@ -83,79 +164,322 @@ public class HttpGetter {
 			request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
 		}
 
-		HttpClientContext context = HttpClientContext.create();
-		context.setRequestConfig(RequestConfig.custom().setResponseTimeout(timeout, TimeUnit.MILLISECONDS).build());
+		HttpClientContext context = newContext(timeout);
 
-		HttpResponse response = client.execute(request, context, resp -> {
-			int code = resp.getCode();
-			String lastModifiedHeader = Optional.ofNullable(resp.getFirstHeader(HttpHeaders.LAST_MODIFIED))
-					.map(NameValuePair::getValue)
-					.map(StringUtils::trimToNull)
-					.orElse(null);
-			String eTagHeader = Optional.ofNullable(resp.getFirstHeader(HttpHeaders.ETAG))
-					.map(NameValuePair::getValue)
-					.map(StringUtils::trimToNull)
-					.orElse(null);
-
-			byte[] content = resp.getEntity() == null ? null : EntityUtils.toByteArray(resp.getEntity());
-			String contentType = Optional.ofNullable(resp.getEntity()).map(HttpEntity::getContentType).orElse(null);
-			String urlAfterRedirect = Optional.ofNullable(context.getRedirectLocations())
-					.map(RedirectLocations::getAll)
-					.map(l -> Iterables.getLast(l, null))
-					.map(URI::toString)
-					.orElse(url);
+		long requestStart = System.nanoTime();
+		FetchedResponse response = client.execute(request, context, resp -> {
+			long downloadStart = System.nanoTime();
+			connect.update(downloadStart - requestStart, TimeUnit.NANOSECONDS);
 
-			return new HttpResponse(code, lastModifiedHeader, eTagHeader, content, contentType, urlAfterRedirect);
+			byte[] content = resp.getEntity() == null ? null : toByteArray(resp.getEntity());
+			download.update(System.nanoTime() - downloadStart, TimeUnit.NANOSECONDS);
+			String contentType = Optional.ofNullable(resp.getEntity()).map(HttpEntity::getContentType).orElse(null);
+			return newFetchedResponse(url, context, resp, content, contentType);
 		});
 
+		return toResult(response, lastModified, eTag, start);
+	}
+
+	/**
+	 * same as {@link #getBinary(String, String, String, int)} but the request is sent without blocking the calling thread. The returned
+	 * future is completed by one of the few I/O threads of the async client, which should not be used to process the response.
+	 *
+	 * Only available if async fetching is enabled.
+	 */
+	public CompletableFuture<HttpResult> getBinaryAsync(String url, String lastModified, String eTag, int timeout) {
+		if (asyncClient == null) {
+			return CompletableFuture.failedFuture(new IllegalStateException("async fetching is disabled"));
+		}
+
+		log.debug("fetching {} asynchronously", url);
+
+		CompletableFuture<HttpResult> future = new CompletableFuture<>();
+		try {
+			long start = System.currentTimeMillis();
+			AsyncRequestBuilder request = AsyncRequestBuilder.get(url);
+			if (lastModified != null) {
+				request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+			}
+			if (eTag != null) {
+				request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+			}
+
+			HttpClientContext context = newContext(timeout);
+			asyncClient.execute(request.build(), new BoundedResponseConsumer(url, context), context, new FutureCallback<>() {
+				@Override
+				public void completed(FetchedResponse response) {
+					try {
+						future.complete(toResult(response, lastModified, eTag, start));
+					} catch (IOException | NotModifiedException e) {
+						future.completeExceptionally(e);
+					}
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					future.completeExceptionally(ex);
+				}
+
+				@Override
+				public void cancelled() {
+					future.cancel(false);
+				}
+			});
+		} catch (RuntimeException e) {
+			// invalid url
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private FetchedResponse newFetchedResponse(String url, HttpClientContext context, HttpResponse resp, byte[] content,
+			String contentType) {
+		String lastModifiedHeader = Optional.ofNullable(resp.getFirstHeader(HttpHeaders.LAST_MODIFIED))
+				.map(NameValuePair::getValue)
+				.map(StringUtils::trimToNull)
+				.orElse(null);
+		String eTagHeader = Optional.ofNullable(resp.getFirstHeader(HttpHeaders.ETAG))
+				.map(NameValuePair::getValue)
+				.map(StringUtils::trimToNull)
+				.orElse(null);
+		String urlAfterRedirect = Optional.ofNullable(context.getRedirectLocations())
+				.map(RedirectLocations::getAll)
+				.map(l -> Iterables.getLast(l, null))
+				.map(URI::toString)
+				.orElse(url);
+
+		return new FetchedResponse(resp.getCode(), lastModifiedHeader, eTagHeader, content, contentType, urlAfterRedirect,
+				getValidFor(resp), getRetryAfter(resp));
+	}
+
+	private HttpResult toResult(FetchedResponse response, String lastModified, String eTag, long start)
+			throws HttpResponseException, NotModifiedException {
 		int code = response.getCode();
 		if (code == HttpStatus.NOT_MODIFIED_304) {
-			throw new NotModifiedException("'304 - not modified' http code received");
+			throw new NotModifiedException("'304 - not modified' http code received", null, null, response.getValidFor());
 		} else if (code >= 300) {
-			throw new HttpResponseException(code, "Server returned HTTP error code " + code);
+			throw new HttpResponseException(code, "Server returned HTTP error code " + code, response.getRetryAfter());
 		}
 
 		String lastModifiedHeader = response.getLastModifiedHeader();
 		if (lastModifiedHeader != null && lastModifiedHeader.equals(lastModified)) {
-			throw new NotModifiedException("lastModifiedHeader is the same");
+			throw new NotModifiedException("lastModifiedHeader is the same", null, null, response.getValidFor());
 		}
 
 		String eTagHeader = response.getETagHeader();
 		if (eTagHeader != null && eTagHeader.equals(eTag)) {
-			throw new NotModifiedException("eTagHeader is the same");
+			throw new NotModifiedException("eTagHeader is the same", null, null, response.getValidFor());
 		}
 
 		long duration = System.currentTimeMillis() - start;
 		return new HttpResult(response.getContent(), response.getContentType(), lastModifiedHeader, eTagHeader, duration,
-				response.getUrlAfterRedirect());
+				response.getUrlAfterRedirect(), response.getValidFor());
 	}
 
-	private static CloseableHttpClient newClient(String userAgent, int poolSize) {
-		SSLFactory sslFactory = SSLFactory.builder().withUnsafeTrustMaterial().withUnsafeHostnameVerifier().build();
+	private static HttpClientContext newContext(int timeout) {
+		HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(RequestConfig.custom().setResponseTimeout(timeout, TimeUnit.MILLISECONDS).build());
+		return context;
+	}
 
-		List<Header> headers = new ArrayList<>();
-		headers.add(new BasicHeader(HttpHeaders.ACCEPT_LANGUAGE, "en"));
-		headers.add(new BasicHeader(HttpHeaders.PRAGMA, "No-cache"));
-		headers.add(new BasicHeader(HttpHeaders.CACHE_CONTROL, "no-cache"));
+	/**
+	 * reads the body of the response in a pooled buffer, the returned array is a copy of the exact size of the body
+	 *
+	 * @throws ResponseTooLargeException
+	 *             as soon as the body is known to be larger than the maximum size, the rest of the body is not read
+	 */
+	private byte[] toByteArray(HttpEntity entity) throws IOException {
+		// the content length is unknown (-1) if the response is compressed or chunked
+		long contentLength = entity.getContentLength();
+		checkResponseSize(contentLength);
+
+		try (InputStream is = entity.getContent()) {
+			if (is == null) {
+				return null;
+			}
+
+			byte[] buffer = Optional.ofNullable(buffers.poll()).orElseGet(() -> new byte[INITIAL_BUFFER_SIZE]);
+			if (contentLength > buffer.length) {
+				buffer = new byte[(int) contentLength + 1];
+			}
+
+			int length = 0;
+			int read;
+			while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				checkResponseSize(length);
+				if (length == buffer.length) {
+					// one more byte than the maximum size is enough to know that the body is too large
+					buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, maxResponseSize + 1L));
+				}
+			}
+
+			if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+				// the buffer is dropped if the pool is already full
+				buffers.offer(buffer);
+			}
+			fetchBytes.update(length);
+			return Arrays.copyOf(buffer, length);
+		}
+	}
+
+	private void checkResponseSize(long size) throws ResponseTooLargeException {
+		if (size > maxResponseSize) {
+			responseTooLarge.mark();
+			throw new ResponseTooLargeException(size, maxResponseSize);
+		}
+	}
+
+	/**
+	 * sends a form to the given url, the response body is discarded
+	 *
+	 * @return the http status code of the response
+	 */
+	public int postForm(String url, Map<String, String> form, int timeout) throws IOException {
+		List<NameValuePair> params = form.entrySet()
+				.stream()
+				.<NameValuePair> map(e -> new BasicNameValuePair(e.getKey(), e.getValue()))
+				.toList();
+		ClassicHttpRequest request = ClassicRequestBuilder.post(url)
+				.setEntity(new UrlEncodedFormEntity(params, StandardCharsets.UTF_8))
+				.build();
+
+		HttpClientContext context = HttpClientContext.create();
+		context.setRequestConfig(RequestConfig.custom().setResponseTimeout(timeout, TimeUnit.MILLISECONDS).build());
+
+		return client.execute(request, context, resp -> {
+			EntityUtils.consume(resp.getEntity());
+			return resp.getCode();
+		});
+	}
+
+	/**
+	 * how long the response can be considered fresh according to the Cache-Control max-age directive or, if absent, the Expires header
+	 *
+	 * @return null if the response has no freshness information
+	 */
+	static Duration getValidFor(HttpResponse response) {
+		Header cacheControl = response.getFirstHeader(HttpHeaders.CACHE_CONTROL);
+		if (cacheControl != null) {
+			for (String directive : StringUtils.split(cacheControl.getValue(), ',')) {
+				String[] tokens = StringUtils.split(directive.trim(), '=');
+				if (tokens.length == 2 && "max-age".equalsIgnoreCase(tokens[0].trim())) {
+					return parseSeconds(StringUtils.strip(tokens[1].trim(), "\""));
+				}
+			}
+		}
+
+		Header expires = response.getFirstHeader(HttpHeaders.EXPIRES);
+		if (expires != null) {
+			Instant expiration = DateUtils.parseStandardDate(expires.getValue());
+			if (expiration == null) {
+				// invalid dates such as "0" mean that the response is already expired
+				return Duration.ZERO;
+			}
+			return positive(Duration.between(getResponseDate(response), expiration));
+		}
+
+		return null;
+	}
+
+	/**
+	 * how long the server asks us to wait before sending another request, according to the Retry-After header
+	 *
+	 * @return null if the response has no Retry-After header
+	 */
+	static Duration getRetryAfter(HttpResponse response) {
+		Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+		if (retryAfter == null) {
+			return null;
+		}
+
+		String value = retryAfter.getValue().trim();
+		if (StringUtils.isNumeric(value)) {
+			return parseSeconds(value);
+		}
+
+		Instant date = DateUtils.parseStandardDate(value);
+		return date == null ? null : positive(Duration.between(getResponseDate(response), date));
+	}
 
-		PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
-				.setSSLSocketFactory(Apache5SslUtils.toSocketFactory(sslFactory))
-				.setDefaultConnectionConfig(
-						ConnectionConfig.custom().setConnectTimeout(Timeout.ofSeconds(5)).setTimeToLive(TimeValue.ofSeconds(30)).build())
+	private static Instant getResponseDate(HttpResponse response) {
+		// compare dates to the date of the server, in case its clock is not synchronized with ours
+		return Optional.ofNullable(response.getFirstHeader(HttpHeaders.DATE))
+				.map(NameValuePair::getValue)
+				.map(DateUtils::parseStandardDate)
+				.orElseGet(Instant::now);
+	}
+
+	private static Duration parseSeconds(String value) {
+		try {
+			return positive(Duration.ofSeconds(Long.parseLong(value)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Duration positive(Duration duration) {
+		return duration.isNegative() ? Duration.ZERO : duration;
+	}
+
+	private static PoolingHttpClientConnectionManager newConnectionManager(int poolSize) {
+		return PoolingHttpClientConnectionManagerBuilder.create()
+				.setSSLSocketFactory(Apache5SslUtils.toSocketFactory(newSslFactory()))
+				.setDefaultConnectionConfig(newConnectionConfig())
 				.setMaxConnPerRoute(poolSize)
 				.setMaxConnTotal(poolSize)
 				.build();
+	}
 
+	private static CloseableHttpClient newClient(String userAgent, PoolingHttpClientConnectionManager connectionManager) {
 		return HttpClientBuilder.create()
 				.useSystemProperties()
 				.disableAutomaticRetries()
 				.disableCookieManagement()
 				.setUserAgent(userAgent)
-				.setDefaultHeaders(headers)
+				.setDefaultHeaders(newDefaultHeaders())
 				.setConnectionManager(connectionManager)
 				.build();
 	}
 
+	private static CloseableHttpAsyncClient newAsyncClient(String userAgent, int poolSize) {
+		PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+				.setTlsStrategy(Apache5SslUtils.toTlsStrategy(newSslFactory()))
+				// use http/2 if the server supports it, all the requests to the host are then multiplexed on a single connection
+				.setDefaultTlsConfig(TlsConfig.custom().setVersionPolicy(HttpVersionPolicy.NEGOTIATE).build())
+				.setDefaultConnectionConfig(newConnectionConfig())
+				.setMaxConnPerRoute(poolSize)
+				.setMaxConnTotal(poolSize)
+				.build();
+
+		CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+				.useSystemProperties()
+				.disableAutomaticRetries()
+				.disableCookieManagement()
+				.setUserAgent(userAgent)
+				.setDefaultHeaders(newDefaultHeaders())
+				.setConnectionManager(connectionManager)
+				.build();
+		client.start();
+		return client;
+	}
+
+	private static SSLFactory newSslFactory() {
+		return SSLFactory.builder().withUnsafeTrustMaterial().withUnsafeHostnameVerifier().build();
+	}
+
+	private static ConnectionConfig newConnectionConfig() {
+		return ConnectionConfig.custom().setConnectTimeout(Timeout.ofSeconds(5)).setTimeToLive(TimeValue.ofSeconds(30)).build();
+	}
+
+	private static List<Header> newDefaultHeaders() {
+		List<Header> headers = new ArrayList<>();
+		headers.add(new BasicHeader(HttpHeaders.ACCEPT_LANGUAGE, "en"));
+		headers.add(new BasicHeader(HttpHeaders.PRAGMA, "No-cache"));
+		headers.add(new BasicHeader(HttpHeaders.CACHE_CONTROL, "no-cache"));
+		return headers;
+	}
+
 	@Getter
 	public static class NotModifiedException extends Exception {
 		private static final long serialVersionUID = 1L;
@@ -170,14 +494,24 @@ public class HttpGetter {
 		 */
 		private final String newEtagHeader;
 
+		/**
+		 * how long the server considers its response fresh, or null
+		 */
+		private final Duration validFor;
+
 		public NotModifiedException(String message) {
 			this(message, null, null);
 		}
 
 		public NotModifiedException(String message, String newLastModifiedHeader, String newEtagHeader) {
+			this(message, newLastModifiedHeader, newEtagHeader, null);
+		}
+
+		public NotModifiedException(String message, String newLastModifiedHeader, String newEtagHeader, Duration validFor) {
 			super(message);
 			this.newLastModifiedHeader = newLastModifiedHeader;
 			this.newEtagHeader = newEtagHeader;
+			this.validFor = validFor;
 		}
 	}
 
@@ -187,22 +521,120 @@ public class HttpGetter {
 
 		private final int code;
 
+		/**
+		 * how long the server asks us to wait before the next request (e.g. on 429 or 503), or null
+		 */
+		private final Duration retryAfter;
+
 		public HttpResponseException(int code, String message) {
+			this(code, message, null);
+		}
+
+		public HttpResponseException(int code, String message, Duration retryAfter) {
 			super(message);
 			this.code = code;
+			this.retryAfter = retryAfter;
 		}
 
 	}
 
+	@Getter
+	public static class ResponseTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * the size of the body announced by the server, or the number of bytes read before giving up
+		 */
+		private final long size;
+
+		public ResponseTooLargeException(long size, long maxSize) {
+			super(String.format("Response body is larger than the maximum size of %d bytes (%d bytes)", maxSize, size));
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Collects the body of a response of the async client, rejecting bodies larger than the maximum response size. The body is received in
+	 * chunks by the I/O threads, interleaved with the chunks of the other responses.
+	 */
+	private class BoundedResponseConsumer extends AbstractBinResponseConsumer<FetchedResponse> {
+
+		private static final int INITIAL_SIZE = 8 * 1024;
+
+		private final String url;
+		private final HttpClientContext context;
+		private final long requestStart;
+
+		private long downloadStart;
+		private HttpResponse response;
+		private byte[] buffer;
+		private int length;
+
+		BoundedResponseConsumer(String url, HttpClientContext context) {
+			this.url = url;
+			this.context = context;
+			this.requestStart = System.nanoTime();
+		}
+
+		@Override
+		protected void start(HttpResponse response, ContentType contentType) throws IOException {
+			this.downloadStart = System.nanoTime();
+			connect.update(downloadStart - requestStart, TimeUnit.NANOSECONDS);
+			this.response = response;
+
+			long contentLength = Optional.ofNullable(response.getFirstHeader(HttpHeaders.CONTENT_LENGTH))
+					.map(h -> NumberUtils.toLong(h.getValue(), -1))
+					.orElse(-1L);
+			checkResponseSize(contentLength);
+			// the content type is null if the response has no body, the content is then null like with the blocking client
+			// the announced length is not trusted for the initial size, the buffer grows as the body is received
+			int initialSize = contentLength >= 0 ? (int) Math.min(contentLength, INITIAL_SIZE) : INITIAL_SIZE;
+			this.buffer = contentType == null ? null : new byte[initialSize];
+		}
+
+		@Override
+		protected int capacityIncrement() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+			int remaining = src.remaining();
+			checkResponseSize((long) length + remaining);
+			if (length + remaining > buffer.length) {
+				long grown = Math.max(2L * buffer.length, length + remaining);
+				buffer = Arrays.copyOf(buffer, (int) Math.min(grown, maxResponseSize));
+			}
+			src.get(buffer, length, remaining);
+			length += remaining;
+		}
+
+		@Override
+		protected FetchedResponse buildResult() {
+			download.update(System.nanoTime() - downloadStart, TimeUnit.NANOSECONDS);
+			fetchBytes.update(length);
+			byte[] content = buffer == null || length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+			String contentType = Optional.ofNullable(response.getFirstHeader(HttpHeaders.CONTENT_TYPE)).map(Header::getValue).orElse(null);
+			return newFetchedResponse(url, context, response, content, contentType);
+		}
+
+		@Override
+		public void releaseResources() {
+			buffer = null;
+		}
+	}
+
 	@Getter
 	@RequiredArgsConstructor
-	private static class HttpResponse {
+	private static class FetchedResponse {
 		private final int code;
 		private final String lastModifiedHeader;
 		private final String eTagHeader;
 		private final byte[] content;
 		private final String contentType;
 		private final String urlAfterRedirect;
+		private final Duration validFor;
+		private final Duration retryAfter;
 	}
 
 	@Getter
@@ -214,6 +646,10 @@ public class HttpGetter {
 		private final String eTag;
 		private final long duration;
 		private final String urlAfterRedirect;
+		/**
+		 * how long the server considers its response fresh, or null
+		 */
+		private final Duration validFor;
 	}
 
 }
@@ -0,0 +1,45 @@
+package com.commafeed.backend;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Virtual threads are only available on Java 21 and later, the code is compiled for Java 17 so they are created by reflection
+ */
+@UtilityClass
+public class VirtualThreadExecutors {
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+	public static boolean isSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * @return an executor starting a new virtual thread for each task
+	 * @throws IllegalStateException
+	 *             if virtual threads are not supported by the running jvm
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isSupported()) {
+			throw new IllegalStateException("virtual threads require Java 21 or later");
+		}
+
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("could not create virtual thread executor", e);
+		}
+	}
+
+	private static Method findNewVirtualThreadPerTaskExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
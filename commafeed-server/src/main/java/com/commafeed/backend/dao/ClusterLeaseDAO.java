@@ -0,0 +1,41 @@
+package com.commafeed.backend.dao;
+
+import java.time.Instant;
+
+import org.hibernate.SessionFactory;
+
+import com.commafeed.backend.model.ClusterLease;
+import com.commafeed.backend.model.QClusterLease;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+@Singleton
+public class ClusterLeaseDAO extends GenericDAO<ClusterLease> {
+
+	private final QClusterLease lease = QClusterLease.clusterLease;
+
+	@Inject
+	public ClusterLeaseDAO(SessionFactory sessionFactory) {
+		super(sessionFactory);
+	}
+
+	/**
+	 * acquires or renews the lease, the conditional update makes sure only one node can hold the lease at a time
+	 *
+	 * @return true if the lease is now held by the owner
+	 */
+	public boolean tryAcquire(String name, String owner, Instant expiration) {
+		Instant now = Instant.now();
+		long updated = updateQuery(lease).set(lease.owner, owner)
+				.set(lease.expiration, expiration)
+				.where(lease.name.eq(name), lease.owner.eq(owner).or(lease.owner.isNull()).or(lease.expiration.lt(now)))
+				.execute();
+		return updated > 0;
+	}
+
+	public void release(String name, String owner) {
+		updateQuery(lease).setNull(lease.owner).setNull(lease.expiration).where(lease.name.eq(name), lease.owner.eq(owner)).execute();
+	}
+
+}
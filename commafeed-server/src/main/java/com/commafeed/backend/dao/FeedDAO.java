@@ -1,7 +1,10 @@
 package com.commafeed.backend.dao;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.SessionFactory;
@@ -9,6 +12,9 @@ import org.hibernate.SessionFactory;
 import com.commafeed.backend.model.Feed;
 import com.commafeed.backend.model.QFeed;
 import com.commafeed.backend.model.QFeedSubscription;
+import com.google.common.collect.Iterables;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.impl.JPAQuery;
 
@@ -18,6 +24,8 @@ import jakarta.inject.Singleton;
 @Singleton
 public class FeedDAO extends GenericDAO<Feed> {
 
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
 	private final QFeed feed = QFeed.feed;
 	private final QFeedSubscription subscription = QFeedSubscription.feedSubscription;
 
@@ -26,8 +34,84 @@ public class FeedDAO extends GenericDAO<Feed> {
 		super(sessionFactory);
 	}
 
-	public List<Feed> findNextUpdatable(int count, Instant lastLoginThreshold) {
-		JPAQuery<Feed> query = query().selectFrom(feed).where(feed.disabledUntil.isNull().or(feed.disabledUntil.lt(Instant.now())));
+	public List<Feed> findNextUpdatable(int count, Instant lastLoginThreshold, FeedFilter filter) {
+		JPAQuery<Feed> query = query().selectFrom(feed).where(isDue(Instant.now()));
+		filterByLastLogin(query, lastLoginThreshold);
+		filter(query, filter);
+		return query.orderBy(feed.disabledUntil.asc()).limit(count).fetch();
+	}
+
+	/**
+	 * claims the next feeds to refresh for the given node, when several nodes share the same database.
+	 *
+	 * The candidates are claimed with a conditional update that only succeeds for feeds that are still due and not already claimed by
+	 * another node, the feeds that were claimed or refreshed by another node in the meantime are not returned.
+	 */
+	public List<Feed> claimNextUpdatable(int count, Instant lastLoginThreshold, FeedFilter filter, String owner, Instant leaseExpiration,
+			Instant nextUpdateDate) {
+		Instant now = Instant.now();
+		JPAQuery<Long> query = query().select(feed.id).from(feed).where(isDue(now), isNotLeased(now));
+		filterByLastLogin(query, lastLoginThreshold);
+		filter(query, filter);
+		List<Long> candidates = query.orderBy(feed.disabledUntil.asc()).limit(count).fetch();
+		if (candidates.isEmpty()) {
+			return List.of();
+		}
+
+		long claimed = updateQuery(feed).set(feed.leaseOwner, owner)
+				.set(feed.leaseExpiration, leaseExpiration)
+				.set(feed.disabledUntil, nextUpdateDate)
+				.where(feed.id.in(candidates), isDue(now), isNotLeased(now))
+				.execute();
+		if (claimed == 0) {
+			return List.of();
+		}
+
+		return query().selectFrom(feed).where(feed.id.in(candidates), feed.leaseOwner.eq(owner)).fetch();
+	}
+
+	/**
+	 * extends the claim of the owner on feeds it has not refreshed yet, feeds that were claimed by another node are left untouched
+	 *
+	 * @return the number of feeds whose claim was extended
+	 */
+	public long renewLeases(Collection<Long> feedIds, String owner, Instant leaseExpiration) {
+		long renewed = 0;
+		for (List<Long> chunk : Iterables.partition(feedIds, IN_CLAUSE_CHUNK_SIZE)) {
+			renewed += updateQuery(feed).set(feed.leaseExpiration, leaseExpiration)
+					.where(feed.id.in(chunk), feed.leaseOwner.eq(owner))
+					.execute();
+		}
+		return renewed;
+	}
+
+	private BooleanExpression isDue(Instant now) {
+		return feed.disabledUntil.isNull().or(feed.disabledUntil.lt(now));
+	}
+
+	private BooleanExpression isNotLeased(Instant now) {
+		return feed.leaseExpiration.isNull().or(feed.leaseExpiration.lt(now));
+	}
+
+	/**
+	 * returns the next refresh date of all feeds, used to initialize the in-memory refresh scheduler
+	 */
+	public Map<Long, Instant> findNextRefreshDates(Instant lastLoginThreshold) {
+		JPAQuery<Tuple> query = query().select(feed.id, feed.disabledUntil).from(feed);
+		filterByLastLogin(query, lastLoginThreshold);
+
+		Map<Long, Instant> dates = new HashMap<>();
+		for (Tuple tuple : query.fetch()) {
+			dates.put(tuple.get(feed.id), tuple.get(feed.disabledUntil));
+		}
+		return dates;
+	}
+
+	public List<Feed> findByIds(List<Long> ids) {
+		return query().selectFrom(feed).where(feed.id.in(ids)).fetch();
+	}
+
+	private void filterByLastLogin(JPAQuery<?> query, Instant lastLoginThreshold) {
 		if (lastLoginThreshold != null) {
 			query.where(JPAExpressions.selectOne()
 					.from(subscription)
@@ -35,8 +119,21 @@ public class FeedDAO extends GenericDAO<Feed> {
 					.where(subscription.feed.id.eq(feed.id), subscription.user.lastLogin.gt(lastLoginThreshold))
 					.exists());
 		}
+	}
 
-		return query.orderBy(feed.disabledUntil.asc()).limit(count).fetch();
+	private void filter(JPAQuery<?> query, FeedFilter filter) {
+		if (filter.subscriberIds() != null) {
+			query.where(JPAExpressions.selectOne()
+					.from(subscription)
+					.where(subscription.feed.id.eq(feed.id), subscription.user.id.in(filter.subscriberIds()))
+					.exists());
+		}
+		if (filter.minSubscribers() != null) {
+			query.where(JPAExpressions.select(subscription.count())
+					.from(subscription)
+					.where(subscription.feed.id.eq(feed.id))
+					.goe(filter.minSubscribers().longValue()));
+		}
 	}
 
 	public void setDisabledUntil(List<Long> feedIds, Instant date) {
@@ -53,8 +150,39 @@ public class FeedDAO extends GenericDAO<Feed> {
 				.orElse(null);
 	}
 
+	public List<Feed> findByPushTopicHash(String pushTopicHash) {
+		return query().selectFrom(feed).where(feed.pushTopicHash.eq(pushTopicHash)).fetch();
+	}
+
+	public void setPushSecret(Long feedId, String pushSecret) {
+		updateQuery(feed).set(feed.pushSecret, pushSecret).where(feed.id.eq(feedId)).execute();
+	}
+
+	public void setPushVerificationDeadline(Long feedId, Instant pushVerificationDeadline) {
+		updateQuery(feed).set(feed.pushVerificationDeadline, pushVerificationDeadline).where(feed.id.eq(feedId)).execute();
+	}
+
+	public void setPushSubscriptionVerified(List<Long> feedIds, Instant pushLeaseExpiration) {
+		updateQuery(feed).set(feed.pushLeaseExpiration, pushLeaseExpiration)
+				.setNull(feed.pushVerificationDeadline)
+				.where(feed.id.in(feedIds))
+				.execute();
+	}
+
 	public List<Feed> findWithoutSubscriptions(int max) {
 		QFeedSubscription sub = QFeedSubscription.feedSubscription;
 		return query().selectFrom(feed).where(JPAExpressions.selectOne().from(sub).where(sub.feed.eq(feed)).notExists()).limit(max).fetch();
 	}
+
+	/**
+	 * restricts the feeds to refresh to a class of feeds, so that the most important feeds are refreshed first
+	 *
+	 * @param subscriberIds
+	 *            only feeds with at least one of these subscribers, ignored if null
+	 * @param minSubscribers
+	 *            only feeds with at least that many subscribers, ignored if null
+	 */
+	public record FeedFilter(Collection<Long> subscriberIds, Integer minSubscribers) {
+		public static final FeedFilter NONE = new FeedFilter(null, null);
+	}
 }
@@ -1,12 +1,17 @@
 package com.commafeed.backend.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
 import org.hibernate.SessionFactory;
 
 import com.commafeed.backend.model.FeedEntryContent;
 import com.commafeed.backend.model.QFeedEntry;
 import com.commafeed.backend.model.QFeedEntryContent;
+import com.google.common.collect.Iterables;
+import com.querydsl.core.Tuple;
 import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.JPQLSubQuery;
 
@@ -16,6 +21,8 @@ import jakarta.inject.Singleton;
 @Singleton
 public class FeedEntryContentDAO extends GenericDAO<FeedEntryContent> {
 
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
 	private final QFeedEntryContent content = QFeedEntryContent.feedEntryContent;
 	private final QFeedEntry entry = QFeedEntry.feedEntry;
 
@@ -24,8 +31,38 @@ public class FeedEntryContentDAO extends GenericDAO<FeedEntryContent> {
 		super(sessionFactory);
 	}
 
-	public List<FeedEntryContent> findExisting(String contentHash, String titleHash) {
-		return query().select(content).from(content).where(content.contentHash.eq(contentHash), content.titleHash.eq(titleHash)).fetch();
+	/**
+	 * returns the fingerprints of the existing contents having the same hashes as one of the given contents, without loading the large
+	 * columns of the existing contents
+	 */
+	public List<ContentFingerprint> findFingerprints(Collection<FeedEntryContent> contents) {
+		List<ContentFingerprint> fingerprints = new ArrayList<>();
+		for (List<FeedEntryContent> chunk : Iterables.partition(contents, IN_CLAUSE_CHUNK_SIZE)) {
+			List<String> contentHashes = chunk.stream().map(FeedEntryContent::getContentHash).distinct().toList();
+			List<String> titleHashes = chunk.stream().map(FeedEntryContent::getTitleHash).distinct().toList();
+			List<Tuple> tuples = query()
+					.select(content.id, content.contentHash, content.titleHash, content.title, content.author, content.categories,
+							content.enclosureUrl, content.enclosureType, content.mediaThumbnailUrl, content.mediaThumbnailWidth,
+							content.mediaThumbnailHeight)
+					.from(content)
+					.where(content.contentHash.in(contentHashes), content.titleHash.in(titleHashes))
+					.fetch();
+			for (Tuple tuple : tuples) {
+				fingerprints.add(new ContentFingerprint(tuple.get(content.id), tuple.get(content.contentHash), tuple.get(content.titleHash),
+						tuple.get(content.title), tuple.get(content.author), tuple.get(content.categories), tuple.get(content.enclosureUrl),
+						tuple.get(content.enclosureType), tuple.get(content.mediaThumbnailUrl), tuple.get(content.mediaThumbnailWidth),
+						tuple.get(content.mediaThumbnailHeight)));
+			}
+		}
+		return fingerprints;
+	}
+
+	public List<FeedEntryContent> findByIds(Collection<Long> ids) {
+		List<FeedEntryContent> contents = new ArrayList<>();
+		for (List<Long> chunk : Iterables.partition(ids, IN_CLAUSE_CHUNK_SIZE)) {
+			contents.addAll(query().selectFrom(content).where(content.id.in(chunk)).fetch());
+		}
+		return contents;
 	}
 
 	public long deleteWithoutEntries(int max) {
@@ -34,4 +71,24 @@ public class FeedEntryContentDAO extends GenericDAO<FeedEntryContent> {
 
 		return deleteQuery(content).where(content.id.in(ids)).execute();
 	}
+
+	/**
+	 * the small columns of a content, used to discard most candidates before loading the large columns
+	 */
+	public record ContentFingerprint(Long id, String contentHash, String titleHash, String title, String author, String categories,
+			String enclosureUrl, String enclosureType, String mediaThumbnailUrl, Integer mediaThumbnailWidth,
+			Integer mediaThumbnailHeight) {
+
+		/**
+		 * returns true if the content may be equivalent to the given content, see {@link FeedEntryContent#equivalentTo(FeedEntryContent)}
+		 */
+		public boolean matches(FeedEntryContent c) {
+			return Objects.equals(contentHash, c.getContentHash()) && Objects.equals(titleHash, c.getTitleHash())
+					&& Objects.equals(title, c.getTitle()) && Objects.equals(author, c.getAuthor())
+					&& Objects.equals(categories, c.getCategories()) && Objects.equals(enclosureUrl, c.getEnclosureUrl())
+					&& Objects.equals(enclosureType, c.getEnclosureType()) && Objects.equals(mediaThumbnailUrl, c.getMediaThumbnailUrl())
+					&& Objects.equals(mediaThumbnailWidth, c.getMediaThumbnailWidth())
+					&& Objects.equals(mediaThumbnailHeight, c.getMediaThumbnailHeight());
+		}
+	}
 }
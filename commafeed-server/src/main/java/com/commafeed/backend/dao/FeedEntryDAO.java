@@ -1,13 +1,17 @@
 package com.commafeed.backend.dao;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hibernate.SessionFactory;
 
 import com.commafeed.backend.model.Feed;
 import com.commafeed.backend.model.FeedEntry;
 import com.commafeed.backend.model.QFeedEntry;
+import com.google.common.collect.Iterables;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.dsl.NumberExpression;
 
@@ -19,6 +23,8 @@ import lombok.Getter;
 @Singleton
 public class FeedEntryDAO extends GenericDAO<FeedEntry> {
 
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
 	private final QFeedEntry entry = QFeedEntry.feedEntry;
 
 	@Inject
@@ -26,8 +32,15 @@ public class FeedEntryDAO extends GenericDAO<FeedEntry> {
 		super(sessionFactory);
 	}
 
-	public FeedEntry findExisting(String guidHash, Feed feed) {
-		return query().select(entry).from(entry).where(entry.guidHash.eq(guidHash), entry.feed.eq(feed)).limit(1).fetchOne();
+	/**
+	 * returns the guid hashes that already exist for the feed among the given guid hashes
+	 */
+	public Set<String> findExistingGuidHashes(Collection<String> guidHashes, Feed feed) {
+		Set<String> existing = new HashSet<>();
+		for (List<String> chunk : Iterables.partition(guidHashes, IN_CLAUSE_CHUNK_SIZE)) {
+			existing.addAll(query().select(entry.guidHash).from(entry).where(entry.guidHash.in(chunk), entry.feed.eq(feed)).fetch());
+		}
+		return existing;
 	}
 
 	public List<FeedCapacity> findFeedsExceedingCapacity(long maxCapacity, long max) {
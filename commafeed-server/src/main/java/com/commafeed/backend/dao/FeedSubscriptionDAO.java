@@ -1,6 +1,7 @@
 package com.commafeed.backend.dao;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -60,6 +61,22 @@ public class FeedSubscriptionDAO extends GenericDAO<FeedSubscription> {
 		return initRelations(subs);
 	}
 
+	/**
+	 * @return the ids of the users subscribed to each of the given feeds
+	 */
+	public Map<Long, List<Long>> findSubscriberIds(List<Long> feedIds) {
+		if (feedIds.isEmpty()) {
+			return Map.of();
+		}
+
+		return query().select(sub.feed.id, sub.user.id)
+				.from(sub)
+				.where(sub.feed.id.in(feedIds))
+				.fetch()
+				.stream()
+				.collect(Collectors.groupingBy(t -> t.get(sub.feed.id), Collectors.mapping(t -> t.get(sub.user.id), Collectors.toList())));
+	}
+
 	public Long count(User user) {
 		return query().select(sub.count()).from(sub).where(sub.user.eq(user)).fetchOne();
 	}
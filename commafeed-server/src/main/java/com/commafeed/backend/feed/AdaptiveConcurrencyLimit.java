@@ -0,0 +1,91 @@
+package com.commafeed.backend.feed;
+
+import java.util.function.IntConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concurrency limit following an additive increase, multiplicative decrease (AIMD) policy based on observed latencies.
+ *
+ * Samples are grouped in windows. At the end of each window, the limit is decreased if the average latency of the window is much higher
+ * than the baseline latency, meaning that the resource is overloaded. Otherwise, the limit is increased by one if the limit was reached
+ * during the window, meaning that more concurrency could increase throughput.
+ */
+@Slf4j
+class AdaptiveConcurrencyLimit {
+
+	private static final int MIN_WINDOW_SAMPLES = 10;
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final double BACKOFF_RATIO = 0.75;
+	// how fast the baseline follows latencies higher than the baseline
+	private static final double BASELINE_SMOOTHING = 0.1;
+
+	private final String name;
+	private final int min;
+	private final int max;
+	private final IntConsumer onLimitChange;
+
+	private int limit;
+	private double baselineLatency = Double.NaN;
+
+	private long windowLatencySum;
+	private int windowSamples;
+	private boolean windowSaturated;
+
+	/**
+	 * @param onLimitChange
+	 *            called with the new limit when the limit changes
+	 */
+	AdaptiveConcurrencyLimit(String name, int initial, int min, int max, IntConsumer onLimitChange) {
+		this.name = name;
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.limit = Math.max(this.min, Math.min(this.max, initial));
+		this.onLimitChange = onLimitChange;
+	}
+
+	synchronized int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @param latencyMillis
+	 *            how long the task took
+	 * @param inFlight
+	 *            how many tasks were running when the task completed, including this one
+	 */
+	synchronized void onSample(long latencyMillis, int inFlight) {
+		windowLatencySum += latencyMillis;
+		windowSamples++;
+		windowSaturated |= inFlight >= limit;
+		if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, limit)) {
+			return;
+		}
+
+		double averageLatency = (double) windowLatencySum / windowSamples;
+		if (Double.isNaN(baselineLatency) || averageLatency < baselineLatency) {
+			baselineLatency = averageLatency;
+		} else {
+			baselineLatency += (averageLatency - baselineLatency) * BASELINE_SMOOTHING;
+		}
+
+		int newLimit = limit;
+		if (averageLatency > baselineLatency * LATENCY_TOLERANCE) {
+			newLimit = Math.max(min, (int) (limit * BACKOFF_RATIO));
+		} else if (windowSaturated) {
+			newLimit = Math.min(max, limit + 1);
+		}
+
+		windowLatencySum = 0;
+		windowSamples = 0;
+		windowSaturated = false;
+
+		if (newLimit != limit) {
+			log.debug("{} concurrency limit changed from {} to {} (average latency {}ms, baseline {}ms)", name, limit, newLimit,
+					(long) averageLatency, (long) baselineLatency);
+			limit = newLimit;
+			onLimitChange.accept(newLimit);
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.commafeed.backend.feed;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.commafeed.backend.VirtualThreadExecutors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs at most a given number of tasks at the same time, submitting a task blocks until a slot is available.
+ *
+ * Tasks run either on a pool of platform threads sized to the limit, or each on its own virtual thread with a semaphore enforcing the
+ * limit. A virtual thread blocked on I/O does not hold a platform thread.
+ */
+@Slf4j
+class BoundedExecutor {
+
+	// only one of them is used, depending on the mode
+	private final ThreadPoolExecutor pool;
+	private final ExecutorService virtualThreadExecutor;
+	private final ResizableSemaphore permits;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private int limit;
+
+	/**
+	 * @param virtualThreads
+	 *            run tasks on virtual threads, ignored with a warning if the jvm does not support them
+	 */
+	BoundedExecutor(String name, int limit, boolean virtualThreads) {
+		this.limit = limit;
+		if (virtualThreads && !VirtualThreadExecutors.isSupported()) {
+			log.warn("virtual threads are not supported by this jvm, {} tasks will run on platform threads", name);
+		}
+
+		if (virtualThreads && VirtualThreadExecutors.isSupported()) {
+			this.pool = null;
+			this.virtualThreadExecutor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+			this.permits = new ResizableSemaphore(limit);
+		} else {
+			this.pool = newBlockingExecutorService(limit);
+			this.virtualThreadExecutor = null;
+			this.permits = null;
+		}
+	}
+
+	<T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+		if (pool != null) {
+			return CompletableFuture.supplyAsync(task, pool);
+		}
+
+		try {
+			// the semaphore replaces the size of the pool as the concurrency limit
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.failedFuture(e);
+		}
+
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				active.incrementAndGet();
+				try {
+					return task.get();
+				} finally {
+					active.decrementAndGet();
+					permits.release();
+				}
+			}, virtualThreadExecutor);
+		} catch (RejectedExecutionException e) {
+			// shutting down
+			permits.release();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	CompletableFuture<Void> runAsync(Runnable task) {
+		return supplyAsync(() -> {
+			task.run();
+			return null;
+		});
+	}
+
+	int getActiveCount() {
+		return pool != null ? pool.getActiveCount() : active.get();
+	}
+
+	synchronized int getLimit() {
+		return limit;
+	}
+
+	synchronized void setLimit(int limit) {
+		if (pool != null) {
+			resize(pool, limit);
+		} else if (limit > this.limit) {
+			permits.release(limit - this.limit);
+		} else {
+			// tasks already running are not interrupted, the limit is reached once enough of them have completed
+			permits.reducePermits(this.limit - limit);
+		}
+		this.limit = limit;
+	}
+
+	void shutdownNow() {
+		if (pool != null) {
+			pool.shutdownNow();
+		} else {
+			virtualThreadExecutor.shutdownNow();
+		}
+	}
+
+	private static void resize(ThreadPoolExecutor pool, int threads) {
+		// the core pool size can't be greater than the maximum pool size
+		if (threads > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(threads);
+			pool.setCorePoolSize(threads);
+		} else {
+			pool.setCorePoolSize(threads);
+			pool.setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * returns an ExecutorService that blocks submissions until a thread is available
+	 */
+	private static ThreadPoolExecutor newBlockingExecutorService(int threads) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+		pool.setRejectedExecutionHandler((r, e) -> {
+			if (e.isShutdown()) {
+				return;
+			}
+
+			try {
+				e.getQueue().put(r);
+			} catch (InterruptedException ex) {
+				log.debug("interrupted while waiting for a slot in the queue.", ex);
+				Thread.currentThread().interrupt();
+			}
+		});
+		return pool;
+	}
+
+	private static class ResizableSemaphore extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		ResizableSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Statistical model of the arrival of new entries in a feed, stored on the feed.
+ *
+ * The rate of new entries is the number of entries that arrived divided by the time during which the feed was observed. Fetches without
+ * new entries extend the observed time, so a feed that went quiet slows down even before its next entry arrives. The rate is modulated by
+ * the hour of the day and the day of the week (UTC) at which entries were published. All observations fade out with time, not with the
+ * number of entries, so that busy feeds do not forget the days of the week they did not publish on lately. Entry arrivals are then
+ * considered a Poisson process, which gives the probability of a new entry being published within a given delay.
+ */
+class EntryArrivalModel {
+
+	private static final String VERSION = "2";
+	private static final String SEPARATOR = ";";
+	private static final String BUCKET_SEPARATOR = ",";
+	// seasonality buckets are stored as per-mille shares of their total weight, so that the model fits in its column whatever the volume
+	// of the feed
+	private static final double BUCKET_SHARES = 1000;
+
+	// observations lose half of their weight after that long
+	private static final Duration HALF_LIFE = Duration.ofDays(30);
+	// added to every bucket so that hours or days without any entry are not considered impossible
+	private static final double SEASONALITY_PRIOR = 1;
+	// the model is not trusted until that many intervals have been observed
+	private static final int MIN_SAMPLES = 3;
+	private static final Duration STEP = Duration.ofMinutes(15);
+
+	private double arrivals;
+	private double exposure;
+	private Instant observedUntil;
+	private int samples;
+	private final double[] hours;
+	private final double[] days;
+
+	EntryArrivalModel() {
+		this(0, 0, null, 0, new double[24], new double[7]);
+	}
+
+	private EntryArrivalModel(double arrivals, double exposure, Instant observedUntil, int samples, double[] hours, double[] days) {
+		this.arrivals = arrivals;
+		this.exposure = exposure;
+		this.observedUntil = observedUntil;
+		this.samples = samples;
+		this.hours = hours;
+		this.days = days;
+	}
+
+	/**
+	 * @return the model, or an empty model if the value is empty or could not be parsed
+	 */
+	static EntryArrivalModel parse(String value) {
+		if (StringUtils.isBlank(value)) {
+			return new EntryArrivalModel();
+		}
+
+		try {
+			String[] tokens = value.split(SEPARATOR);
+			if (tokens.length != 8 || !VERSION.equals(tokens[0])) {
+				return new EntryArrivalModel();
+			}
+
+			Instant observedUntil = StringUtils.isEmpty(tokens[3]) ? null : Instant.ofEpochMilli(Long.parseLong(tokens[3]));
+			double weight = Double.parseDouble(tokens[5]);
+			double[] hours = parseBuckets(tokens[6], 24, weight);
+			double[] days = parseBuckets(tokens[7], 7, weight);
+			return new EntryArrivalModel(Double.parseDouble(tokens[1]), Double.parseDouble(tokens[2]), observedUntil,
+					Integer.parseInt(tokens[4]), hours, days);
+		} catch (IllegalArgumentException e) {
+			return new EntryArrivalModel();
+		}
+	}
+
+	String serialize() {
+		// every entry adds the same weight to the hours and to the days
+		double weight = Arrays.stream(hours).sum();
+		return String.join(SEPARATOR, VERSION, format(arrivals), format(exposure),
+				observedUntil == null ? "" : String.valueOf(observedUntil.toEpochMilli()), String.valueOf(samples), format(weight),
+				formatBuckets(hours, weight), formatBuckets(days, weight));
+	}
+
+	/**
+	 * updates the model with the result of a fetch
+	 *
+	 * @param entryDates
+	 *            the publication dates of the entries of the feed, only the ones published after the previous last entry date are used. May
+	 *            be empty, in which case the feed has been observed without any new entry until now.
+	 * @param previousLastEntryDate
+	 *            the date of the most recent entry already observed, or null if the feed was never observed, in which case all entries are
+	 *            used
+	 * @param now
+	 *            the date of the fetch
+	 * @return the number of new entries
+	 */
+	int observe(Collection<Instant> entryDates, Instant previousLastEntryDate, Instant now) {
+		List<Instant> newDates = entryDates.stream()
+				.filter(d -> previousLastEntryDate == null || d.isAfter(previousLastEntryDate))
+				.sorted()
+				.toList();
+
+		Instant start;
+		int newArrivals;
+		if (observedUntil == null) {
+			if (newDates.isEmpty()) {
+				return 0;
+			}
+
+			// the first entry starts the observation, only the following ones are arrivals
+			start = newDates.get(0);
+			newArrivals = newDates.size() - 1;
+		} else {
+			start = observedUntil;
+			newArrivals = newDates.size();
+
+			double decay = decay(Duration.between(observedUntil, now));
+			arrivals *= decay;
+			exposure *= decay;
+			scale(hours, decay);
+			scale(days, decay);
+		}
+
+		if (now.isAfter(start)) {
+			exposure += Duration.between(start, now).toMillis();
+		}
+		arrivals += newArrivals;
+		samples += newArrivals;
+
+		for (Instant date : newDates) {
+			// entries published a while ago already lost some of their weight
+			double weight = decay(Duration.between(date, now));
+			ZonedDateTime utc = date.atZone(ZoneOffset.UTC);
+			hours[utc.getHour()] += weight;
+			days[utc.getDayOfWeek().getValue() - 1] += weight;
+		}
+
+		if (observedUntil == null || now.isAfter(observedUntil)) {
+			observedUntil = now;
+		}
+		return newDates.size();
+	}
+
+	boolean isReliable() {
+		return samples >= MIN_SAMPLES && arrivals > 0 && exposure > 0;
+	}
+
+	/**
+	 * the earliest date after which the probability of at least one new entry reaches the given probability, bounded by min and max
+	 */
+	Instant getNextCheck(Instant now, double probability, Duration min, Duration max) {
+		if (!isReliable()) {
+			return now.plus(max);
+		}
+
+		// P(at least one entry) = 1 - exp(-expectedEntries)
+		double targetExpectedEntries = -Math.log(1 - Math.min(probability, 0.999));
+		double averageInterval = getAverageInterval();
+		double hourTotal = Arrays.stream(hours).sum() + SEASONALITY_PRIOR * hours.length;
+		double dayTotal = Arrays.stream(days).sum() + SEASONALITY_PRIOR * days.length;
+
+		double expectedEntries = 0;
+		Duration delay = Duration.ZERO;
+		while (delay.compareTo(max) < 0) {
+			ZonedDateTime utc = now.plus(delay).atZone(ZoneOffset.UTC);
+			double hourFactor = (hours[utc.getHour()] + SEASONALITY_PRIOR) * hours.length / hourTotal;
+			double dayFactor = (days[utc.getDayOfWeek().getValue() - 1] + SEASONALITY_PRIOR) * days.length / dayTotal;
+			double stepExpectedEntries = STEP.toMillis() / averageInterval * hourFactor * dayFactor;
+
+			if (expectedEntries + stepExpectedEntries >= targetExpectedEntries) {
+				// the target is reached during this step, the rate is considered constant within a step
+				double stepRatio = (targetExpectedEntries - expectedEntries) / stepExpectedEntries;
+				delay = delay.plusMillis((long) (STEP.toMillis() * stepRatio));
+				break;
+			}
+
+			expectedEntries += stepExpectedEntries;
+			delay = delay.plus(STEP);
+		}
+
+		if (delay.compareTo(min) < 0) {
+			delay = min;
+		} else if (delay.compareTo(max) > 0) {
+			delay = max;
+		}
+		return now.plus(delay);
+	}
+
+	/**
+	 * the average time between two entries in milliseconds, or 0 if no entry arrived yet
+	 */
+	double getAverageInterval() {
+		return arrivals > 0 ? exposure / arrivals : 0;
+	}
+
+	int getSamples() {
+		return samples;
+	}
+
+	private static double decay(Duration elapsed) {
+		if (elapsed.isNegative()) {
+			return 1;
+		}
+		return Math.pow(0.5, (double) elapsed.toMillis() / HALF_LIFE.toMillis());
+	}
+
+	private static void scale(double[] buckets, double factor) {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] *= factor;
+		}
+	}
+
+	private static double[] parseBuckets(String value, int size, double weight) {
+		int[] shares = Arrays.stream(value.split(BUCKET_SEPARATOR)).mapToInt(Integer::parseInt).toArray();
+		if (shares.length != size) {
+			throw new IllegalArgumentException("expected " + size + " buckets but got " + shares.length);
+		}
+
+		// rounded shares do not always add up exactly, use their actual total so that the weight does not drift
+		int total = Arrays.stream(shares).sum();
+		return Arrays.stream(shares).mapToDouble(share -> total > 0 ? share * weight / total : 0).toArray();
+	}
+
+	private static String formatBuckets(double[] buckets, double weight) {
+		return Arrays.stream(buckets)
+				.mapToObj(b -> String.valueOf(weight > 0 ? Math.round(b / weight * BUCKET_SHARES) : 0))
+				.collect(Collectors.joining(BUCKET_SEPARATOR));
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+}
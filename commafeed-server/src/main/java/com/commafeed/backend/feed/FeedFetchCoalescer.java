@@ -0,0 +1,175 @@
+package com.commafeed.backend.feed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.HttpGetter.HttpResult;
+import com.commafeed.backend.HttpGetter.NotModifiedException;
+import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserHints;
+import com.commafeed.backend.feed.parser.FeedParserResult;
+import com.rometools.rome.io.FeedException;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-flights the fetches of the same url.
+ *
+ * Several feeds often point to the same resource (http and https, aliases redirecting to the same url that is then stored in
+ * urlAfterRedirect, ...). When such feeds are refreshed at the same time with the same conditional headers, only the first one sends
+ * the http request, the others wait for its response. The parsing of the response is shared too when the whole feed is parsed.
+ */
+@Slf4j
+@Singleton
+public class FeedFetchCoalescer {
+
+	private final boolean enabled;
+	private final ConcurrentMap<FetchKey, CompletableFuture<SharedFetch>> inFlight = new ConcurrentHashMap<>();
+
+	private final Meter coalesced;
+	private final Meter parseShared;
+
+	@Inject
+	public FeedFetchCoalescer(CommaFeedConfiguration config, MetricRegistry metrics) {
+		this.enabled = config.getApplicationSettings().getFetchCoalescing();
+		this.coalesced = metrics.meter(MetricRegistry.name(getClass(), "coalesced"));
+		this.parseShared = metrics.meter(MetricRegistry.name(getClass(), "parseShared"));
+		metrics.register(MetricRegistry.name(getClass(), "inFlight"), (Gauge<Integer>) inFlight::size);
+	}
+
+	/**
+	 * fetches the url, or waits for the result of the fetch of the same url already in progress
+	 */
+	public SharedFetch fetch(String url, String lastModified, String eTag, Fetch fetch) throws IOException, NotModifiedException {
+		if (!enabled) {
+			return new SharedFetch(fetch.fetch());
+		}
+
+		FetchKey key = new FetchKey(url, lastModified, eTag);
+		CompletableFuture<SharedFetch> future = new CompletableFuture<>();
+		CompletableFuture<SharedFetch> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			log.debug("joining the fetch of {} already in progress", url);
+			coalesced.mark();
+			return await(existing);
+		}
+
+		try {
+			SharedFetch result = new SharedFetch(fetch.fetch());
+			future.complete(result);
+			return result;
+		} catch (IOException | NotModifiedException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * same as {@link #fetch(String, String, String, Fetch)} but without blocking the calling thread
+	 */
+	public CompletableFuture<SharedFetch> fetchAsync(String url, String lastModified, String eTag,
+			Supplier<CompletableFuture<HttpResult>> fetch) {
+		if (!enabled) {
+			return fetch.get().thenApply(SharedFetch::new);
+		}
+
+		FetchKey key = new FetchKey(url, lastModified, eTag);
+		CompletableFuture<SharedFetch> future = new CompletableFuture<>();
+		CompletableFuture<SharedFetch> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			log.debug("joining the fetch of {} already in progress", url);
+			coalesced.mark();
+			return existing;
+		}
+
+		try {
+			fetch.get().whenComplete((result, ex) -> {
+				inFlight.remove(key, future);
+				if (ex == null) {
+					future.complete(new SharedFetch(result));
+				} else {
+					future.completeExceptionally(ex);
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.remove(key, future);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private SharedFetch await(CompletableFuture<SharedFetch> future) throws IOException, NotModifiedException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a fetch in progress");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException io) {
+				throw io;
+			} else if (cause instanceof NotModifiedException nme) {
+				throw nme;
+			} else if (cause instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@FunctionalInterface
+	public interface Fetch {
+		HttpResult fetch() throws IOException, NotModifiedException;
+	}
+
+	/**
+	 * The response of a fetch, shared by all the feeds that waited for it
+	 */
+	@RequiredArgsConstructor
+	public class SharedFetch {
+
+		@Getter
+		private final HttpResult result;
+
+		// guarded by this
+		private FeedParserResult parserResult;
+
+		/**
+		 * parses the response, the result is computed once and shared if the whole feed is needed. Hints are specific to a feed, the
+		 * response is parsed again for each feed providing hints.
+		 */
+		public FeedParserResult parse(FeedParser parser, FeedParserHints hints) throws FeedException {
+			if (hints != FeedParserHints.NONE) {
+				return parser.parse(result.getUrlAfterRedirect(), result.getContent(), result.getContentType(), hints);
+			}
+
+			synchronized (this) {
+				if (parserResult == null) {
+					parserResult = parser.parse(result.getUrlAfterRedirect(), result.getContent(), result.getContentType(), hints);
+				} else {
+					parseShared.mark();
+				}
+				return parserResult;
+			}
+		}
+	}
+
+	private record FetchKey(String url, String lastModified, String eTag) {
+	}
+
+}
@@ -1,8 +1,12 @@
 package com.commafeed.backend.feed;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.codec.binary.StringUtils;
 
@@ -10,7 +14,10 @@ import com.commafeed.backend.Digests;
 import com.commafeed.backend.HttpGetter;
 import com.commafeed.backend.HttpGetter.HttpResult;
 import com.commafeed.backend.HttpGetter.NotModifiedException;
+import com.commafeed.backend.feed.FeedFetchCoalescer.SharedFetch;
+import com.commafeed.backend.feed.HostHealthTracker.HostUnavailableException;
 import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserHints;
 import com.commafeed.backend.feed.parser.FeedParserResult;
 import com.commafeed.backend.urlprovider.FeedURLProvider;
 import com.rometools.rome.io.FeedException;
@@ -28,31 +35,41 @@ import lombok.extern.slf4j.Slf4j;
 @Singleton
 public class FeedFetcher {
 
+	private static final int TIMEOUT = 20000;
+
 	private final FeedParser parser;
 	private final HttpGetter getter;
 	private final Set<FeedURLProvider> urlProviders;
+	private final HostHealthTracker hostHealthTracker;
+	private final FeedFetchCoalescer coalescer;
 
 	public FeedFetcherResult fetch(String feedUrl, boolean extractFeedUrlFromHtml, String lastModified, String eTag,
 			Instant lastPublishedDate, String lastContentHash) throws FeedException, IOException, NotModifiedException {
-		log.debug("Fetching feed {}", feedUrl);
+		return fetch(feedUrl, extractFeedUrlFromHtml, lastModified, eTag, lastPublishedDate, lastContentHash, FeedParserHints.NONE);
+	}
 
-		int timeout = 20000;
+	public FeedFetcherResult fetch(String feedUrl, boolean extractFeedUrlFromHtml, String lastModified, String eTag,
+			Instant lastPublishedDate, String lastContentHash, FeedParserHints hints)
+			throws FeedException, IOException, NotModifiedException {
+		log.debug("Fetching feed {}", feedUrl);
 
-		HttpResult result = getter.getBinary(feedUrl, lastModified, eTag, timeout);
+		String url = feedUrl;
+		SharedFetch fetch = coalescer.fetch(url, lastModified, eTag, () -> getBinary(url, lastModified, eTag));
+		HttpResult result = fetch.getResult();
 		byte[] content = result.getContent();
 
 		FeedParserResult parserResult;
 		try {
-			parserResult = parser.parse(result.getUrlAfterRedirect(), content);
+			parserResult = fetch.parse(parser, hints);
 		} catch (FeedException e) {
 			if (extractFeedUrlFromHtml) {
 				String extractedUrl = extractFeedUrl(urlProviders, feedUrl, StringUtils.newStringUtf8(result.getContent()));
 				if (org.apache.commons.lang3.StringUtils.isNotBlank(extractedUrl)) {
 					feedUrl = extractedUrl;
 
-					result = getter.getBinary(extractedUrl, lastModified, eTag, timeout);
+					result = getBinary(extractedUrl, lastModified, eTag);
 					content = result.getContent();
-					parserResult = parser.parse(result.getUrlAfterRedirect(), content);
+					parserResult = parser.parse(result.getUrlAfterRedirect(), content, result.getContentType(), hints);
 				} else {
 					throw e;
 				}
@@ -61,6 +78,31 @@ public class FeedFetcher {
 			}
 		}
 
+		return buildResult(feedUrl, result, parserResult, lastModified, eTag, lastPublishedDate, lastContentHash);
+	}
+
+	/**
+	 * fetches the feed without blocking the calling thread, the feed is then parsed by the given executor
+	 */
+	public CompletableFuture<FeedFetcherResult> fetchAsync(String feedUrl, String lastModified, String eTag, Instant lastPublishedDate,
+			String lastContentHash, FeedParserHints hints, Executor parseExecutor) {
+		log.debug("Fetching feed {} asynchronously", feedUrl);
+
+		CompletableFuture<SharedFetch> fetch = coalescer.fetchAsync(feedUrl, lastModified, eTag,
+				() -> getBinaryAsync(feedUrl, lastModified, eTag));
+		return fetch.thenApplyAsync(shared -> {
+			try {
+				FeedParserResult parserResult = shared.parse(parser, hints);
+				return buildResult(feedUrl, shared.getResult(), parserResult, lastModified, eTag, lastPublishedDate, lastContentHash);
+			} catch (FeedException | IOException | NotModifiedException e) {
+				throw new CompletionException(e);
+			}
+		}, parseExecutor);
+	}
+
+	private FeedFetcherResult buildResult(String feedUrl, HttpResult result, FeedParserResult parserResult, String lastModified,
+			String eTag, Instant lastPublishedDate, String lastContentHash) throws IOException, NotModifiedException {
+		byte[] content = result.getContent();
 		if (content == null) {
 			throw new IOException("Feed content is empty.");
 		}
@@ -73,18 +115,55 @@ public class FeedFetcher {
 			log.debug("content hash not modified: {}", feedUrl);
 			throw new NotModifiedException("content hash not modified",
 					lastModifiedHeaderValueChanged ? result.getLastModifiedSince() : null,
-					etagHeaderValueChanged ? result.getETag() : null);
+					etagHeaderValueChanged ? result.getETag() : null, result.getValidFor());
 		}
 
 		if (lastPublishedDate != null && lastPublishedDate.equals(parserResult.lastPublishedDate())) {
 			log.debug("publishedDate not modified: {}", feedUrl);
 			throw new NotModifiedException("publishedDate not modified",
 					lastModifiedHeaderValueChanged ? result.getLastModifiedSince() : null,
-					etagHeaderValueChanged ? result.getETag() : null);
+					etagHeaderValueChanged ? result.getETag() : null, result.getValidFor());
 		}
 
 		return new FeedFetcherResult(parserResult, result.getUrlAfterRedirect(), result.getLastModifiedSince(), result.getETag(), hash,
-				result.getDuration());
+				result.getDuration(), result.getValidFor());
+	}
+
+	private HttpResult getBinary(String url, String lastModified, String eTag) throws IOException, NotModifiedException {
+		String host = FeedUtils.getHost(url);
+		hostHealthTracker.checkAvailable(host);
+
+		long start = System.currentTimeMillis();
+		try {
+			HttpResult result = getter.getBinary(url, lastModified, eTag, hostHealthTracker.getTimeout(host, TIMEOUT));
+			hostHealthTracker.onResponse(host, System.currentTimeMillis() - start);
+			return result;
+		} catch (NotModifiedException e) {
+			hostHealthTracker.onResponse(host, System.currentTimeMillis() - start);
+			throw e;
+		} catch (IOException e) {
+			hostHealthTracker.onFailure(host, System.currentTimeMillis() - start, e);
+			throw e;
+		}
+	}
+
+	private CompletableFuture<HttpResult> getBinaryAsync(String url, String lastModified, String eTag) {
+		String host = FeedUtils.getHost(url);
+		try {
+			hostHealthTracker.checkAvailable(host);
+		} catch (HostUnavailableException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		long start = System.currentTimeMillis();
+		return getter.getBinaryAsync(url, lastModified, eTag, hostHealthTracker.getTimeout(host, TIMEOUT)).whenComplete((result, ex) -> {
+			long duration = System.currentTimeMillis() - start;
+			if (ex == null || ex instanceof NotModifiedException) {
+				hostHealthTracker.onResponse(host, duration);
+			} else if (ex instanceof IOException e) {
+				hostHealthTracker.onFailure(host, duration, e);
+			}
+		});
 	}
 
 	private static String extractFeedUrl(Set<FeedURLProvider> urlProviders, String url, String urlContent) {
@@ -99,7 +178,7 @@ public class FeedFetcher {
 	}
 
 	public record FeedFetcherResult(FeedParserResult feed, String urlAfterRedirect, String lastModifiedHeader, String lastETagHeader,
-			String contentHash, long fetchDuration) {
+			String contentHash, long fetchDuration, Duration validFor) {
 	}
 
 }
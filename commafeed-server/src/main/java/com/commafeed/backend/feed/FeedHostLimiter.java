@@ -0,0 +1,255 @@
+package com.commafeed.backend.feed;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.commafeed.backend.model.Feed;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the number of concurrent fetches and enforces a minimum delay between two fetches for each host.
+ *
+ * Feeds of a busy host are parked instead of holding a worker thread, and are dispatched again when the host is available.
+ */
+@Slf4j
+public class FeedHostLimiter {
+
+	private final int maxConcurrentFetchesPerHost;
+	private final long minDelayBetweenFetchesMillis;
+	private final int maxParkedFeedsPerHost;
+	private final Consumer<Feed> dispatcher;
+	private final Timer hostWait;
+
+	private final ScheduledExecutorService dispatchExecutor;
+	private final Map<String, HostState> hosts = new HashMap<>();
+	private final Set<Long> parkedFeedIds = new HashSet<>();
+	// the url of a feed may change while it's fetched because of redirects, remember the hosts we acquired a slot for.
+	// a feed may be fetched twice concurrently (e.g. refreshed manually while being refreshed), each fetch releases one of them
+	private final Map<Long, Deque<String>> acquiredHostsByFeedId = new HashMap<>();
+
+	/**
+	 * @param maxParkedFeedsPerHost
+	 *            maximum number of feeds waiting for the same host, 0 for no limit
+	 * @param dispatcher
+	 *            called when a parked feed can be fetched, the host slot has already been acquired for that feed
+	 */
+	FeedHostLimiter(int maxConcurrentFetchesPerHost, long minDelayBetweenFetchesMillis, int maxParkedFeedsPerHost,
+			Consumer<Feed> dispatcher, MetricRegistry metrics) {
+		this.maxConcurrentFetchesPerHost = maxConcurrentFetchesPerHost <= 0 ? Integer.MAX_VALUE : maxConcurrentFetchesPerHost;
+		this.minDelayBetweenFetchesMillis = Math.max(0, minDelayBetweenFetchesMillis);
+		this.maxParkedFeedsPerHost = maxParkedFeedsPerHost <= 0 ? Integer.MAX_VALUE : maxParkedFeedsPerHost;
+		this.dispatcher = dispatcher;
+		this.hostWait = metrics.timer(MetricRegistry.name(getClass(), "hostWait"));
+		this.dispatchExecutor = Executors.newSingleThreadScheduledExecutor();
+
+		metrics.register(MetricRegistry.name(getClass(), "parked"), (Gauge<Integer>) this::getParkedCount);
+	}
+
+	boolean isEnabled() {
+		return maxConcurrentFetchesPerHost != Integer.MAX_VALUE || minDelayBetweenFetchesMillis > 0;
+	}
+
+	/**
+	 * try to acquire a fetch slot for the host of the feed
+	 *
+	 * @return true if the feed can be fetched right away, false if it was parked until its host is available
+	 */
+	synchronized boolean tryAcquire(Feed feed) {
+		String host = getHost(feed);
+		if (!isEnabled() || host == null) {
+			return true;
+		}
+
+		if (parkedFeedIds.contains(feed.getId())) {
+			log.debug("feed {} is already waiting for host {}", feed.getId(), host);
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+		HostState state = hosts.computeIfAbsent(host, HostState::new);
+		if (state.parked.isEmpty() && state.canStart(now)) {
+			state.start(now);
+			acquiredHostsByFeedId.computeIfAbsent(feed.getId(), id -> new ArrayDeque<>()).addLast(host);
+			return true;
+		}
+
+		log.debug("host {} is busy, parking feed {}", host, feed.getId());
+		state.parked.addLast(new ParkedFeed(feed, now));
+		parkedFeedIds.add(feed.getId());
+		scheduleNextDispatch(state, now);
+		return false;
+	}
+
+	/**
+	 * @return true if the feed is waiting for its host to be available, it will be dispatched once
+	 */
+	synchronized boolean isParked(Feed feed) {
+		return parkedFeedIds.contains(feed.getId());
+	}
+
+	/**
+	 * @return true if the host of the feed is busy and already has the maximum number of feeds waiting for it, the feed would be parked by
+	 *         {@link #tryAcquire(Feed)} but should rather be refreshed later
+	 */
+	synchronized boolean isParkingFull(Feed feed) {
+		String host = getHost(feed);
+		if (!isEnabled() || host == null) {
+			return false;
+		}
+
+		HostState state = hosts.get(host);
+		return state != null && state.parked.size() >= maxParkedFeedsPerHost && !state.canStart(System.currentTimeMillis());
+	}
+
+	/**
+	 * the hosts whose feeds have been waiting the longest, using the wait of the oldest parked feed of each host, longest wait first
+	 */
+	synchronized List<BusyHost> getBusiestHosts(int max) {
+		long now = System.currentTimeMillis();
+		return hosts.values()
+				.stream()
+				.filter(state -> !state.parked.isEmpty())
+				.map(state -> new BusyHost(state.host, state.active, state.parked.size(), now - state.parked.peekFirst().parkedAt()))
+				.sorted(Comparator.comparingLong(BusyHost::waitMillis).reversed())
+				.limit(max)
+				.toList();
+	}
+
+	/**
+	 * release one of the fetch slots acquired for the host of the feed
+	 */
+	synchronized void release(Feed feed) {
+		Deque<String> acquiredHosts = acquiredHostsByFeedId.get(feed.getId());
+		if (acquiredHosts == null) {
+			return;
+		}
+
+		String host = acquiredHosts.pollFirst();
+		if (acquiredHosts.isEmpty()) {
+			acquiredHostsByFeedId.remove(feed.getId());
+		}
+
+		HostState state = hosts.get(host);
+		if (state == null) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		state.active = Math.max(0, state.active - 1);
+		if (state.isIdle(now)) {
+			// forget about idle hosts to keep memory usage low
+			hosts.remove(host);
+		} else {
+			scheduleNextDispatch(state, now);
+		}
+	}
+
+	void stop() {
+		dispatchExecutor.shutdownNow();
+	}
+
+	private synchronized int getParkedCount() {
+		return parkedFeedIds.size();
+	}
+
+	private void scheduleNextDispatch(HostState state, long now) {
+		if (state.parked.isEmpty() || state.active >= maxConcurrentFetchesPerHost || state.dispatchScheduled) {
+			return;
+		}
+
+		state.dispatchScheduled = true;
+		long delay = Math.max(0, state.lastStart + minDelayBetweenFetchesMillis - now);
+		dispatchExecutor.schedule(() -> dispatchNext(state.host), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void dispatchNext(String host) {
+		ParkedFeed next;
+		synchronized (this) {
+			HostState state = hosts.get(host);
+			if (state == null) {
+				return;
+			}
+
+			state.dispatchScheduled = false;
+			long now = System.currentTimeMillis();
+			if (state.parked.isEmpty() || !state.canStart(now)) {
+				scheduleNextDispatch(state, now);
+				return;
+			}
+
+			next = state.parked.pollFirst();
+			parkedFeedIds.remove(next.feed().getId());
+			state.start(now);
+			acquiredHostsByFeedId.computeIfAbsent(next.feed().getId(), id -> new ArrayDeque<>()).addLast(host);
+			hostWait.update(now - next.parkedAt(), TimeUnit.MILLISECONDS);
+
+			scheduleNextDispatch(state, now);
+		}
+
+		try {
+			dispatcher.accept(next.feed());
+		} catch (Exception e) {
+			log.error("error while dispatching feed {}", next.feed().getUrl(), e);
+			release(next.feed());
+		}
+	}
+
+	private static String getHost(Feed feed) {
+		return FeedUtils.getHost(Optional.ofNullable(feed.getUrlAfterRedirect()).orElse(feed.getUrl()));
+	}
+
+	private record ParkedFeed(Feed feed, long parkedAt) {
+	}
+
+	/**
+	 * a host with feeds waiting for it
+	 *
+	 * @param active
+	 *            the number of feeds of the host being fetched
+	 * @param parked
+	 *            the number of feeds waiting for the host
+	 * @param waitMillis
+	 *            how long the oldest parked feed has been waiting
+	 */
+	public record BusyHost(String host, int active, int parked, long waitMillis) {
+	}
+
+	@RequiredArgsConstructor
+	private class HostState {
+		private final String host;
+		private final Deque<ParkedFeed> parked = new ArrayDeque<>();
+		private int active;
+		private long lastStart;
+		private boolean dispatchScheduled;
+
+		boolean canStart(long now) {
+			return active < maxConcurrentFetchesPerHost && now - lastStart >= minDelayBetweenFetchesMillis;
+		}
+
+		void start(long now) {
+			active++;
+			lastStart = now;
+		}
+
+		boolean isIdle(long now) {
+			return active == 0 && parked.isEmpty() && now - lastStart >= minDelayBetweenFetchesMillis;
+		}
+	}
+
+}
@@ -2,24 +2,42 @@ package com.commafeed.backend.feed;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.HttpGetter;
 import com.commafeed.backend.dao.FeedDAO;
+import com.commafeed.backend.dao.FeedDAO.FeedFilter;
+import com.commafeed.backend.dao.FeedSubscriptionDAO;
 import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.feed.FeedHostLimiter.BusyHost;
+import com.commafeed.backend.feed.FeedRefreshUpdater.PreparedFeed;
+import com.commafeed.backend.feed.SlowestFeeds.SlowFeed;
+import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
 import com.commafeed.backend.model.AbstractModel;
 import com.commafeed.backend.model.Feed;
+import com.commafeed.backend.service.ActiveUserService;
+import com.commafeed.backend.service.ClusterService;
 
 import io.dropwizard.lifecycle.Managed;
 import jakarta.inject.Inject;
@@ -30,48 +48,144 @@ import lombok.extern.slf4j.Slf4j;
 @Singleton
 public class FeedRefreshEngine implements Managed {
 
+	private static final int PENDING_UPDATES_MIN_CAPACITY = 100;
+	private static final int SLOWEST_FEEDS_SIZE = 20;
+	private static final int BUSIEST_HOSTS_SIZE = 20;
+
 	private final UnitOfWork unitOfWork;
 	private final FeedDAO feedDAO;
+	private final FeedSubscriptionDAO feedSubscriptionDAO;
 	private final FeedRefreshWorker worker;
 	private final FeedRefreshUpdater updater;
+	private final FeedRefreshScheduler scheduler;
+	private final HttpGetter httpGetter;
+	private final ClusterService clusterService;
+	private final WebSubService webSubService;
+	private final ActiveUserService activeUserService;
 	private final CommaFeedConfiguration config;
 	private final Meter refill;
 
-	private final BlockingDeque<Feed> queue;
+	private final FeedRefreshQueue queue;
+	private final BlockingQueue<PendingUpdate> pendingUpdates;
+	private final List<BlockingQueue<PendingUpdate>> databaseUpdateLanes;
+	private final FeedHostLimiter hostLimiter;
+	private final SlowestFeeds slowestFeeds;
+	private final Timer refreshDuration;
+	private final Map<FeedRefreshPriority, Timer> refreshDurationByPriority;
+	private final Map<Long, FeedRefreshPriority> priorities;
+	// feeds claimed by this node that have not been refreshed yet, their claim is renewed until they are
+	private final Set<Long> claimedFeeds;
 
 	private final ExecutorService feedProcessingLoopExecutor;
 	private final ExecutorService refillLoopExecutor;
 	private final ExecutorService refillExecutor;
-	private final ThreadPoolExecutor workerExecutor;
-	private final ThreadPoolExecutor databaseUpdaterExecutor;
+	private final ExecutorService databaseUpdateBatchingLoopExecutor;
+	// only created if database update lanes are enabled
+	private final ExecutorService databaseUpdateLanesExecutor;
+	private final ScheduledExecutorService leaseRenewalExecutor;
+	private final BoundedExecutor workerExecutor;
+	private final BoundedExecutor databaseUpdaterExecutor;
+	// parses the feeds fetched by the async client, its queue is bounded by the number of async fetch permits
+	private final ExecutorService parseExecutor;
+	private final Semaphore asyncFetchPermits;
+	private final AdaptiveConcurrencyLimit workerLimit;
+	private final AdaptiveConcurrencyLimit databaseUpdaterLimit;
 
 	@Inject
-	public FeedRefreshEngine(UnitOfWork unitOfWork, FeedDAO feedDAO, FeedRefreshWorker worker, FeedRefreshUpdater updater,
-			CommaFeedConfiguration config, MetricRegistry metrics) {
+	public FeedRefreshEngine(UnitOfWork unitOfWork, FeedDAO feedDAO, FeedSubscriptionDAO feedSubscriptionDAO, FeedRefreshWorker worker,
+			FeedRefreshUpdater updater, FeedRefreshScheduler scheduler, HttpGetter httpGetter, ClusterService clusterService,
+			WebSubService webSubService, ActiveUserService activeUserService, CommaFeedConfiguration config, MetricRegistry metrics) {
 		this.unitOfWork = unitOfWork;
 		this.feedDAO = feedDAO;
+		this.feedSubscriptionDAO = feedSubscriptionDAO;
 		this.worker = worker;
 		this.updater = updater;
+		this.scheduler = scheduler;
+		this.httpGetter = httpGetter;
+		this.clusterService = clusterService;
+		this.webSubService = webSubService;
+		this.activeUserService = activeUserService;
 		this.config = config;
 		this.refill = metrics.meter(MetricRegistry.name(getClass(), "refill"));
+		this.refreshDuration = metrics.timer(MetricRegistry.name(getClass(), "refreshDuration"));
+		this.refreshDurationByPriority = new EnumMap<>(FeedRefreshPriority.class);
+		for (FeedRefreshPriority priority : FeedRefreshPriority.values()) {
+			String name = MetricRegistry.name(getClass(), "refreshDuration", priority.getMetricName());
+			refreshDurationByPriority.put(priority, metrics.timer(name));
+		}
+		this.priorities = new ConcurrentHashMap<>();
+		this.claimedFeeds = ConcurrentHashMap.newKeySet();
+		this.slowestFeeds = new SlowestFeeds(SLOWEST_FEEDS_SIZE);
 
-		this.queue = new LinkedBlockingDeque<>();
+		this.queue = new FeedRefreshQueue(config.getApplicationSettings().getMaxConcurrentRefreshesPerUser(), metrics);
+		int batchSize = config.getApplicationSettings().getDatabaseUpdateBatchSize();
+		int pendingUpdatesCapacity = Math.max(PENDING_UPDATES_MIN_CAPACITY, 2 * batchSize);
+		this.pendingUpdates = new LinkedBlockingQueue<>(pendingUpdatesCapacity);
+		this.databaseUpdateLanes = new ArrayList<>();
+		if (isUsingDatabaseUpdateLanes()) {
+			for (int i = 0; i < config.getApplicationSettings().getDatabaseUpdateThreads(); i++) {
+				databaseUpdateLanes.add(new LinkedBlockingQueue<>(pendingUpdatesCapacity));
+			}
+		}
 
 		this.feedProcessingLoopExecutor = Executors.newSingleThreadExecutor();
 		this.refillLoopExecutor = Executors.newSingleThreadExecutor();
 		this.refillExecutor = newDiscardingSingleThreadExecutorService();
-		this.workerExecutor = newBlockingExecutorService(config.getApplicationSettings().getBackgroundThreads());
-		this.databaseUpdaterExecutor = newBlockingExecutorService(config.getApplicationSettings().getDatabaseUpdateThreads());
+		this.databaseUpdateBatchingLoopExecutor = Executors.newSingleThreadExecutor();
+		this.databaseUpdateLanesExecutor = isUsingDatabaseUpdateLanes()
+				? Executors.newFixedThreadPool(config.getApplicationSettings().getDatabaseUpdateThreads())
+				: null;
+		this.leaseRenewalExecutor = Executors.newSingleThreadScheduledExecutor();
+		boolean virtualThreads = Boolean.TRUE.equals(config.getApplicationSettings().getVirtualThreads());
+		this.workerExecutor = new BoundedExecutor("worker", config.getApplicationSettings().getBackgroundThreads(), virtualThreads);
+		this.databaseUpdaterExecutor = new BoundedExecutor("updater", config.getApplicationSettings().getDatabaseUpdateThreads(),
+				virtualThreads);
+		this.parseExecutor = Executors.newFixedThreadPool(config.getApplicationSettings().getBackgroundThreads());
+		this.asyncFetchPermits = new Semaphore(config.getApplicationSettings().getMaxConcurrentAsyncFetches());
+		this.workerLimit = new AdaptiveConcurrencyLimit("worker", config.getApplicationSettings().getBackgroundThreads(), 1,
+				config.getApplicationSettings().getMaxBackgroundThreads(), limit -> {
+					workerExecutor.setLimit(limit);
+					// one http connection per worker thread
+					httpGetter.setMaxConnections(limit);
+				});
+		this.databaseUpdaterLimit = new AdaptiveConcurrencyLimit("updater", config.getApplicationSettings().getDatabaseUpdateThreads(), 1,
+				config.getApplicationSettings().getMaxDatabaseUpdateThreads(), databaseUpdaterExecutor::setLimit);
+		this.hostLimiter = new FeedHostLimiter(config.getApplicationSettings().getMaxConcurrentFetchesPerHost(),
+				config.getApplicationSettings().getMinDelayBetweenFetchesPerHost().toMilliseconds(),
+				config.getApplicationSettings().getMaxParkedFeedsPerHost(), this::processFeedAsync, metrics);
 
 		metrics.register(MetricRegistry.name(getClass(), "queue", "size"), (Gauge<Integer>) queue::size);
+		metrics.register(MetricRegistry.name(getClass(), "pendingUpdates", "size"), (Gauge<Integer>) pendingUpdates::size);
+		metrics.register(MetricRegistry.name(getClass(), "lanes", "size"),
+				(Gauge<Integer>) () -> databaseUpdateLanes.stream().mapToInt(BlockingQueue::size).sum());
 		metrics.register(MetricRegistry.name(getClass(), "worker", "active"), (Gauge<Integer>) workerExecutor::getActiveCount);
 		metrics.register(MetricRegistry.name(getClass(), "updater", "active"), (Gauge<Integer>) databaseUpdaterExecutor::getActiveCount);
+		int maxConcurrentAsyncFetches = config.getApplicationSettings().getMaxConcurrentAsyncFetches();
+		metrics.register(MetricRegistry.name(getClass(), "asyncFetches", "active"),
+				(Gauge<Integer>) () -> maxConcurrentAsyncFetches - asyncFetchPermits.availablePermits());
+		metrics.register(MetricRegistry.name(getClass(), "worker", "limit"), (Gauge<Integer>) workerExecutor::getLimit);
+		metrics.register(MetricRegistry.name(getClass(), "updater", "limit"), (Gauge<Integer>) databaseUpdaterExecutor::getLimit);
 	}
 
 	@Override
 	public void start() {
+		if (isInMemoryScheduler()) {
+			if (clusterService.isClustered()) {
+				log.warn("the in-memory refresh scheduler is not shared between nodes, feeds will not be claimed by this node");
+			}
+			loadSchedule();
+		}
+
 		startFeedProcessingLoop();
 		startRefillLoop();
+		if (clusterService.isClustered() && !isInMemoryScheduler()) {
+			startLeaseRenewal();
+		}
+		if (isUsingDatabaseUpdateLanes()) {
+			startDatabaseUpdateLanes();
+		} else if (isBatchingDatabaseUpdates()) {
+			startDatabaseUpdateBatchingLoop();
+		}
 	}
 
 	private void startFeedProcessingLoop() {
@@ -82,12 +196,23 @@ public class FeedRefreshEngine implements Managed {
 					// take() is blocking until a feed is available from the queue
 					Feed feed = queue.take();
 
-					// send the feed to be processed
+					// send the feed to be processed, unless its host is busy in which case the feed will be processed later
 					log.debug("got feed {} from the queue, send it for processing", feed.getId());
-					processFeedAsync(feed);
+					if (hostLimiter.isParked(feed)) {
+						// the feed is already waiting for its host and will be processed then, give back what was taken for this copy
+						log.debug("feed {} is already waiting for its host, skipping", feed.getId());
+						queue.release(feed.getId());
+					} else if (hostLimiter.isParkingFull(feed)) {
+						// too many feeds are already waiting for this host, refresh the feed later instead of piling it up
+						log.debug("too many feeds are waiting for the host of feed {}, skipping", feed.getId());
+						skip(feed);
+					} else if (hostLimiter.tryAcquire(feed)) {
+						processFeedAsync(feed);
+					}
 
-					// we removed a feed from the queue, try to refill it as it may now be empty
-					if (queue.isEmpty()) {
+					// we removed a feed from the queue, try to refill it as it may now be empty, or only contain feeds of users that
+					// reached their limit
+					if (queue.isExhausted()) {
 						log.debug("took the last feed from the queue, try to refill");
 						refillQueueAsync();
 					}
@@ -106,13 +231,14 @@ public class FeedRefreshEngine implements Managed {
 		refillLoopExecutor.submit(() -> {
 			while (!refillLoopExecutor.isShutdown()) {
 				try {
-					if (queue.isEmpty()) {
+					if (queue.isExhausted()) {
 						log.debug("refilling queue");
 						refillQueueAsync();
 					}
 
-					log.debug("sleeping for 15s");
-					TimeUnit.SECONDS.sleep(15);
+					Duration sleep = getRefillLoopSleep();
+					log.debug("sleeping for {}", sleep);
+					TimeUnit.MILLISECONDS.sleep(sleep.toMillis());
 				} catch (InterruptedException e) {
 					log.debug("interrupted while sleeping");
 					Thread.currentThread().interrupt();
@@ -123,16 +249,133 @@ public class FeedRefreshEngine implements Managed {
 		});
 	}
 
+	private void startLeaseRenewal() {
+		// feeds may wait in the queue or for their host longer than the lease, keep them claimed so that other nodes don't refresh them
+		long period = clusterService.getLeaseRenewalPeriod().toMillis();
+		leaseRenewalExecutor.scheduleWithFixedDelay(() -> {
+			try {
+				List<Long> feedIds = List.copyOf(claimedFeeds);
+				if (!feedIds.isEmpty()) {
+					unitOfWork.run(() -> feedDAO.renewLeases(feedIds, clusterService.getNodeId(), clusterService.getLeaseExpiration()));
+				}
+			} catch (Exception e) {
+				log.error("could not renew the claims on feeds: {}", e.getMessage(), e);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private void startDatabaseUpdateBatchingLoop() {
+		// group worker results and send them to the database updater in batches, committing them in a single transaction
+		databaseUpdateBatchingLoopExecutor.submit(() -> {
+			while (!databaseUpdateBatchingLoopExecutor.isShutdown()) {
+				try {
+					List<PendingUpdate> batch = takeBatch(pendingUpdates);
+					log.debug("sending a batch of {} feeds to the database updater", batch.size());
+					databaseUpdaterExecutor
+							.runAsync(() -> runMeasured(databaseUpdaterExecutor, databaseUpdaterLimit,
+									() -> updater.update(batch.stream().map(PendingUpdate::result).toList())))
+							.whenComplete((data, ex) -> complete(batch, ex));
+				} catch (InterruptedException e) {
+					log.debug("interrupted while waiting for a worker result");
+					Thread.currentThread().interrupt();
+				} catch (Exception e) {
+					log.error(e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+	private void startDatabaseUpdateLanes() {
+		// each lane has a single thread updating its feeds, the updates of a feed always go to the same lane so they never run concurrently
+		for (BlockingQueue<PendingUpdate> lane : databaseUpdateLanes) {
+			databaseUpdateLanesExecutor.submit(() -> {
+				while (!databaseUpdateLanesExecutor.isShutdown()) {
+					try {
+						List<PendingUpdate> batch = takeBatch(lane);
+						try {
+							updater.update(batch.stream().map(PendingUpdate::result).toList());
+							complete(batch, null);
+						} catch (Throwable t) {
+							// the lane is the only thread updating its feeds, it must survive errors too
+							complete(batch, t);
+						}
+					} catch (InterruptedException e) {
+						log.debug("interrupted while waiting for a worker result");
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * takes worker results from the queue, waiting for more results until the batch is full or the batch window has elapsed
+	 */
+	private List<PendingUpdate> takeBatch(BlockingQueue<PendingUpdate> updates) throws InterruptedException {
+		int batchSize = config.getApplicationSettings().getDatabaseUpdateBatchSize();
+		long windowNanos = config.getApplicationSettings().getDatabaseUpdateBatchWindow().toNanoseconds();
+
+		// take() is blocking until a worker result is available
+		List<PendingUpdate> batch = new ArrayList<>();
+		batch.add(updates.take());
+
+		long deadline = System.nanoTime() + windowNanos;
+		while (batch.size() < batchSize) {
+			PendingUpdate next = updates.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+		return batch;
+	}
+
+	private static void complete(List<PendingUpdate> batch, Throwable ex) {
+		for (PendingUpdate p : batch) {
+			if (ex != null) {
+				p.future().completeExceptionally(ex);
+			} else {
+				p.future().complete(null);
+			}
+		}
+	}
+
+	/**
+	 * the feeds that took the longest to refresh, slowest first
+	 */
+	public List<SlowFeed> getSlowestFeeds() {
+		return slowestFeeds.get();
+	}
+
+	/**
+	 * the hosts whose feeds have been waiting the longest for the host to be available, longest wait first
+	 */
+	public List<BusyHost> getBusiestHosts() {
+		return hostLimiter.getBusiestHosts(BUSIEST_HOSTS_SIZE);
+	}
+
+	/**
+	 * inserts the entries pushed by a WebSub hub, they go through the same database update path as the entries of a refresh so that
+	 * updates of the same feed are never processed concurrently
+	 */
+	public CompletableFuture<Void> updatePushedEntries(Feed feed, List<Entry> entries) {
+		return updateAsync(updater.prepare(feed, entries));
+	}
+
 	public void refreshImmediately(Feed feed) {
-		log.debug("add feed {} at the start of the queue", feed.getId());
-		// remove the feed from the queue if it was already queued to avoid refreshing it twice
-		queue.removeIf(f -> f.getId().equals(feed.getId()));
-		queue.addFirst(feed);
+		log.debug("add feed {} to the urgent lane of the queue", feed.getId());
+		if (isInMemoryScheduler()) {
+			// the feed will be rescheduled once processed
+			scheduler.unschedule(feed.getId());
+		}
+		// the feed is moved to the urgent lane if it was already queued to avoid refreshing it twice
+		queue.offerUrgent(feed);
+		priorities.put(feed.getId(), FeedRefreshPriority.URGENT);
 	}
 
 	private void refillQueueAsync() {
 		CompletableFuture.runAsync(() -> {
-			if (!queue.isEmpty()) {
+			if (!queue.isExhausted()) {
 				return;
 			}
 
@@ -140,10 +383,23 @@ public class FeedRefreshEngine implements Managed {
 
 			List<Feed> nextUpdatableFeeds = getNextUpdatableFeeds(getBatchSize());
 			log.debug("found {} feeds that are up for refresh", nextUpdatableFeeds.size());
+			if (!isClassifyingFeeds()) {
+				for (Feed feed : nextUpdatableFeeds) {
+					// the feed is added only if it was not already queued
+					queue.offer(feed);
+				}
+				return;
+			}
+
+			List<Long> feedIds = nextUpdatableFeeds.stream().map(AbstractModel::getId).toList();
+			Map<Long, List<Long>> subscriberIds = unitOfWork.call(() -> feedSubscriptionDAO.findSubscriberIds(feedIds));
 			for (Feed feed : nextUpdatableFeeds) {
-				// add the feed only if it was not already queued
-				if (queue.stream().noneMatch(f -> f.getId().equals(feed.getId()))) {
-					queue.addLast(feed);
+				List<Long> subscribers = subscriberIds.getOrDefault(feed.getId(), List.of());
+				FeedRefreshPriority priority = getPriority(subscribers);
+				// feeds shared by several users are not accounted to any of them
+				Long owner = subscribers.size() == 1 ? subscribers.get(0) : null;
+				if (queue.offer(feed, priority, owner)) {
+					priorities.put(feed.getId(), priority);
 				}
 			}
 		}, refillExecutor).whenComplete((data, ex) -> {
@@ -153,31 +409,249 @@ public class FeedRefreshEngine implements Managed {
 		});
 	}
 
+	private FeedRefreshPriority getPriority(List<Long> subscribers) {
+		if (!Boolean.TRUE.equals(config.getApplicationSettings().getRefreshPriorities())) {
+			return FeedRefreshPriority.NORMAL;
+		}
+
+		if (subscribers.stream().anyMatch(activeUserService::isActive)) {
+			return FeedRefreshPriority.ACTIVE_USERS;
+		}
+		if (subscribers.size() >= config.getApplicationSettings().getPopularFeedSubscribers()) {
+			return FeedRefreshPriority.POPULAR;
+		}
+		return FeedRefreshPriority.NORMAL;
+	}
+
+	/**
+	 * gives up on refreshing the feed for now, it was already scheduled for the default interval when it was taken from the database
+	 */
+	private void skip(Feed feed) {
+		queue.release(feed.getId());
+		claimedFeeds.remove(feed.getId());
+		FeedRefreshPriority priority = priorities.remove(feed.getId());
+		if (isInMemoryScheduler()) {
+			scheduler.schedule(feed.getId(), getDefaultNextUpdateDate(),
+					priority == null || priority == FeedRefreshPriority.URGENT ? FeedRefreshPriority.NORMAL : priority);
+		}
+	}
+
 	private void processFeedAsync(Feed feed) {
-		CompletableFuture.supplyAsync(() -> worker.update(feed), workerExecutor)
-				.thenApplyAsync(r -> updater.update(r.feed(), r.entries()), databaseUpdaterExecutor)
+		long start = System.nanoTime();
+		fetchAsync(feed)
+				// the host is no longer busy once the feed has been fetched
+				.whenComplete((data, ex) -> hostLimiter.release(feed))
+				.thenCompose(this::updateAsync)
 				.whenComplete((data, ex) -> {
 					if (ex != null) {
 						log.error("error while processing feed {}", feed.getUrl(), ex);
+					} else {
+						// the feed is now saved with its hub, the hub can verify the subscription
+						webSubService.subscribeIfNeeded(feed);
+					}
+
+					// another feed of the same user can now be taken from the queue
+					queue.release(feed.getId());
+					claimedFeeds.remove(feed.getId());
+
+					// from the start of the fetch until the database is updated
+					long duration = System.nanoTime() - start;
+					refreshDuration.update(duration, TimeUnit.NANOSECONDS);
+					FeedRefreshPriority priority = priorities.remove(feed.getId());
+					refreshDurationByPriority.get(priority == null ? FeedRefreshPriority.NORMAL : priority)
+							.update(duration, TimeUnit.NANOSECONDS);
+					slowestFeeds.record(feed, TimeUnit.NANOSECONDS.toMillis(duration));
+
+					if (isInMemoryScheduler()) {
+						// disabledUntil may not have been updated if processing failed, retry after the default interval
+						// an urgent refresh says nothing about the class of the feed, it is reclassified when it is due again
+						scheduler.schedule(feed.getId(), ex == null ? feed.getDisabledUntil() : getDefaultNextUpdateDate(),
+								priority == null || priority == FeedRefreshPriority.URGENT ? FeedRefreshPriority.NORMAL : priority);
 					}
 				});
 	}
 
+	/**
+	 * fetches the feed, then prepares its new entries on the worker side so that the database updater only has to insert them
+	 */
+	private CompletableFuture<PreparedFeed> fetchAsync(Feed feed) {
+		if (!isAsyncFetch()) {
+			return workerExecutor.supplyAsync(() -> callMeasured(workerExecutor, workerLimit, () -> updater.prepare(worker.update(feed))));
+		}
+
+		try {
+			// blocks until a permit is available, bounding both the fetches in flight and the fetched feeds waiting to be parsed
+			asyncFetchPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.failedFuture(e);
+		}
+		return worker.updateAsync(feed, parseExecutor)
+				.thenApplyAsync(updater::prepare, parseExecutor)
+				.whenComplete((data, ex) -> asyncFetchPermits.release());
+	}
+
+	private CompletableFuture<Void> updateAsync(PreparedFeed result) {
+		if (isUsingDatabaseUpdateLanes()) {
+			int lane = Math.floorMod(result.getFeed().getId().hashCode(), databaseUpdateLanes.size());
+			return enqueue(databaseUpdateLanes.get(lane), result);
+		}
+
+		if (isBatchingDatabaseUpdates()) {
+			return enqueue(pendingUpdates, result);
+		}
+
+		return databaseUpdaterExecutor
+				.runAsync(() -> runMeasured(databaseUpdaterExecutor, databaseUpdaterLimit, () -> updater.update(result)));
+	}
+
+	private CompletableFuture<Void> enqueue(BlockingQueue<PendingUpdate> updates, PreparedFeed result) {
+		PendingUpdate pendingUpdate = new PendingUpdate(result, new CompletableFuture<>());
+		try {
+			// blocks until there is room in the queue, slowing down the workers if the database can't keep up
+			updates.put(pendingUpdate);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pendingUpdate.future().completeExceptionally(e);
+		}
+		return pendingUpdate.future();
+	}
+
+	private void loadSchedule() {
+		Map<Long, Instant> nextRefreshDates = unitOfWork.call(() -> feedDAO.findNextRefreshDates(getLastLoginThreshold()));
+		scheduler.scheduleAll(nextRefreshDates);
+		log.info("loaded the next refresh date of {} feeds in the refresh scheduler", nextRefreshDates.size());
+	}
+
 	private List<Feed> getNextUpdatableFeeds(int max) {
+		if (isInMemoryScheduler()) {
+			List<Long> feedIds = scheduler.pollDue(max);
+			if (feedIds.isEmpty()) {
+				return List.of();
+			}
+
+			// feeds deleted since they were scheduled are not returned
+			return unitOfWork.call(() -> feedDAO.findByIds(feedIds));
+		}
+
+		if (!Boolean.TRUE.equals(config.getApplicationSettings().getRefreshPriorities())) {
+			return getNextUpdatableFeeds(max, FeedFilter.NONE);
+		}
+
+		// pick the due feeds one priority class at a time, the feeds of a lower class are only picked if there is room left
+		List<FeedFilter> filters = new ArrayList<>();
+		Set<Long> activeUserIds = activeUserService.getActiveUserIds();
+		if (!activeUserIds.isEmpty()) {
+			filters.add(new FeedFilter(activeUserIds, null));
+		}
+		filters.add(new FeedFilter(null, config.getApplicationSettings().getPopularFeedSubscribers()));
+		filters.add(FeedFilter.NONE);
+
+		List<Feed> feeds = new ArrayList<>();
+		for (FeedFilter filter : filters) {
+			if (feeds.size() >= max) {
+				break;
+			}
+			// feeds picked by a previous class are not due anymore and are not picked again
+			feeds.addAll(getNextUpdatableFeeds(max - feeds.size(), filter));
+		}
+		return feeds;
+	}
+
+	private List<Feed> getNextUpdatableFeeds(int max, FeedFilter filter) {
+		if (clusterService.isClustered()) {
+			// other nodes may be looking for feeds to refresh at the same time, claim the feeds so that each feed is refreshed by one node
+			List<Feed> feeds = unitOfWork.call(() -> feedDAO.claimNextUpdatable(max, getLastLoginThreshold(), filter,
+					clusterService.getNodeId(), clusterService.getLeaseExpiration(), getDefaultNextUpdateDate()));
+			feeds.forEach(f -> claimedFeeds.add(f.getId()));
+			return feeds;
+		}
+
 		return unitOfWork.call(() -> {
-			Instant lastLoginThreshold = Boolean.TRUE.equals(config.getApplicationSettings().getHeavyLoad())
-					? Instant.now().minus(Duration.ofDays(30))
-					: null;
-			List<Feed> feeds = feedDAO.findNextUpdatable(max, lastLoginThreshold);
+			List<Feed> feeds = feedDAO.findNextUpdatable(max, getLastLoginThreshold(), filter);
 			// update disabledUntil to prevent feeds from being returned again by feedDAO.findNextUpdatable()
-			Instant nextUpdateDate = Instant.now().plus(Duration.ofMinutes(config.getApplicationSettings().getRefreshIntervalMinutes()));
-			feedDAO.setDisabledUntil(feeds.stream().map(AbstractModel::getId).toList(), nextUpdateDate);
+			feedDAO.setDisabledUntil(feeds.stream().map(AbstractModel::getId).toList(), getDefaultNextUpdateDate());
 			return feeds;
 		});
 	}
 
+	private Instant getLastLoginThreshold() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getHeavyLoad()) ? Instant.now().minus(Duration.ofDays(30)) : null;
+	}
+
+	private Instant getDefaultNextUpdateDate() {
+		return Instant.now().plus(Duration.ofMinutes(config.getApplicationSettings().getRefreshIntervalMinutes()));
+	}
+
+	private Duration getRefillLoopSleep() {
+		Duration max = Duration.ofSeconds(15);
+		if (!isInMemoryScheduler()) {
+			return max;
+		}
+
+		// wake up when the next feed is due, but don't spin
+		Duration untilNextDue = scheduler.timeUntilNextDue(max);
+		return untilNextDue.compareTo(Duration.ofSeconds(1)) < 0 ? Duration.ofSeconds(1) : untilNextDue;
+	}
+
+	/**
+	 * whether the subscribers of the feeds are needed to queue them, either for their priority or for the per-user limit
+	 */
+	private boolean isClassifyingFeeds() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getRefreshPriorities())
+				|| config.getApplicationSettings().getMaxConcurrentRefreshesPerUser() > 0;
+	}
+
+	private boolean isBatchingDatabaseUpdates() {
+		return config.getApplicationSettings().getDatabaseUpdateBatchSize() > 1;
+	}
+
+	/**
+	 * runs the task and reports its latency to the concurrency limit of the pool if adaptive thread pools are enabled
+	 */
+	private <T> T callMeasured(BoundedExecutor pool, AdaptiveConcurrencyLimit limit, Supplier<T> task) {
+		if (!isAdaptiveThreadPools()) {
+			return task.get();
+		}
+
+		long start = System.nanoTime();
+		try {
+			return task.get();
+		} finally {
+			// sampled at completion, this task still counts as active
+			limit.onSample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), pool.getActiveCount());
+		}
+	}
+
+	private void runMeasured(BoundedExecutor pool, AdaptiveConcurrencyLimit limit, Runnable task) {
+		callMeasured(pool, limit, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	private boolean isAdaptiveThreadPools() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getAdaptiveThreadPools());
+	}
+
+	private boolean isUsingDatabaseUpdateLanes() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getDatabaseUpdateLanes());
+	}
+
+	private boolean isAsyncFetch() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getAsyncFetch());
+	}
+
+	private boolean isInMemoryScheduler() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getInMemoryRefreshScheduler());
+	}
+
 	private int getBatchSize() {
-		return Math.min(100, 3 * config.getApplicationSettings().getBackgroundThreads());
+		if (isAsyncFetch()) {
+			// keep enough feeds in the queue to have all the permits in use
+			return Math.min(1000, config.getApplicationSettings().getMaxConcurrentAsyncFetches());
+		}
+		return Math.min(100, 3 * workerExecutor.getLimit());
 	}
 
 	@Override
@@ -185,8 +659,15 @@ public class FeedRefreshEngine implements Managed {
 		this.feedProcessingLoopExecutor.shutdownNow();
 		this.refillLoopExecutor.shutdownNow();
 		this.refillExecutor.shutdownNow();
+		this.databaseUpdateBatchingLoopExecutor.shutdownNow();
+		if (this.databaseUpdateLanesExecutor != null) {
+			this.databaseUpdateLanesExecutor.shutdownNow();
+		}
+		this.leaseRenewalExecutor.shutdownNow();
 		this.workerExecutor.shutdownNow();
 		this.databaseUpdaterExecutor.shutdownNow();
+		this.parseExecutor.shutdownNow();
+		this.hostLimiter.stop();
 	}
 
 	/**
@@ -198,23 +679,6 @@ public class FeedRefreshEngine implements Managed {
 		return pool;
 	}
 
-	/**
-	 * returns an ExecutorService that blocks submissions until a thread is available
-	 */
-	private ThreadPoolExecutor newBlockingExecutorService(int threads) {
-		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
-		pool.setRejectedExecutionHandler((r, e) -> {
-			if (e.isShutdown()) {
-				return;
-			}
-
-			try {
-				e.getQueue().put(r);
-			} catch (InterruptedException ex) {
-				log.debug("interrupted while waiting for a slot in the queue.", ex);
-				Thread.currentThread().interrupt();
-			}
-		});
-		return pool;
+	private record PendingUpdate(PreparedFeed result, CompletableFuture<Void> future) {
 	}
 }
@@ -4,7 +4,12 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
+import org.eclipse.jetty.http.HttpStatus;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.HttpGetter.HttpResponseException;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -12,23 +17,59 @@ import jakarta.inject.Singleton;
 @Singleton
 public class FeedRefreshIntervalCalculator {
 
+	private static final Duration MAX_STATISTICAL_REFRESH_INTERVAL = Duration.ofHours(24);
+
 	private final boolean heavyLoad;
 	private final int refreshIntervalMinutes;
+	private final boolean statisticalRefreshInterval;
+	private final double newEntryProbability;
+	private final boolean honorServerDirectedDelays;
+	private final Duration maxServerDirectedDelay;
+	private final Meter serverDirectedDelays;
+	private final boolean webSubEnabled;
+	private final Duration pushedFeedRefreshInterval;
 
 	@Inject
-	public FeedRefreshIntervalCalculator(CommaFeedConfiguration config) {
+	public FeedRefreshIntervalCalculator(CommaFeedConfiguration config, MetricRegistry metrics) {
 		this.heavyLoad = config.getApplicationSettings().getHeavyLoad();
 		this.refreshIntervalMinutes = config.getApplicationSettings().getRefreshIntervalMinutes();
+		this.statisticalRefreshInterval = config.getApplicationSettings().getStatisticalRefreshInterval();
+		this.newEntryProbability = config.getApplicationSettings().getNewEntryProbabilityPercent() / 100.0;
+		this.honorServerDirectedDelays = config.getApplicationSettings().getHonorServerDirectedDelays();
+		this.maxServerDirectedDelay = config.getApplicationSettings().getMaxServerDirectedDelay().toJavaDuration();
+		this.serverDirectedDelays = metrics.meter(MetricRegistry.name(getClass(), "serverDirectedDelays"));
+		this.webSubEnabled = config.getApplicationSettings().getWebSubEnabled();
+		this.pushedFeedRefreshInterval = config.getApplicationSettings().getPushedFeedRefreshInterval().toJavaDuration();
 	}
 
-	public Instant onFetchSuccess(Instant publishedDate, Long averageEntryInterval) {
+	/**
+	 * @param model
+	 *            the entry arrival model of the feed, null if statistical refresh intervals are disabled
+	 */
+	public Instant onFetchSuccess(Instant publishedDate, Long averageEntryInterval, EntryArrivalModel model) {
+		if (statisticalRefreshInterval && model != null && model.isReliable()) {
+			Duration min = Duration.ofMinutes(refreshIntervalMinutes);
+			Duration max = min.compareTo(MAX_STATISTICAL_REFRESH_INTERVAL) > 0 ? min : MAX_STATISTICAL_REFRESH_INTERVAL;
+			Instant nextCheck = model.getNextCheck(Instant.now(), newEntryProbability, min, max);
+			if (heavyLoad && isInactive(publishedDate)) {
+				// feeds that stopped publishing keep backing off under heavy load, whatever their past activity was
+				Instant backOff = computeRefreshIntervalForHeavyLoad(publishedDate, averageEntryInterval, getDefaultRefreshInterval());
+				return backOff.isAfter(nextCheck) ? backOff : nextCheck;
+			}
+			return nextCheck;
+		}
+
 		Instant defaultRefreshInterval = getDefaultRefreshInterval();
 		return heavyLoad ? computeRefreshIntervalForHeavyLoad(publishedDate, averageEntryInterval, defaultRefreshInterval)
 				: defaultRefreshInterval;
 	}
 
-	public Instant onFeedNotModified(Instant publishedDate, Long averageEntryInterval) {
-		return onFetchSuccess(publishedDate, averageEntryInterval);
+	public Instant onFeedNotModified(Instant publishedDate, Long averageEntryInterval, EntryArrivalModel model) {
+		return onFetchSuccess(publishedDate, averageEntryInterval, model);
+	}
+
+	public boolean isStatisticalRefreshInterval() {
+		return statisticalRefreshInterval;
 	}
 
 	public Instant onFetchError(int errorCount) {
@@ -41,6 +82,64 @@ public class FeedRefreshIntervalCalculator {
 		return Instant.now().plus(Duration.ofHours(disabledHours));
 	}
 
+	/**
+	 * postpones the next refresh until the response of the server expires, according to its cache headers
+	 *
+	 * @param validFor
+	 *            how long the server considers its response fresh, or null
+	 */
+	public Instant onCacheValidity(Instant nextRefresh, Duration validFor) {
+		return delay(nextRefresh, validFor);
+	}
+
+	/**
+	 * postpones the next refresh as long as the server asked us to with the Retry-After header, or backs off exponentially if the server is
+	 * overloaded but did not say for how long
+	 */
+	public Instant onHttpError(Instant nextRefresh, HttpResponseException e, int errorCount) {
+		Duration retryAfter = e.getRetryAfter();
+		if (retryAfter == null && (e.getCode() == HttpStatus.TOO_MANY_REQUESTS_429 || e.getCode() == HttpStatus.SERVICE_UNAVAILABLE_503)) {
+			retryAfter = Duration.ofMinutes(Math.max(1, refreshIntervalMinutes)).multipliedBy(1L << Math.min(errorCount, 10));
+		}
+		return delay(nextRefresh, retryAfter);
+	}
+
+	/**
+	 * new entries of feeds with a WebSub subscription are pushed by the hub, the feed is only refreshed once in a while in case the hub
+	 * misses an update
+	 *
+	 * @param pushLeaseExpiration
+	 *            the date until which the hub pushes new entries, or null
+	 */
+	public Instant onPushSubscription(Instant nextRefresh, Instant pushLeaseExpiration) {
+		Instant now = Instant.now();
+		if (!webSubEnabled || pushLeaseExpiration == null || pushLeaseExpiration.isBefore(now)) {
+			return nextRefresh;
+		}
+
+		Instant pushedNextRefresh = now.plus(pushedFeedRefreshInterval);
+		return pushedNextRefresh.isAfter(nextRefresh) ? pushedNextRefresh : nextRefresh;
+	}
+
+	private Instant delay(Instant nextRefresh, Duration serverDelay) {
+		if (!honorServerDirectedDelays || serverDelay == null) {
+			return nextRefresh;
+		}
+
+		Duration delay = serverDelay.compareTo(maxServerDirectedDelay) > 0 ? maxServerDirectedDelay : serverDelay;
+		Instant serverNextRefresh = Instant.now().plus(delay);
+		if (!serverNextRefresh.isAfter(nextRefresh)) {
+			return nextRefresh;
+		}
+
+		serverDirectedDelays.mark();
+		return serverNextRefresh;
+	}
+
+	private static boolean isInactive(Instant publishedDate) {
+		return publishedDate == null || ChronoUnit.DAYS.between(publishedDate, Instant.now()) >= 7;
+	}
+
 	private Instant getDefaultRefreshInterval() {
 		return Instant.now().plus(Duration.ofMinutes(refreshIntervalMinutes));
 	}
@@ -0,0 +1,32 @@
+package com.commafeed.backend.feed;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Priority classes of the refresh queue, from the highest to the lowest priority
+ */
+@Getter
+@RequiredArgsConstructor
+enum FeedRefreshPriority {
+
+	/**
+	 * feeds a user explicitly asked to refresh
+	 */
+	URGENT("urgent"),
+
+	/**
+	 * feeds of users currently using the application
+	 */
+	ACTIVE_USERS("activeUsers"),
+
+	/**
+	 * feeds with a lot of subscribers
+	 */
+	POPULAR("popular"),
+
+	NORMAL("normal");
+
+	private final String metricName;
+
+}
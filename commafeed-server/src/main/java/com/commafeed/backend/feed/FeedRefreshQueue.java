@@ -0,0 +1,349 @@
+package com.commafeed.backend.feed;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.commafeed.backend.model.Feed;
+
+/**
+ * Queue of feeds waiting to be refreshed, indexed by feed id. A feed is never queued twice.
+ *
+ * Feeds are queued in one lane per {@link FeedRefreshPriority}, feeds of a lane are taken before the feeds of the lanes of lower priority.
+ * Feeds requested by users go to the urgent lane.
+ *
+ * Within a lane, feeds are grouped by owner and owners take turns, so that a user with a lot of feeds does not delay the feeds of other
+ * users. Optionally, the number of feeds of an owner being refreshed at the same time can be capped.
+ */
+class FeedRefreshQueue {
+
+	// lane key of the feeds that are not accounted to any owner
+	private static final Long NO_OWNER = -1L;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+
+	private final Map<FeedRefreshPriority, Lane> lanes = new EnumMap<>(FeedRefreshPriority.class);
+	private final Map<Long, QueuedFeed> queued = new HashMap<>();
+
+	// feeds taken from the queue and not yet released, by owner
+	private final int maxInFlightPerOwner;
+	// a feed can be taken again while it's still in flight (e.g. refreshed manually), each take is released separately
+	private final Map<Long, Deque<Long>> inFlightOwners = new HashMap<>();
+	private final Map<Long, Integer> inFlightByOwner = new HashMap<>();
+
+	private final Timer wait;
+	private final Map<FeedRefreshPriority, Timer> waitByPriority = new EnumMap<>(FeedRefreshPriority.class);
+
+	FeedRefreshQueue(MetricRegistry metrics) {
+		this(0, metrics);
+	}
+
+	/**
+	 * @param maxInFlightPerOwner
+	 *            maximum number of feeds of the same owner taken from the queue and not yet released, 0 for no limit
+	 */
+	FeedRefreshQueue(int maxInFlightPerOwner, MetricRegistry metrics) {
+		this.maxInFlightPerOwner = maxInFlightPerOwner;
+		for (FeedRefreshPriority priority : FeedRefreshPriority.values()) {
+			lanes.put(priority, new Lane());
+		}
+
+		this.wait = metrics.timer(MetricRegistry.name(getClass(), "wait"));
+		for (FeedRefreshPriority priority : FeedRefreshPriority.values()) {
+			String name = priority.getMetricName();
+			waitByPriority.put(priority, metrics.timer(MetricRegistry.name(getClass(), name, "wait")));
+			metrics.register(MetricRegistry.name(getClass(), name, "size"), (Gauge<Integer>) () -> locked(() -> lanes.get(priority).size));
+		}
+		metrics.register(MetricRegistry.name(getClass(), "oldest", "age"), (Gauge<Long>) this::getAgeOfOldestMillis);
+	}
+
+	/**
+	 * add the feed at the end of the normal lane
+	 *
+	 * @return false if the feed was already queued
+	 */
+	boolean offer(Feed feed) {
+		return offer(feed, FeedRefreshPriority.NORMAL, null);
+	}
+
+	/**
+	 * add the feed at the end of the lane of the given priority
+	 *
+	 * @param owner
+	 *            the user the feed is accounted to for fair share, or null
+	 * @return false if the feed was already queued
+	 */
+	boolean offer(Feed feed, FeedRefreshPriority priority, Long owner) {
+		lock.lock();
+		try {
+			if (queued.containsKey(feed.getId())) {
+				return false;
+			}
+
+			add(new QueuedFeed(feed, System.currentTimeMillis(), priority, owner));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * add the feed to the urgent lane, or move it there if it was already waiting in another lane
+	 */
+	void offerUrgent(Feed feed) {
+		lock.lock();
+		try {
+			QueuedFeed existing = queued.get(feed.getId());
+			if (existing != null && existing.priority() == FeedRefreshPriority.URGENT) {
+				// keep the position of a feed that was already in the urgent lane, but use the latest feed instance
+				QueuedFeed replacement = new QueuedFeed(feed, existing.enqueuedAt(), existing.priority(), existing.owner());
+				lanes.get(FeedRefreshPriority.URGENT).replace(replacement);
+				queued.put(feed.getId(), replacement);
+				return;
+			}
+
+			if (existing != null) {
+				removeQueued(existing);
+			}
+			add(new QueuedFeed(feed, System.currentTimeMillis(), FeedRefreshPriority.URGENT, null));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return true if the feed was queued
+	 */
+	boolean remove(Long feedId) {
+		lock.lock();
+		try {
+			QueuedFeed existing = queued.get(feedId);
+			if (existing == null) {
+				return false;
+			}
+
+			removeQueued(existing);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean contains(Long feedId) {
+		lock.lock();
+		try {
+			return queued.containsKey(feedId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * take the next feed, waiting until a feed is available
+	 */
+	Feed take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			QueuedFeed next;
+			while ((next = pollNext()) == null) {
+				available.await();
+			}
+
+			long waited = System.currentTimeMillis() - next.enqueuedAt();
+			wait.update(waited, TimeUnit.MILLISECONDS);
+			waitByPriority.get(next.priority()).update(waited, TimeUnit.MILLISECONDS);
+
+			if (next.owner() != null && maxInFlightPerOwner > 0) {
+				inFlightOwners.computeIfAbsent(next.feed().getId(), id -> new ArrayDeque<>()).addLast(next.owner());
+				inFlightByOwner.merge(next.owner(), 1, Integer::sum);
+			}
+			return next.feed();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * the feed taken from the queue has been refreshed, another feed of its owner can be taken
+	 */
+	void release(Long feedId) {
+		lock.lock();
+		try {
+			Deque<Long> owners = inFlightOwners.get(feedId);
+			Long owner = owners == null ? null : owners.pollFirst();
+			if (owners != null && owners.isEmpty()) {
+				inFlightOwners.remove(feedId);
+			}
+			if (owner != null) {
+				inFlightByOwner.computeIfPresent(owner, (k, v) -> v <= 1 ? null : v - 1);
+				available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		lock.lock();
+		try {
+			return queued.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return true if no feed can be taken right now, either because the queue is empty or because all the owners of the queued feeds
+	 *         reached their limit
+	 */
+	boolean isExhausted() {
+		lock.lock();
+		try {
+			return lanes.values().stream().allMatch(lane -> lane.findAvailableOwner() == null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * how long the oldest queued feed has been waiting, 0 if the queue is empty
+	 */
+	long getAgeOfOldestMillis() {
+		lock.lock();
+		try {
+			long oldest = lanes.values().stream().mapToLong(Lane::getOldestEnqueuedAt).min().orElse(Long.MAX_VALUE);
+			return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void add(QueuedFeed queuedFeed) {
+		queued.put(queuedFeed.feed().getId(), queuedFeed);
+		lanes.get(queuedFeed.priority()).add(queuedFeed);
+		available.signal();
+	}
+
+	private void removeQueued(QueuedFeed queuedFeed) {
+		queued.remove(queuedFeed.feed().getId());
+		lanes.get(queuedFeed.priority()).remove(queuedFeed);
+	}
+
+	private QueuedFeed pollNext() {
+		for (Lane lane : lanes.values()) {
+			QueuedFeed next = lane.poll();
+			if (next != null) {
+				queued.remove(next.feed().getId());
+				return next;
+			}
+		}
+		return null;
+	}
+
+	private boolean isOwnerAvailable(Long owner) {
+		return NO_OWNER.equals(owner) || maxInFlightPerOwner <= 0 || inFlightByOwner.getOrDefault(owner, 0) < maxInFlightPerOwner;
+	}
+
+	private <T> T locked(Supplier<T> supplier) {
+		lock.lock();
+		try {
+			return supplier.get();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Feeds of a priority, grouped by owner. Owners take turns: once a feed of an owner has been taken, the owner goes to the end of the
+	 * line.
+	 */
+	private class Lane {
+
+		// insertion-ordered, the first owner is the next one to be served, the first feed of each owner is its oldest one
+		private final LinkedHashMap<Long, LinkedHashMap<Long, QueuedFeed>> feedsByOwner = new LinkedHashMap<>();
+		private int size;
+
+		void add(QueuedFeed queuedFeed) {
+			feedsByOwner.computeIfAbsent(key(queuedFeed), k -> new LinkedHashMap<>()).put(queuedFeed.feed().getId(), queuedFeed);
+			size++;
+		}
+
+		void replace(QueuedFeed queuedFeed) {
+			feedsByOwner.get(key(queuedFeed)).put(queuedFeed.feed().getId(), queuedFeed);
+		}
+
+		void remove(QueuedFeed queuedFeed) {
+			Map<Long, QueuedFeed> feeds = feedsByOwner.get(key(queuedFeed));
+			if (feeds != null && feeds.remove(queuedFeed.feed().getId()) != null) {
+				size--;
+				if (feeds.isEmpty()) {
+					feedsByOwner.remove(key(queuedFeed));
+				}
+			}
+		}
+
+		QueuedFeed poll() {
+			Long owner = findAvailableOwner();
+			if (owner == null) {
+				return null;
+			}
+
+			LinkedHashMap<Long, QueuedFeed> feeds = feedsByOwner.remove(owner);
+			Iterator<QueuedFeed> it = feeds.values().iterator();
+			QueuedFeed first = it.next();
+			it.remove();
+			size--;
+
+			// the owner goes to the end of the line
+			if (!feeds.isEmpty()) {
+				feedsByOwner.put(owner, feeds);
+			}
+			return first;
+		}
+
+		/**
+		 * @return the first owner that can have a feed taken, or null if there is none
+		 */
+		Long findAvailableOwner() {
+			for (Long owner : feedsByOwner.keySet()) {
+				if (isOwnerAvailable(owner)) {
+					return owner;
+				}
+			}
+			return null;
+		}
+
+		private Long key(QueuedFeed queuedFeed) {
+			return queuedFeed.owner() == null ? NO_OWNER : queuedFeed.owner();
+		}
+
+		long getOldestEnqueuedAt() {
+			return feedsByOwner.values()
+					.stream()
+					.flatMap(feeds -> feeds.values().stream().findFirst().stream())
+					.mapToLong(QueuedFeed::enqueuedAt)
+					.min()
+					.orElse(Long.MAX_VALUE);
+		}
+	}
+
+	private record QueuedFeed(Feed feed, long enqueuedAt, FeedRefreshPriority priority, Long owner) {
+	}
+
+}
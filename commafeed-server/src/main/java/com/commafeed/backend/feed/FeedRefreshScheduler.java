@@ -0,0 +1,151 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Keeps the next refresh date of every feed in memory so that due feeds can be handed out without querying the database.
+ *
+ * Only used when the in-memory refresh scheduler is enabled, the database remains the source of truth on startup.
+ *
+ * Each feed is scheduled with the priority class it had when it was last refreshed, due feeds of the highest classes are handed out
+ * first.
+ */
+@Singleton
+public class FeedRefreshScheduler {
+
+	private final long maxJitterMillis;
+
+	// the heaps may contain stale entries for feeds that were rescheduled, they are skipped when polled
+	private final Map<FeedRefreshPriority, PriorityQueue<ScheduledFeed>> heaps = new EnumMap<>(FeedRefreshPriority.class);
+	private final Map<Long, Instant> nextRefreshByFeedId = new HashMap<>();
+
+	@Inject
+	public FeedRefreshScheduler(CommaFeedConfiguration config, MetricRegistry metrics) {
+		this.maxJitterMillis = Duration.ofMinutes(config.getApplicationSettings().getRefreshIntervalMinutes()).toMillis();
+		for (FeedRefreshPriority priority : FeedRefreshPriority.values()) {
+			heaps.put(priority, new PriorityQueue<>(Comparator.comparing(ScheduledFeed::nextRefresh)));
+		}
+
+		metrics.register(MetricRegistry.name(getClass(), "size"), (Gauge<Integer>) this::size);
+	}
+
+	/**
+	 * schedule feeds loaded from the database, feeds that are already overdue are spread over the refresh interval so they don't all
+	 * fire at once
+	 */
+	public synchronized void scheduleAll(Map<Long, Instant> nextRefreshByFeed) {
+		Instant now = Instant.now();
+		nextRefreshByFeed.forEach((feedId, nextRefresh) -> {
+			if (nextRefresh == null || nextRefresh.isBefore(now)) {
+				put(feedId, now.plusMillis(randomJitter(maxJitterMillis)), FeedRefreshPriority.NORMAL);
+			} else {
+				put(feedId, withJitter(now, nextRefresh), FeedRefreshPriority.NORMAL);
+			}
+		});
+	}
+
+	/**
+	 * schedule the next refresh of a feed, replacing any previously scheduled refresh
+	 */
+	public synchronized void schedule(Long feedId, Instant nextRefresh) {
+		schedule(feedId, nextRefresh, FeedRefreshPriority.NORMAL);
+	}
+
+	/**
+	 * schedule the next refresh of a feed in the given priority class, replacing any previously scheduled refresh
+	 */
+	public synchronized void schedule(Long feedId, Instant nextRefresh, FeedRefreshPriority priority) {
+		Instant now = Instant.now();
+		put(feedId, nextRefresh == null ? now : withJitter(now, nextRefresh), priority);
+	}
+
+	public synchronized void unschedule(Long feedId) {
+		nextRefreshByFeedId.remove(feedId);
+	}
+
+	/**
+	 * removes and returns up to max feed ids that are due for refresh, highest priority class first then most overdue first
+	 */
+	public synchronized List<Long> pollDue(int max) {
+		Instant now = Instant.now();
+		List<Long> due = new ArrayList<>();
+		for (PriorityQueue<ScheduledFeed> heap : heaps.values()) {
+			while (due.size() < max && !heap.isEmpty() && !heap.peek().nextRefresh().isAfter(now)) {
+				ScheduledFeed scheduled = heap.poll();
+				if (scheduled.nextRefresh().equals(nextRefreshByFeedId.get(scheduled.feedId()))) {
+					nextRefreshByFeedId.remove(scheduled.feedId());
+					due.add(scheduled.feedId());
+				}
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * time until the next feed is due, capped at the given maximum
+	 */
+	public synchronized Duration timeUntilNextDue(Duration max) {
+		Instant now = Instant.now();
+		Duration untilNext = max;
+		for (PriorityQueue<ScheduledFeed> heap : heaps.values()) {
+			discardStaleHead(heap);
+			if (!heap.isEmpty()) {
+				Duration untilHead = Duration.between(now, heap.peek().nextRefresh());
+				if (untilHead.compareTo(untilNext) < 0) {
+					untilNext = untilHead;
+				}
+			}
+		}
+		return untilNext.isNegative() ? Duration.ZERO : untilNext;
+	}
+
+	public synchronized int size() {
+		return nextRefreshByFeedId.size();
+	}
+
+	private void put(Long feedId, Instant nextRefresh, FeedRefreshPriority priority) {
+		nextRefreshByFeedId.put(feedId, nextRefresh);
+		heaps.get(priority).add(new ScheduledFeed(feedId, nextRefresh));
+	}
+
+	private void discardStaleHead(PriorityQueue<ScheduledFeed> heap) {
+		while (!heap.isEmpty() && !heap.peek().nextRefresh().equals(nextRefreshByFeedId.get(heap.peek().feedId()))) {
+			heap.poll();
+		}
+	}
+
+	/**
+	 * delay the refresh by up to 10% of the time until the refresh, capped at the refresh interval
+	 */
+	private Instant withJitter(Instant now, Instant nextRefresh) {
+		long delay = Duration.between(now, nextRefresh).toMillis();
+		if (delay <= 0) {
+			return nextRefresh;
+		}
+		return nextRefresh.plusMillis(randomJitter(Math.min(delay / 10, maxJitterMillis)));
+	}
+
+	private static long randomJitter(long bound) {
+		return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+	}
+
+	private record ScheduledFeed(Long feedId, Instant nextRefresh) {
+	}
+
+}
@@ -1,11 +1,10 @@
 package com.commafeed.backend.feed;
 
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,13 +12,19 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.hibernate.exception.ConstraintViolationException;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.commafeed.CommaFeedConfiguration;
 import com.commafeed.backend.Digests;
 import com.commafeed.backend.cache.CacheService;
 import com.commafeed.backend.dao.FeedSubscriptionDAO;
 import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.feed.FeedRefreshWorker.FeedRefreshWorkerResult;
 import com.commafeed.backend.feed.parser.FeedParserResult.Content;
 import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
 import com.commafeed.backend.model.Feed;
@@ -28,14 +33,17 @@ import com.commafeed.backend.model.FeedSubscription;
 import com.commafeed.backend.model.Models;
 import com.commafeed.backend.model.User;
 import com.commafeed.backend.service.FeedEntryService;
+import com.commafeed.backend.service.FeedEntryService.PreparedEntry;
 import com.commafeed.backend.service.FeedService;
 import com.commafeed.frontend.ws.WebSocketMessageBuilder;
 import com.commafeed.frontend.ws.WebSocketSessions;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Striped;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -53,15 +61,23 @@ public class FeedRefreshUpdater {
 	private final WebSocketSessions webSocketSessions;
 
 	private final Striped<Lock> locks;
+	// updates of a feed are serialized by the engine, locking is not needed
+	private final boolean lockless;
 
 	private final Meter entryCacheMiss;
 	private final Meter entryCacheHit;
 	private final Meter feedUpdated;
 	private final Meter entryInserted;
+	private final Timer preparation;
+	private final Timer lockWait;
+	private final Timer commit;
+	private final Timer connectionHold;
+	private final Timer batchCommit;
+	private final Histogram batchSize;
 
 	@Inject
 	public FeedRefreshUpdater(UnitOfWork unitOfWork, FeedService feedService, FeedEntryService feedEntryService, MetricRegistry metrics,
-			FeedSubscriptionDAO feedSubscriptionDAO, CacheService cache, WebSocketSessions webSocketSessions) {
+			FeedSubscriptionDAO feedSubscriptionDAO, CacheService cache, WebSocketSessions webSocketSessions, CommaFeedConfiguration config) {
 		this.unitOfWork = unitOfWork;
 		this.feedService = feedService;
 		this.feedEntryService = feedEntryService;
@@ -70,109 +86,166 @@ public class FeedRefreshUpdater {
 		this.webSocketSessions = webSocketSessions;
 
 		locks = Striped.lazyWeakLock(100000);
+		lockless = Boolean.TRUE.equals(config.getApplicationSettings().getDatabaseUpdateLanes());
 
 		entryCacheMiss = metrics.meter(MetricRegistry.name(getClass(), "entryCacheMiss"));
 		entryCacheHit = metrics.meter(MetricRegistry.name(getClass(), "entryCacheHit"));
 		feedUpdated = metrics.meter(MetricRegistry.name(getClass(), "feedUpdated"));
 		entryInserted = metrics.meter(MetricRegistry.name(getClass(), "entryInserted"));
+		preparation = metrics.timer(MetricRegistry.name(getClass(), "preparation"));
+		lockWait = metrics.timer(MetricRegistry.name(getClass(), "lockWait"));
+		commit = metrics.timer(MetricRegistry.name(getClass(), "commit"));
+		connectionHold = metrics.timer(MetricRegistry.name(getClass(), "connectionHold"));
+		batchCommit = metrics.timer(MetricRegistry.name(getClass(), "batchCommit"));
+		batchSize = metrics.histogram(MetricRegistry.name(getClass(), "batchSize"));
 	}
 
-	private AddEntryResult addEntry(final Feed feed, final Entry entry, final List<FeedSubscription> subscriptions) {
-		boolean processed = false;
-		boolean inserted = false;
-		Set<FeedSubscription> subscriptionsForWhichEntryIsUnread = new HashSet<>();
+	/**
+	 * Finds the new entries of the feed and cleans them, so that updating the database only requires lookups and inserts. This is called
+	 * by the workers before the feed is sent to {@link #update(PreparedFeed)}.
+	 */
+	public PreparedFeed prepare(Feed feed, List<Entry> entries) {
+		Set<String> lastEntries = entries.isEmpty() ? Collections.emptySet() : cache.getLastEntries(feed);
+		List<String> currentEntries = new ArrayList<>();
+		List<Entry> cacheMisses = new ArrayList<>();
+		for (Entry entry : entries) {
+			String cacheKey = cache.buildUniqueEntryKey(entry);
+			if (!lastEntries.contains(cacheKey)) {
+				log.debug("cache miss for {}", entry.url());
+				cacheMisses.add(entry);
+				entryCacheMiss.mark();
+			} else {
+				log.debug("cache hit for {}", entry.url());
+				entryCacheHit.mark();
+			}
+
+			currentEntries.add(cacheKey);
+		}
+
+		PreparedFeed preparedFeed = new PreparedFeed(feed, !entries.isEmpty(), currentEntries);
+		if (!cacheMisses.isEmpty()) {
+			// only the entries that are not in the database yet need to be cleaned
+			long start = System.nanoTime();
+			List<Entry> newEntries = unitOfWork.call(() -> feedEntryService.findNewEntries(feed, cacheMisses));
+			preparedFeed.connectionHoldNanos += System.nanoTime() - start;
 
+			Timer.Context preparationContext = preparation.time();
+			preparedFeed.newEntries = feedEntryService.prepare(feed, newEntries);
+			preparationContext.stop();
+		}
+		return preparedFeed;
+	}
+
+	public PreparedFeed prepare(FeedRefreshWorkerResult result) {
+		return prepare(result.feed(), result.entries());
+	}
+
+	private boolean addEntries(PreparedFeed preparedFeed) {
+		Feed feed = preparedFeed.feed;
 		// lock on feed, make sure we are not updating the same feed twice at
 		// the same time
-		String key1 = StringUtils.trimToEmpty(String.valueOf(feed.getId()));
-
-		// lock on content, make sure we are not updating the same entry
+		// lock on contents, make sure we are not updating the same entry
 		// twice at the same time
-		Content content = entry.content();
-		String key2 = Digests.sha1Hex(StringUtils.trimToEmpty(content.content() + content.title()));
+		Set<String> keys = new HashSet<>();
+		keys.add(buildFeedLockKey(feed));
+		preparedFeed.newEntries.forEach(e -> keys.add(buildContentLockKey(e.entry())));
 
-		Iterator<Lock> iterator = locks.bulkGet(Arrays.asList(key1, key2)).iterator();
-		Lock lock1 = iterator.next();
-		Lock lock2 = iterator.next();
-		boolean locked1 = false;
-		boolean locked2 = false;
+		List<Lock> acquired = new ArrayList<>();
 		try {
-			// try to lock, give up after 1 minute
-			locked1 = lock1.tryLock(1, TimeUnit.MINUTES);
-			locked2 = lock2.tryLock(1, TimeUnit.MINUTES);
-			if (locked1 && locked2) {
-				processed = true;
-				inserted = unitOfWork.call(() -> {
-					Instant now = Instant.now();
-					FeedEntry feedEntry = feedEntryService.findOrCreate(feed, entry);
-					boolean newEntry = !feedEntry.getInserted().isBefore(now);
-					if (newEntry) {
-						entryInserted.mark();
-						for (FeedSubscription sub : subscriptions) {
-							boolean unread = feedEntryService.applyFilter(sub, feedEntry);
-							if (unread) {
-								subscriptionsForWhichEntryIsUnread.add(sub);
-							}
-						}
+			// the wait is also recorded when giving up, lock timeouts are the waits we want to see the most
+			Timer.Context lockWaitContext = lockWait.time();
+			try {
+				for (Lock lock : getLocks(keys)) {
+					// try to lock, give up after 1 minute
+					if (!lock.tryLock(1, TimeUnit.MINUTES)) {
+						log.error("lock timeout for " + feed.getUrl());
+						return false;
 					}
-					return newEntry;
-				});
-			} else {
-				log.error("lock timeout for " + feed.getUrl() + " - " + key1);
+					acquired.add(lock);
+				}
+			} finally {
+				lockWaitContext.stop();
+			}
+
+			Timer.Context commitContext = commit.time();
+			try {
+				try {
+					unitOfWork.run(() -> insertNewEntries(preparedFeed));
+				} catch (RuntimeException e) {
+					if (ExceptionUtils.indexOfType(e, ConstraintViolationException.class) == -1) {
+						throw e;
+					}
+
+					// an equivalent content was inserted by another transaction in the meantime, it is found and reused this time
+					log.debug("content inserted concurrently for {}, inserting entries again", feed.getUrl());
+					preparedFeed.resetUpdate();
+					unitOfWork.run(() -> insertNewEntries(preparedFeed));
+				}
+				return true;
+			} finally {
+				preparedFeed.connectionHoldNanos += commitContext.stop();
 			}
 		} catch (InterruptedException e) {
 			log.error("interrupted while waiting for lock for " + feed.getUrl() + " : " + e.getMessage(), e);
+			return false;
 		} finally {
-			if (locked1) {
-				lock1.unlock();
-			}
-			if (locked2) {
-				lock2.unlock();
+			acquired.forEach(Lock::unlock);
+		}
+	}
+
+	/**
+	 * inserts the entries of the feed that are still new, must be called in a transaction
+	 */
+	private void insertNewEntries(PreparedFeed preparedFeed) {
+		Feed feed = preparedFeed.feed;
+		// check again now that we hold the locks, entries may have been inserted in the meantime
+		List<PreparedEntry> newEntries = feedEntryService.findNewPreparedEntries(feed, preparedFeed.newEntries);
+		if (newEntries.isEmpty()) {
+			return;
+		}
+
+		preparedFeed.subscriptions = feedSubscriptionDAO.findByFeed(feed);
+		preparedFeed.inserted = insertEntries(feed, newEntries, preparedFeed.subscriptions, preparedFeed.unreadCountBySubscription);
+	}
+
+	/**
+	 * inserts the new entries of the feed, must be called in a transaction
+	 *
+	 * @return the number of inserted entries
+	 */
+	private int insertEntries(Feed feed, List<PreparedEntry> newEntries, List<FeedSubscription> subscriptions,
+			Map<FeedSubscription, Long> unreadCountBySubscription) {
+		List<FeedEntry> feedEntries = feedEntryService.create(feed, newEntries);
+		for (int i = 0; i < feedEntries.size(); i++) {
+			for (FeedSubscription sub : feedEntryService.applyFilters(subscriptions, feedEntries.get(i), newEntries.get(i).filterable())) {
+				unreadCountBySubscription.merge(sub, 1L, Long::sum);
 			}
 		}
-		return new AddEntryResult(processed, inserted, subscriptionsForWhichEntryIsUnread);
+		return feedEntries.size();
 	}
 
 	public boolean update(Feed feed, List<Entry> entries) {
+		return update(prepare(feed, entries));
+	}
+
+	public boolean update(PreparedFeed preparedFeed) {
+		Feed feed = preparedFeed.feed;
 		boolean processed = true;
-		long inserted = 0;
-		Map<FeedSubscription, Long> unreadCountBySubscription = new HashMap<>();
-
-		if (!entries.isEmpty()) {
-			Set<String> lastEntries = cache.getLastEntries(feed);
-			List<String> currentEntries = new ArrayList<>();
-
-			List<FeedSubscription> subscriptions = null;
-			for (Entry entry : entries) {
-				String cacheKey = cache.buildUniqueEntryKey(entry);
-				if (!lastEntries.contains(cacheKey)) {
-					log.debug("cache miss for {}", entry.url());
-					if (subscriptions == null) {
-						subscriptions = unitOfWork.call(() -> feedSubscriptionDAO.findByFeed(feed));
-					}
-					AddEntryResult addEntryResult = addEntry(feed, entry, subscriptions);
-					processed &= addEntryResult.processed;
-					inserted += addEntryResult.inserted ? 1 : 0;
-					addEntryResult.subscriptionsForWhichEntryIsUnread.forEach(sub -> unreadCountBySubscription.merge(sub, 1L, Long::sum));
-
-					entryCacheMiss.mark();
-				} else {
-					log.debug("cache hit for {}", entry.url());
-					entryCacheHit.mark();
-				}
 
-				currentEntries.add(cacheKey);
+		if (preparedFeed.hasEntries) {
+			// insert all new entries at once
+			if (!preparedFeed.newEntries.isEmpty()) {
+				processed = addEntries(preparedFeed);
 			}
-			cache.setLastEntries(feed, currentEntries);
+			cache.setLastEntries(feed, preparedFeed.currentEntries);
 
-			if (subscriptions == null) {
-				feed.setMessage("No new entries found");
-			} else if (inserted > 0) {
-				List<User> users = subscriptions.stream().map(FeedSubscription::getUser).toList();
-				cache.invalidateUnreadCount(subscriptions.toArray(new FeedSubscription[0]));
-				cache.invalidateUserRootCategory(users.toArray(new User[0]));
-
-				notifyOverWebsocket(unreadCountBySubscription);
+			if (preparedFeed.subscriptions == null) {
+				if (processed) {
+					feed.setMessage("No new entries found");
+				}
+			} else if (preparedFeed.inserted > 0) {
+				entryInserted.mark(preparedFeed.inserted);
+				invalidateCachesAndNotify(preparedFeed);
 			}
 		}
 
@@ -181,25 +254,185 @@ public class FeedRefreshUpdater {
 			feed.setDisabledUntil(Models.MINIMUM_INSTANT);
 		}
 
-		if (inserted > 0) {
+		if (preparedFeed.inserted > 0) {
 			feedUpdated.mark();
 		}
 
+		long start = System.nanoTime();
 		unitOfWork.run(() -> feedService.save(feed));
+		preparedFeed.connectionHoldNanos += System.nanoTime() - start;
+		connectionHold.update(preparedFeed.connectionHoldNanos, TimeUnit.NANOSECONDS);
 
 		return processed;
 	}
 
+	/**
+	 * Updates multiple feeds and inserts their new entries in a single transaction. Falls back to updating feeds one by one if the batch
+	 * could not be committed.
+	 */
+	public void update(List<PreparedFeed> batch) {
+		if (batch.size() == 1) {
+			update(batch.get(0));
+			return;
+		}
+
+		Set<String> lockKeys = new HashSet<>();
+		for (PreparedFeed preparedFeed : batch) {
+			if (preparedFeed.hasEntries && preparedFeed.newEntries.isEmpty()) {
+				preparedFeed.feed.setMessage("No new entries found");
+			}
+			preparedFeed.newEntries.forEach(e -> lockKeys.add(buildContentLockKey(e.entry())));
+			lockKeys.add(buildFeedLockKey(preparedFeed.feed));
+		}
+
+		List<Lock> batchLocks = getLocks(lockKeys);
+		List<Lock> acquired = new ArrayList<>();
+		boolean interrupted = false;
+		try {
+			Timer.Context lockWaitContext = lockWait.time();
+			try {
+				for (Lock lock : batchLocks) {
+					if (!lock.tryLock(1, TimeUnit.MINUTES)) {
+						log.error("lock timeout while updating a batch of {} feeds, updating them one by one", batch.size());
+						break;
+					}
+					acquired.add(lock);
+				}
+			} finally {
+				lockWaitContext.stop();
+			}
+
+			if (acquired.size() == batchLocks.size()) {
+				commitBatch(batch);
+				batchSize.update(batch.size());
+				afterBatchCommit(batch);
+				return;
+			}
+		} catch (InterruptedException e) {
+			// nothing was written yet, the feeds are still updated one by one so that they are saved and their futures complete normally
+			log.error("interrupted while waiting for locks for a batch of {} feeds, updating them one by one", batch.size(), e);
+			interrupted = true;
+		} catch (Exception e) {
+			log.error("error while updating a batch of {} feeds, updating them one by one", batch.size(), e);
+			// the state of the failed attempt is discarded, the prepared entries are left untouched and can be inserted again
+			batch.forEach(PreparedFeed::resetUpdate);
+		} finally {
+			acquired.forEach(Lock::unlock);
+		}
+
+		batch.forEach(this::update);
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void commitBatch(List<PreparedFeed> batch) {
+		Timer.Context context = batchCommit.time();
+		try {
+			unitOfWork.run(() -> {
+				for (PreparedFeed preparedFeed : batch) {
+					Feed feed = preparedFeed.feed;
+					feedService.save(feed);
+
+					if (preparedFeed.newEntries.isEmpty()) {
+						continue;
+					}
+
+					List<PreparedEntry> newEntries = feedEntryService.findNewPreparedEntries(feed, preparedFeed.newEntries);
+					if (newEntries.isEmpty()) {
+						// the feed is attached to the session, the message will be flushed on commit
+						feed.setMessage("No new entries found");
+						continue;
+					}
+
+					preparedFeed.subscriptions = feedSubscriptionDAO.findByFeed(feed);
+					preparedFeed.inserted = insertEntries(feed, newEntries, preparedFeed.subscriptions,
+							preparedFeed.unreadCountBySubscription);
+				}
+			});
+		} finally {
+			// the connection is held for the whole batch, each feed is accounted for its share
+			long batchNanos = context.stop();
+			batch.forEach(f -> f.connectionHoldNanos += batchNanos / batch.size());
+		}
+	}
+
+	private void afterBatchCommit(List<PreparedFeed> batch) {
+		for (PreparedFeed preparedFeed : batch) {
+			connectionHold.update(preparedFeed.connectionHoldNanos, TimeUnit.NANOSECONDS);
+			if (!preparedFeed.hasEntries) {
+				continue;
+			}
+
+			cache.setLastEntries(preparedFeed.feed, preparedFeed.currentEntries);
+			if (preparedFeed.subscriptions == null) {
+				continue;
+			}
+
+			if (preparedFeed.inserted > 0) {
+				entryInserted.mark(preparedFeed.inserted);
+				feedUpdated.mark();
+				invalidateCachesAndNotify(preparedFeed);
+			}
+		}
+	}
+
+	private void invalidateCachesAndNotify(PreparedFeed preparedFeed) {
+		List<User> users = preparedFeed.subscriptions.stream().map(FeedSubscription::getUser).toList();
+		cache.invalidateUnreadCount(preparedFeed.subscriptions.toArray(new FeedSubscription[0]));
+		cache.invalidateUserRootCategory(users.toArray(new User[0]));
+
+		notifyOverWebsocket(preparedFeed.unreadCountBySubscription);
+	}
+
+	/**
+	 * returns the locks for the given keys in a consistent order, preventing deadlocks
+	 */
+	private List<Lock> getLocks(Collection<String> keys) {
+		if (lockless) {
+			// equivalent contents inserted at the same time for different feeds are caught by the unique equivalence hash of the contents
+			return List.of();
+		}
+
+		return Lists.newArrayList(locks.bulkGet(keys));
+	}
+
+	private static String buildFeedLockKey(Feed feed) {
+		return StringUtils.trimToEmpty(String.valueOf(feed.getId()));
+	}
+
+	private static String buildContentLockKey(Entry entry) {
+		Content content = entry.content();
+		return Digests.sha1Hex(StringUtils.trimToEmpty(content.content() + content.title()));
+	}
+
 	private void notifyOverWebsocket(Map<FeedSubscription, Long> unreadCountBySubscription) {
 		unreadCountBySubscription.forEach((sub, unreadCount) -> webSocketSessions.sendMessage(sub.getUser(),
 				WebSocketMessageBuilder.newFeedEntries(sub, unreadCount)));
 	}
 
-	@AllArgsConstructor
-	private static class AddEntryResult {
-		private final boolean processed;
-		private final boolean inserted;
-		private final Set<FeedSubscription> subscriptionsForWhichEntryIsUnread;
+	/**
+	 * A feed ready to be updated: its new entries have been found and cleaned by {@link #prepare(Feed, List)}
+	 */
+	@RequiredArgsConstructor
+	public static class PreparedFeed {
+		@Getter
+		private final Feed feed;
+		private final boolean hasEntries;
+		private final List<String> currentEntries;
+		private List<PreparedEntry> newEntries = List.of();
+		private long connectionHoldNanos;
+
+		// set while updating the database
+		private Map<FeedSubscription, Long> unreadCountBySubscription = new HashMap<>();
+		private List<FeedSubscription> subscriptions;
+		private int inserted;
+
+		private void resetUpdate() {
+			unreadCountBySubscription = new HashMap<>();
+			subscriptions = null;
+			inserted = 0;
+		}
 	}
 
 }
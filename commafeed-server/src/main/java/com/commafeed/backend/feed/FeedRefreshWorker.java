@@ -5,16 +5,27 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.Digests;
+import com.commafeed.backend.HttpGetter.HttpResponseException;
 import com.commafeed.backend.HttpGetter.NotModifiedException;
+import com.commafeed.backend.cache.CacheService;
 import com.commafeed.backend.feed.FeedFetcher.FeedFetcherResult;
+import com.commafeed.backend.feed.parser.FeedParserHints;
 import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
 import com.commafeed.backend.model.Feed;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -29,86 +40,208 @@ public class FeedRefreshWorker {
 
 	private final FeedRefreshIntervalCalculator refreshIntervalCalculator;
 	private final FeedFetcher fetcher;
+	private final CacheService cache;
 	private final CommaFeedConfiguration config;
 	private final Meter feedFetched;
+	private final Meter feedFetchWasted;
 
 	@Inject
-	public FeedRefreshWorker(FeedRefreshIntervalCalculator refreshIntervalCalculator, FeedFetcher fetcher, CommaFeedConfiguration config,
-			MetricRegistry metrics) {
+	public FeedRefreshWorker(FeedRefreshIntervalCalculator refreshIntervalCalculator, FeedFetcher fetcher, CacheService cache,
+			CommaFeedConfiguration config, MetricRegistry metrics) {
 		this.refreshIntervalCalculator = refreshIntervalCalculator;
 		this.fetcher = fetcher;
+		this.cache = cache;
 		this.config = config;
 		this.feedFetched = metrics.meter(MetricRegistry.name(getClass(), "feedFetched"));
+		this.feedFetchWasted = metrics.meter(MetricRegistry.name(getClass(), "feedFetchWasted"));
+		metrics.register(MetricRegistry.name(getClass(), "feedFetchWasted", "ratio"), new RatioGauge() {
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(feedFetchWasted.getFifteenMinuteRate(), feedFetched.getFifteenMinuteRate());
+			}
+		});
 
 	}
 
 	public FeedRefreshWorkerResult update(Feed feed) {
+		String url = getUrl(feed);
 		try {
-			String url = Optional.ofNullable(feed.getUrlAfterRedirect()).orElse(feed.getUrl());
 			FeedFetcherResult result = fetcher.fetch(url, false, feed.getLastModifiedHeader(), feed.getEtagHeader(),
-					feed.getLastPublishedDate(), feed.getLastContentHash());
+					feed.getLastPublishedDate(), feed.getLastContentHash(), getParserHints(feed));
 			// stops here if NotModifiedException or any other exception is thrown
+			return onFetchSuccess(feed, url, result);
+		} catch (Exception e) {
+			return onFetchFailure(feed, e);
+		} finally {
+			onFetchCompleted(feed);
+		}
+	}
 
-			List<Entry> entries = result.feed().entries();
+	/**
+	 * same as {@link #update(Feed)} but the feed is fetched without blocking the calling thread
+	 *
+	 * @param parseExecutor
+	 *            the executor parsing the fetched feed and building the result
+	 */
+	public CompletableFuture<FeedRefreshWorkerResult> updateAsync(Feed feed, Executor parseExecutor) {
+		String url = getUrl(feed);
+		return fetcher
+				.fetchAsync(url, feed.getLastModifiedHeader(), feed.getEtagHeader(), feed.getLastPublishedDate(),
+						feed.getLastContentHash(), getParserHints(feed), parseExecutor)
+				.handle((result, ex) -> {
+					try {
+						if (ex != null) {
+							return onFetchFailure(feed, unwrap(ex));
+						}
+						return onFetchSuccess(feed, url, result);
+					} catch (Exception e) {
+						return onFetchFailure(feed, e);
+					} finally {
+						onFetchCompleted(feed);
+					}
+				});
+	}
 
-			Integer maxFeedCapacity = config.getApplicationSettings().getMaxFeedCapacity();
-			if (maxFeedCapacity > 0) {
-				entries = entries.stream().limit(maxFeedCapacity).toList();
-			}
+	private FeedRefreshWorkerResult onFetchSuccess(Feed feed, String url, FeedFetcherResult result) {
+		List<Entry> entries = result.feed().entries();
 
-			Integer maxEntriesAgeDays = config.getApplicationSettings().getMaxEntriesAgeDays();
-			if (maxEntriesAgeDays > 0) {
-				Instant threshold = Instant.now().minus(Duration.ofDays(maxEntriesAgeDays));
-				entries = entries.stream().filter(entry -> entry.updated().isAfter(threshold)).toList();
-			}
+		Integer maxFeedCapacity = config.getApplicationSettings().getMaxFeedCapacity();
+		if (maxFeedCapacity > 0) {
+			entries = entries.stream().limit(maxFeedCapacity).toList();
+		}
 
-			String urlAfterRedirect = result.urlAfterRedirect();
-			if (StringUtils.equals(url, urlAfterRedirect)) {
-				urlAfterRedirect = null;
-			}
+		Integer maxEntriesAgeDays = config.getApplicationSettings().getMaxEntriesAgeDays();
+		if (maxEntriesAgeDays > 0) {
+			Instant threshold = Instant.now().minus(Duration.ofDays(maxEntriesAgeDays));
+			entries = entries.stream().filter(entry -> entry.updated().isAfter(threshold)).toList();
+		}
 
-			feed.setUrlAfterRedirect(urlAfterRedirect);
-			feed.setLink(result.feed().link());
-			feed.setLastModifiedHeader(result.lastModifiedHeader());
-			feed.setEtagHeader(result.lastETagHeader());
-			feed.setLastContentHash(result.contentHash());
-			feed.setLastPublishedDate(result.feed().lastPublishedDate());
-			feed.setAverageEntryInterval(result.feed().averageEntryInterval());
-			feed.setLastEntryDate(result.feed().lastEntryDate());
-
-			feed.setErrorCount(0);
-			feed.setMessage(null);
-			feed.setDisabledUntil(
-					refreshIntervalCalculator.onFetchSuccess(result.feed().lastPublishedDate(), result.feed().averageEntryInterval()));
-
-			return new FeedRefreshWorkerResult(feed, entries);
-		} catch (NotModifiedException e) {
-			log.debug("Feed not modified : {} - {}", feed.getUrl(), e.getMessage());
-
-			feed.setErrorCount(0);
-			feed.setMessage(e.getMessage());
-			feed.setDisabledUntil(refreshIntervalCalculator.onFeedNotModified(feed.getLastPublishedDate(), feed.getAverageEntryInterval()));
-
-			if (e.getNewLastModifiedHeader() != null) {
-				feed.setLastModifiedHeader(e.getNewLastModifiedHeader());
-			}
+		String urlAfterRedirect = result.urlAfterRedirect();
+		if (StringUtils.equals(url, urlAfterRedirect)) {
+			urlAfterRedirect = null;
+		}
 
-			if (e.getNewEtagHeader() != null) {
-				feed.setEtagHeader(e.getNewEtagHeader());
-			}
+		// fetches that did not return any entry newer than the ones we already had
+		Instant previousLastEntryDate = feed.getLastEntryDate();
+		long newEntries = result.feed()
+				.entries()
+				.stream()
+				.filter(e -> previousLastEntryDate == null || e.updated().isAfter(previousLastEntryDate))
+				.count();
+		if (newEntries == 0) {
+			feedFetchWasted.mark();
+		}
 
-			return new FeedRefreshWorkerResult(feed, Collections.emptyList());
-		} catch (Exception e) {
-			log.debug("unable to refresh feed {}", feed.getUrl(), e);
+		EntryArrivalModel model = getEntryArrivalModel(feed);
+		if (model != null) {
+			model.observe(result.feed().entries().stream().map(Entry::updated).toList(), previousLastEntryDate, Instant.now());
+			feed.setEntryArrivalModel(model.serialize());
+		}
+
+		feed.setPushHub(result.feed().pushHub());
+		feed.setPushTopic(result.feed().pushTopic());
+		feed.setPushTopicHash(result.feed().pushTopic() == null ? null : Digests.sha1Hex(result.feed().pushTopic()));
+
+		feed.setUrlAfterRedirect(urlAfterRedirect);
+		feed.setLink(result.feed().link());
+		feed.setLastModifiedHeader(result.lastModifiedHeader());
+		feed.setEtagHeader(result.lastETagHeader());
+		feed.setLastContentHash(result.contentHash());
+		feed.setLastPublishedDate(result.feed().lastPublishedDate());
+		feed.setAverageEntryInterval(result.feed().averageEntryInterval());
+		feed.setLastEntryDate(result.feed().lastEntryDate());
+
+		feed.setErrorCount(0);
+		feed.setMessage(null);
+		Instant nextRefresh = refreshIntervalCalculator.onFetchSuccess(result.feed().lastPublishedDate(),
+				result.feed().averageEntryInterval(), model);
+		nextRefresh = refreshIntervalCalculator.onCacheValidity(nextRefresh, result.validFor());
+		feed.setDisabledUntil(refreshIntervalCalculator.onPushSubscription(nextRefresh, feed.getPushLeaseExpiration()));
+
+		return new FeedRefreshWorkerResult(feed, entries);
+	}
 
-			feed.setErrorCount(feed.getErrorCount() + 1);
-			feed.setMessage("Unable to refresh feed : " + e.getMessage());
-			feed.setDisabledUntil(refreshIntervalCalculator.onFetchError(feed.getErrorCount()));
+	private FeedRefreshWorkerResult onFetchFailure(Feed feed, Exception e) {
+		if (e instanceof NotModifiedException notModifiedException) {
+			return onFeedNotModified(feed, notModifiedException);
+		}
 
-			return new FeedRefreshWorkerResult(feed, Collections.emptyList());
-		} finally {
-			feedFetched.mark();
+		log.debug("unable to refresh feed {}", feed.getUrl(), e);
+
+		feed.setErrorCount(feed.getErrorCount() + 1);
+		feed.setMessage("Unable to refresh feed : " + e.getMessage());
+		Instant nextRefresh = refreshIntervalCalculator.onFetchError(feed.getErrorCount());
+		if (e instanceof HttpResponseException httpResponseException) {
+			nextRefresh = refreshIntervalCalculator.onHttpError(nextRefresh, httpResponseException, feed.getErrorCount());
+		}
+		feed.setDisabledUntil(nextRefresh);
+
+		return new FeedRefreshWorkerResult(feed, Collections.emptyList());
+	}
+
+	private FeedRefreshWorkerResult onFeedNotModified(Feed feed, NotModifiedException e) {
+		log.debug("Feed not modified : {} - {}", feed.getUrl(), e.getMessage());
+		feedFetchWasted.mark();
+
+		feed.setErrorCount(0);
+		feed.setMessage(e.getMessage());
+
+		// nothing new was published since the last fetch, which is an observation too
+		EntryArrivalModel model = getEntryArrivalModel(feed);
+		if (model != null) {
+			model.observe(List.of(), feed.getLastEntryDate(), Instant.now());
+			feed.setEntryArrivalModel(model.serialize());
+		}
+
+		Instant nextRefresh = refreshIntervalCalculator.onFeedNotModified(feed.getLastPublishedDate(), feed.getAverageEntryInterval(),
+				model);
+		nextRefresh = refreshIntervalCalculator.onCacheValidity(nextRefresh, e.getValidFor());
+		feed.setDisabledUntil(refreshIntervalCalculator.onPushSubscription(nextRefresh, feed.getPushLeaseExpiration()));
+
+		if (e.getNewLastModifiedHeader() != null) {
+			feed.setLastModifiedHeader(e.getNewLastModifiedHeader());
+		}
+
+		if (e.getNewEtagHeader() != null) {
+			feed.setEtagHeader(e.getNewEtagHeader());
+		}
+
+		return new FeedRefreshWorkerResult(feed, Collections.emptyList());
+	}
+
+	private void onFetchCompleted(Feed feed) {
+		// the feed is saved after being refreshed, which releases the claim of this node on the feed
+		feed.setLeaseOwner(null);
+		feed.setLeaseExpiration(null);
+
+		feedFetched.mark();
+	}
+
+	private static String getUrl(Feed feed) {
+		return Optional.ofNullable(feed.getUrlAfterRedirect()).orElse(feed.getUrl());
+	}
+
+	private static Exception unwrap(Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		if (cause instanceof Exception e) {
+			return e;
 		}
+		throw new CompletionException(cause);
+	}
+
+	private FeedParserHints getParserHints(Feed feed) {
+		if (!Boolean.TRUE.equals(config.getApplicationSettings().getStreamingFeedParser())) {
+			return FeedParserHints.NONE;
+		}
+
+		// only query the cache if the parser needs it
+		Supplier<Set<String>> lastEntries = Suppliers.memoize(() -> cache.getLastEntries(feed));
+		return new FeedParserHints(config.getApplicationSettings().getMaxFeedCapacity(),
+				entry -> lastEntries.get().contains(cache.buildUniqueEntryKey(entry)));
+	}
+
+	private EntryArrivalModel getEntryArrivalModel(Feed feed) {
+		return refreshIntervalCalculator.isStatisticalRefreshInterval() ? EntryArrivalModel.parse(feed.getEntryArrivalModel()) : null;
 	}
 
 	public record FeedRefreshWorkerResult(Feed feed, List<Entry> entries) {
@@ -113,6 +113,22 @@ public class FeedUtils {
 		return direction == Direction.RTL;
 	}
 
+	/**
+	 * Extract the lowercase host of the url, or null if the url could not be parsed
+	 */
+	public static String getHost(String url) {
+		if (url == null) {
+			return null;
+		}
+
+		try {
+			return StringUtils.lowerCase(new URL(url).getHost());
+		} catch (MalformedURLException e) {
+			log.debug("could not parse url : " + e.getMessage(), e);
+			return null;
+		}
+	}
+
 	public static String removeTrailingSlash(String url) {
 		if (url.endsWith("/")) {
 			url = url.substring(0, url.length() - 1);
@@ -0,0 +1,209 @@
+package com.commafeed.backend.feed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.commafeed.CommaFeedConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of the health of the hosts we fetch feeds from.
+ *
+ * After too many consecutive connection failures or timeouts, the circuit of the host is opened and fetches are rejected without
+ * contacting the host. Once the open duration has elapsed, a single probe request is allowed through, the circuit is closed if it
+ * succeeds.
+ *
+ * Fetch timeouts can also be derived from the latencies observed for the host instead of always using the maximum timeout. Timeouts
+ * count as latency samples, and probes and requests following a timeout always get the maximum timeout so that a host that became
+ * slower is not timed out forever.
+ */
+@Slf4j
+@Singleton
+public class HostHealthTracker {
+
+	private static final int LATENCY_SAMPLES = 20;
+	private static final int MIN_LATENCY_SAMPLES = 5;
+	private static final int LATENCY_TIMEOUT_FACTOR = 4;
+	private static final long MIN_TIMEOUT_MILLIS = 5000;
+	// a probe that did not report back after this delay is considered lost and another probe is allowed
+	private static final long PROBE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+	private final int failureThreshold;
+	private final long openDurationMillis;
+	private final boolean adaptiveTimeout;
+
+	private final Cache<String, HostHealth> hosts;
+	private final Meter rejected;
+
+	@Inject
+	public HostHealthTracker(CommaFeedConfiguration config, MetricRegistry metrics) {
+		this.failureThreshold = config.getApplicationSettings().getCircuitBreakerFailureThreshold();
+		this.openDurationMillis = config.getApplicationSettings().getCircuitBreakerOpenDuration().toMilliseconds();
+		this.adaptiveTimeout = config.getApplicationSettings().getAdaptiveFetchTimeout();
+
+		// expire after write and not after access, hosts we fetch from regularly would otherwise keep their state forever
+		this.hosts = CacheBuilder.newBuilder().maximumSize(100000).expireAfterWrite(1, TimeUnit.DAYS).build();
+		this.rejected = metrics.meter(MetricRegistry.name(getClass(), "rejected"));
+
+		metrics.register(MetricRegistry.name(getClass(), "openCircuits"), (Gauge<Long>) this::countOpenCircuits);
+	}
+
+	/**
+	 * @throws HostUnavailableException
+	 *             if the circuit of the host is open
+	 */
+	public void checkAvailable(String host) throws HostUnavailableException {
+		if (failureThreshold <= 0 || host == null) {
+			return;
+		}
+
+		HostHealth health = hosts.getIfPresent(host);
+		if (health == null) {
+			return;
+		}
+
+		synchronized (health) {
+			long now = System.currentTimeMillis();
+			if (health.openUntil == 0) {
+				return;
+			}
+
+			if (now < health.openUntil || now < health.probeUntil) {
+				rejected.mark();
+				throw new HostUnavailableException(host);
+			}
+
+			// let this request through as a probe, keep rejecting other requests until the probe completes
+			log.debug("probing host {}", host);
+			health.probeUntil = now + PROBE_TIMEOUT_MILLIS;
+		}
+	}
+
+	/**
+	 * the timeout to use for the next request to the host, never more than the given maximum
+	 */
+	public int getTimeout(String host, int maxTimeout) {
+		if (!adaptiveTimeout || host == null) {
+			return maxTimeout;
+		}
+
+		HostHealth health = hosts.getIfPresent(host);
+		if (health == null) {
+			return maxTimeout;
+		}
+
+		synchronized (health) {
+			if (health.openUntil != 0 || health.timedOut || health.latencies.size() < MIN_LATENCY_SAMPLES) {
+				return maxTimeout;
+			}
+
+			long timeout = (long) health.latencies.getSnapshot().get99thPercentile() * LATENCY_TIMEOUT_FACTOR;
+			return (int) Math.min(maxTimeout, Math.max(MIN_TIMEOUT_MILLIS, timeout));
+		}
+	}
+
+	/**
+	 * the host responded, whatever the response was
+	 */
+	public void onResponse(String host, long durationMillis) {
+		if (host == null || failureThreshold <= 0 && !adaptiveTimeout) {
+			return;
+		}
+
+		HostHealth health = hosts.asMap().computeIfAbsent(host, h -> new HostHealth());
+		synchronized (health) {
+			if (health.openUntil != 0) {
+				log.info("host {} is reachable again, closing circuit", host);
+			}
+			health.consecutiveFailures = 0;
+			health.openUntil = 0;
+			health.probeUntil = 0;
+			health.timedOut = false;
+			health.latencies.update(durationMillis);
+		}
+	}
+
+	/**
+	 * the request to the host failed
+	 */
+	public void onFailure(String host, long durationMillis, IOException e) {
+		if (!isConnectionFailure(e)) {
+			// we got something from the host
+			onResponse(host, durationMillis);
+			return;
+		}
+
+		if (host == null || failureThreshold <= 0 && !adaptiveTimeout) {
+			return;
+		}
+
+		HostHealth health = hosts.asMap().computeIfAbsent(host, h -> new HostHealth());
+		synchronized (health) {
+			if (e instanceof InterruptedIOException) {
+				// the host did not respond in time, it took at least that long
+				health.timedOut = true;
+				health.latencies.update(durationMillis);
+			}
+
+			if (failureThreshold <= 0) {
+				return;
+			}
+
+			health.consecutiveFailures++;
+			health.probeUntil = 0;
+			boolean probeFailed = health.openUntil != 0;
+			if (probeFailed || health.consecutiveFailures >= failureThreshold) {
+				if (!probeFailed) {
+					log.info("host {} failed {} times in a row, opening circuit", host, health.consecutiveFailures);
+				}
+				health.openUntil = System.currentTimeMillis() + openDurationMillis;
+			}
+		}
+	}
+
+	private long countOpenCircuits() {
+		long now = System.currentTimeMillis();
+		return hosts.asMap().values().stream().filter(h -> h.isOpen(now)).count();
+	}
+
+	private static boolean isConnectionFailure(IOException e) {
+		// InterruptedIOException covers both connect and socket timeouts
+		return e instanceof InterruptedIOException || e instanceof ConnectException || e instanceof UnknownHostException
+				|| e instanceof NoRouteToHostException;
+	}
+
+	private static class HostHealth {
+		private final Reservoir latencies = new SlidingWindowReservoir(LATENCY_SAMPLES);
+		private int consecutiveFailures;
+		private long openUntil;
+		private long probeUntil;
+		private boolean timedOut;
+
+		synchronized boolean isOpen(long now) {
+			return openUntil != 0 && now < openUntil;
+		}
+	}
+
+	public static class HostUnavailableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public HostUnavailableException(String host) {
+			super("Host " + host + " is unavailable, fetching is suspended until it recovers");
+		}
+	}
+
+}
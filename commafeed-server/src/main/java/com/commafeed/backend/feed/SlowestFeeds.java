@@ -0,0 +1,47 @@
+package com.commafeed.backend.feed;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.commafeed.backend.model.Feed;
+
+/**
+ * Keeps track of the feeds that took the longest to refresh, using the duration of their last refresh
+ */
+public class SlowestFeeds {
+
+	private final int size;
+	private final Map<Long, SlowFeed> feeds = new HashMap<>();
+
+	SlowestFeeds(int size) {
+		this.size = size;
+	}
+
+	synchronized void record(Feed feed, long durationMillis) {
+		// only the last refresh of a feed is considered
+		feeds.remove(feed.getId());
+
+		if (feeds.size() >= size) {
+			SlowFeed fastest = feeds.values().stream().min(Comparator.comparingLong(SlowFeed::durationMillis)).orElseThrow();
+			if (durationMillis <= fastest.durationMillis()) {
+				return;
+			}
+			feeds.remove(fastest.feedId());
+		}
+
+		feeds.put(feed.getId(), new SlowFeed(feed.getId(), feed.getUrl(), durationMillis));
+	}
+
+	/**
+	 * the slowest feeds, slowest first
+	 */
+	synchronized List<SlowFeed> get() {
+		return feeds.values().stream().sorted(Comparator.comparingLong(SlowFeed::durationMillis).reversed()).toList();
+	}
+
+	public record SlowFeed(Long feedId, String url, long durationMillis) {
+	}
+
+}
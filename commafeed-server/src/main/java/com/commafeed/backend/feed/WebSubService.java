@@ -0,0 +1,298 @@
+package com.commafeed.backend.feed;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.Digests;
+import com.commafeed.backend.HttpGetter;
+import com.commafeed.backend.dao.FeedDAO;
+import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
+import com.commafeed.backend.model.AbstractModel;
+import com.commafeed.backend.model.Feed;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.lifecycle.Managed;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WebSub (formerly PubSubHubbub) support: subscribes to the hubs advertised by feeds and processes the notifications pushed by the hubs.
+ *
+ * https://www.w3.org/TR/websub/
+ */
+@Slf4j
+@Singleton
+public class WebSubService implements Managed {
+
+	private static final int TIMEOUT = 20000;
+	private static final int SUBSCRIPTION_THREADS = 2;
+	private static final int SUBSCRIPTION_QUEUE_CAPACITY = 1000;
+	private static final int CONTENT_THREADS = 2;
+	// pushed bodies are kept in memory until they are parsed, keep only a few of them
+	private static final int CONTENT_QUEUE_CAPACITY = 20;
+	// renew subscriptions before they expire
+	private static final Duration RENEWAL_MARGIN = Duration.ofDays(1);
+	// hubs verify subscriptions asynchronously, don't ask again while waiting for the verification
+	private static final Duration SUBSCRIPTION_RETRY_DELAY = Duration.ofHours(1);
+	// used when the hub does not tell how long the subscription lasts
+	private static final Duration DEFAULT_LEASE = Duration.ofDays(1);
+
+	private final UnitOfWork unitOfWork;
+	private final FeedDAO feedDAO;
+	private final HttpGetter httpGetter;
+	private final FeedParser parser;
+	// the engine depends on this service to subscribe to the hubs of the feeds it refreshes
+	private final Provider<FeedRefreshEngine> feedRefreshEngine;
+	private final CommaFeedConfiguration config;
+	private final ThreadPoolExecutor subscriptionExecutor;
+	private final ThreadPoolExecutor contentExecutor;
+	private final Cache<Long, Boolean> recentSubscriptionRequests;
+
+	private final Meter subscriptionRequested;
+	private final Meter subscriptionVerified;
+	private final Meter contentReceived;
+	private final Meter invalidSignature;
+
+	@Inject
+	public WebSubService(UnitOfWork unitOfWork, FeedDAO feedDAO, HttpGetter httpGetter, FeedParser parser,
+			Provider<FeedRefreshEngine> feedRefreshEngine, CommaFeedConfiguration config, MetricRegistry metrics) {
+		this.unitOfWork = unitOfWork;
+		this.feedDAO = feedDAO;
+		this.httpGetter = httpGetter;
+		this.parser = parser;
+		this.feedRefreshEngine = feedRefreshEngine;
+		this.config = config;
+		this.subscriptionExecutor = new ThreadPoolExecutor(SUBSCRIPTION_THREADS, SUBSCRIPTION_THREADS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(SUBSCRIPTION_QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat("websub-subscription-%d").setDaemon(true).build());
+		this.contentExecutor = new ThreadPoolExecutor(CONTENT_THREADS, CONTENT_THREADS, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(CONTENT_QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat("websub-content-%d").setDaemon(true).build());
+		this.recentSubscriptionRequests = CacheBuilder.newBuilder()
+				.expireAfterWrite(SUBSCRIPTION_RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS)
+				.build();
+
+		this.subscriptionRequested = metrics.meter(MetricRegistry.name(getClass(), "subscriptionRequested"));
+		this.subscriptionVerified = metrics.meter(MetricRegistry.name(getClass(), "subscriptionVerified"));
+		this.contentReceived = metrics.meter(MetricRegistry.name(getClass(), "contentReceived"));
+		this.invalidSignature = metrics.meter(MetricRegistry.name(getClass(), "invalidSignature"));
+	}
+
+	public boolean isEnabled() {
+		return Boolean.TRUE.equals(config.getApplicationSettings().getWebSubEnabled());
+	}
+
+	/**
+	 * asks the hub of the feed to push us its new entries, if the feed advertises a hub and we are not already subscribed
+	 */
+	public void subscribeIfNeeded(Feed feed) {
+		if (!isEnabled() || feed.getPushHub() == null || feed.getPushTopic() == null) {
+			return;
+		}
+
+		Instant leaseExpiration = feed.getPushLeaseExpiration();
+		if (leaseExpiration != null && leaseExpiration.isAfter(Instant.now().plus(RENEWAL_MARGIN))) {
+			return;
+		}
+
+		if (recentSubscriptionRequests.asMap().putIfAbsent(feed.getId(), Boolean.TRUE) != null) {
+			return;
+		}
+
+		try {
+			subscriptionExecutor.execute(() -> {
+				try {
+					subscribe(feed);
+				} catch (Exception e) {
+					log.debug("could not subscribe to hub {} for topic {}: {}", feed.getPushHub(), feed.getPushTopic(), e.getMessage(), e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// too many pending subscriptions, try again the next time the feed is refreshed
+			log.debug("too many pending subscriptions, not subscribing to hub {} for topic {}", feed.getPushHub(), feed.getPushTopic());
+			recentSubscriptionRequests.invalidate(feed.getId());
+		}
+	}
+
+	private void subscribe(Feed feed) throws Exception {
+		if (feed.getPushSecret() == null) {
+			// the secret is stored before asking the hub so that we can verify the first content pushed by the hub
+			String secret = Digests.sha1Hex(UUID.randomUUID().toString());
+			unitOfWork.run(() -> feedDAO.setPushSecret(feed.getId(), secret));
+			feed.setPushSecret(secret);
+		}
+
+		// the hub verifies the subscription asynchronously, possibly on another node of the cluster
+		Instant verificationDeadline = Instant.now().plus(SUBSCRIPTION_RETRY_DELAY);
+		unitOfWork.run(() -> feedDAO.setPushVerificationDeadline(feed.getId(), verificationDeadline));
+
+		Map<String, String> form = new LinkedHashMap<>();
+		form.put("hub.mode", "subscribe");
+		form.put("hub.topic", feed.getPushTopic());
+		form.put("hub.callback", getCallbackUrl(feed.getPushTopicHash()));
+		form.put("hub.secret", feed.getPushSecret());
+
+		log.debug("subscribing to hub {} for topic {}", feed.getPushHub(), feed.getPushTopic());
+		int code = httpGetter.postForm(feed.getPushHub(), form, TIMEOUT);
+		subscriptionRequested.mark();
+		if (code >= 300) {
+			log.debug("hub {} refused subscription for topic {} with code {}", feed.getPushHub(), feed.getPushTopic(), code);
+		}
+	}
+
+	/**
+	 * called by the hub to verify that we asked for the subscription
+	 *
+	 * We only ever ask for subscriptions (they are not renewed when nobody is subscribed to the feed anymore and expire with their
+	 * lease), so only a subscription we asked for and that is still waiting for its verification is confirmed.
+	 *
+	 * @return the challenge to send back to the hub, or null if we did not ask for this subscription
+	 */
+	public String onVerification(String topicHash, String mode, String topic, String challenge, Long leaseSeconds) {
+		if (!isEnabled() || StringUtils.isAnyBlank(topicHash, mode, topic, challenge)) {
+			return null;
+		}
+
+		if ("denied".equals(mode)) {
+			// the pending request expires with its verification deadline and is sent again on a later refresh
+			log.debug("subscription to topic {} denied by the hub", topic);
+			return null;
+		}
+
+		if (!"subscribe".equals(mode)) {
+			log.debug("refusing {} verification for topic {}, we did not ask for it", mode, topic);
+			return null;
+		}
+
+		Instant now = Instant.now();
+		List<Feed> feeds = unitOfWork.call(() -> feedDAO.findByPushTopicHash(topicHash))
+				.stream()
+				.filter(f -> topic.equals(f.getPushTopic()))
+				.filter(f -> f.getPushVerificationDeadline() != null && f.getPushVerificationDeadline().isAfter(now))
+				.toList();
+		if (feeds.isEmpty()) {
+			log.debug("received verification for topic {} without a pending subscription", topic);
+			return null;
+		}
+
+		Duration lease = leaseSeconds == null || leaseSeconds <= 0 ? DEFAULT_LEASE : Duration.ofSeconds(leaseSeconds);
+		List<Long> feedIds = feeds.stream().map(AbstractModel::getId).toList();
+		unitOfWork.run(() -> feedDAO.setPushSubscriptionVerified(feedIds, now.plus(lease)));
+		subscriptionVerified.mark();
+		log.debug("subscription to topic {} verified for {}", topic, lease);
+		return challenge;
+	}
+
+	/**
+	 * called by the hub with the new content of the topic. The signature is checked right away, the content is then parsed and its entries
+	 * are inserted asynchronously, through the same database update path as the entries of a refresh.
+	 *
+	 * @param signature
+	 *            the X-Hub-Signature header, content without a valid signature is ignored
+	 * @return false if too much pushed content is already waiting to be processed, the hub should push the content again later
+	 */
+	public boolean onContentDistribution(String topicHash, byte[] content, String signature) {
+		if (!isEnabled() || StringUtils.isBlank(topicHash) || content == null) {
+			return true;
+		}
+
+		List<Feed> feeds = unitOfWork.call(() -> feedDAO.findByPushTopicHash(topicHash))
+				.stream()
+				.filter(f -> isValidSignature(f.getPushSecret(), content, signature))
+				.toList();
+		if (feeds.isEmpty()) {
+			log.debug("ignoring content pushed for topic hash {} without a valid signature", topicHash);
+			invalidSignature.mark();
+			return true;
+		}
+
+		try {
+			contentExecutor.execute(() -> feeds.forEach(feed -> update(feed, content)));
+		} catch (RejectedExecutionException e) {
+			log.debug("too much pushed content waiting to be processed, refusing content for topic hash {}", topicHash);
+			return false;
+		}
+		contentReceived.mark();
+		return true;
+	}
+
+	private void update(Feed feed, byte[] content) {
+		try {
+			String url = StringUtils.defaultIfBlank(feed.getUrlAfterRedirect(), feed.getUrl());
+			List<Entry> entries = parser.parse(url, content).entries();
+			Integer maxFeedCapacity = config.getApplicationSettings().getMaxFeedCapacity();
+			if (maxFeedCapacity > 0) {
+				entries = entries.stream().limit(maxFeedCapacity).toList();
+			}
+
+			feed.setMessage(null);
+			feedRefreshEngine.get().updatePushedEntries(feed, entries).whenComplete((data, ex) -> {
+				if (ex != null) {
+					log.error("error while inserting content pushed for feed {}", feed.getUrl(), ex);
+				}
+			});
+		} catch (Exception e) {
+			log.debug("could not parse content pushed for feed {}: {}", feed.getUrl(), e.getMessage(), e);
+		}
+	}
+
+	static boolean isValidSignature(String secret, byte[] content, String signature) {
+		if (StringUtils.isAnyBlank(secret, signature) || !signature.contains("=")) {
+			return false;
+		}
+
+		String method = StringUtils.substringBefore(signature, "=").trim();
+		String expected = StringUtils.substringAfter(signature, "=").trim();
+		HashFunction function = getHmac(method, secret);
+		if (function == null) {
+			return false;
+		}
+
+		String actual = function.hashBytes(content).toString();
+		return MessageDigest.isEqual(actual.getBytes(StandardCharsets.UTF_8), expected.toLowerCase().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static HashFunction getHmac(String method, String secret) {
+		byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+		return switch (method.toLowerCase()) {
+		case "sha1" -> Hashing.hmacSha1(key);
+		case "sha256" -> Hashing.hmacSha256(key);
+		case "sha512" -> Hashing.hmacSha512(key);
+		default -> null;
+		};
+	}
+
+	private String getCallbackUrl(String topicHash) {
+		return FeedUtils.removeTrailingSlash(config.getApplicationSettings().getPublicUrl()) + "/rest/push/callback/" + topicHash;
+	}
+
+	@Override
+	public void stop() {
+		subscriptionExecutor.shutdownNow();
+		contentExecutor.shutdownNow();
+	}
+
+}
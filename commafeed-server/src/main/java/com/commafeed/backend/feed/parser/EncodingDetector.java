@@ -1,10 +1,16 @@
 package com.commafeed.backend.feed.parser;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.ibm.icu.text.CharsetDetector;
 import com.ibm.icu.text.CharsetMatch;
 
@@ -13,12 +19,35 @@ import jakarta.inject.Singleton;
 @Singleton
 class EncodingDetector {
 
+	// detecting the encoding from the characters used is expensive, only look at the beginning of large feeds
+	private static final int DETECTION_SAMPLE_SIZE = 64 * 1024;
+
+	// encodings detected from the characters used, by feed url
+	private final Cache<String, DetectedEncoding> detectedEncodings = CacheBuilder.newBuilder()
+			.maximumSize(100000)
+			.expireAfterAccess(1, TimeUnit.DAYS)
+			.build();
+
+	public Charset getEncoding(byte[] bytes) {
+		return getEncoding(bytes, null, null);
+	}
+
 	/**
-	 * Detect feed encoding by using the declared encoding in the xml processing instruction and by detecting the characters used in the
-	 * feed
+	 * Detect feed encoding by using the byte order mark, the declared encoding in the xml processing instruction, by checking whether the
+	 * feed is valid UTF-8 or by detecting the characters used in the feed
 	 *
+	 * @param feedUrl
+	 *            the encoding detected from the characters used is remembered for this url until the content type changes, null to always
+	 *            detect the encoding. Feeds that are valid UTF-8 are always read as UTF-8
+	 * @param contentType
+	 *            the Content-Type header of the response, or null
 	 */
-	public Charset getEncoding(byte[] bytes) {
+	public Charset getEncoding(byte[] bytes, String feedUrl, String contentType) {
+		Charset bomEncoding = getByteOrderMarkEncoding(bytes);
+		if (bomEncoding != null) {
+			return bomEncoding;
+		}
+
 		String extracted = extractDeclaredEncoding(bytes);
 		if (StringUtils.startsWithIgnoreCase(extracted, "iso-8859-")) {
 			if (!StringUtils.endsWith(extracted, "1")) {
@@ -27,7 +56,28 @@ class EncodingDetector {
 		} else if (StringUtils.startsWithIgnoreCase(extracted, "windows-")) {
 			return Charset.forName(extracted);
 		}
-		return detectEncoding(bytes);
+
+		// other encodings are very unlikely to produce a valid UTF-8 sequence, this is also cheaper than detecting the encoding
+		if (isValidUtf8(bytes)) {
+			return StandardCharsets.UTF_8;
+		}
+
+		byte[] sample = bytes.length > DETECTION_SAMPLE_SIZE ? Arrays.copyOf(bytes, DETECTION_SAMPLE_SIZE) : bytes;
+		if (feedUrl == null) {
+			return detectEncoding(sample);
+		}
+
+		DetectedEncoding detected = detectedEncodings.getIfPresent(feedUrl);
+		if (detected != null && Objects.equals(detected.contentType(), contentType)) {
+			return detected.encoding();
+		}
+
+		Charset encoding = detectEncoding(sample);
+		// a sample without any non-ascii character tells nothing about the encoding, don't remember that guess
+		if (!isAscii(sample)) {
+			detectedEncodings.put(feedUrl, new DetectedEncoding(contentType, encoding));
+		}
+		return encoding;
 	}
 
 	/**
@@ -49,14 +99,89 @@ class EncodingDetector {
 		return encoding;
 	}
 
+	private static Charset getByteOrderMarkEncoding(byte[] bytes) {
+		if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+			return StandardCharsets.UTF_8;
+		} else if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+			return StandardCharsets.UTF_16BE;
+		} else if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+			return StandardCharsets.UTF_16LE;
+		}
+		return null;
+	}
+
 	/**
-	 * Detect encoding by analyzing characters in the array
+	 * @return true if the bytes are a well-formed UTF-8 sequence
 	 */
-	private Charset detectEncoding(byte[] bytes) {
+	static boolean isValidUtf8(byte[] bytes) {
+		int i = 0;
+		while (i < bytes.length) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				i++;
+				continue;
+			}
+
+			int length;
+			int min = 0x80;
+			int max = 0xBF;
+			if (b >= 0xC2 && b <= 0xDF) {
+				length = 2;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				length = 3;
+				// overlong encodings and surrogates
+				if (b == 0xE0) {
+					min = 0xA0;
+				} else if (b == 0xED) {
+					max = 0x9F;
+				}
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				length = 4;
+				// overlong encodings and code points above U+10FFFF
+				if (b == 0xF0) {
+					min = 0x90;
+				} else if (b == 0xF4) {
+					max = 0x8F;
+				}
+			} else {
+				return false;
+			}
+
+			if (i + length > bytes.length) {
+				return false;
+			}
+
+			int second = bytes[i + 1] & 0xFF;
+			if (second < min || second > max) {
+				return false;
+			}
+			for (int j = 2; j < length; j++) {
+				if ((bytes[i + j] & 0xC0) != 0x80) {
+					return false;
+				}
+			}
+			i += length;
+		}
+		return true;
+	}
+
+	private static boolean isAscii(byte[] bytes) {
+		for (byte b : bytes) {
+			if (b < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Detect encoding by analyzing the characters of the sample
+	 */
+	Charset detectEncoding(byte[] sample) {
 		String encoding = "UTF-8";
 
 		CharsetDetector detector = new CharsetDetector();
-		detector.setText(bytes);
+		detector.setText(sample);
 		CharsetMatch match = detector.detect();
 		if (match != null) {
 			encoding = match.getName();
@@ -67,4 +192,7 @@ class EncodingDetector {
 		return Charset.forName(encoding);
 	}
 
+	private record DetectedEncoding(String contentType, Charset encoding) {
+	}
+
 }
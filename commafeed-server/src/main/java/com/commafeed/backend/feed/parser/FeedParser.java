@@ -1,6 +1,6 @@
 package com.commafeed.backend.feed.parser;
 
-import java.io.StringReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.time.Instant;
@@ -10,6 +10,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
@@ -17,17 +19,25 @@ import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.xml.sax.InputSource;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.commafeed.CommaFeedConfiguration;
 import com.commafeed.backend.feed.FeedUtils;
 import com.commafeed.backend.feed.parser.FeedParserResult.Content;
 import com.commafeed.backend.feed.parser.FeedParserResult.Enclosure;
 import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
 import com.commafeed.backend.feed.parser.FeedParserResult.Media;
+import com.commafeed.backend.feed.parser.StreamingFeedParser.StreamingFeedParserResult;
+import com.commafeed.backend.feed.parser.StreamingFeedParser.UnsupportedFeedException;
 import com.google.common.collect.Iterables;
+import com.rometools.modules.atom.modules.AtomLinkModule;
 import com.rometools.modules.mediarss.MediaEntryModule;
 import com.rometools.modules.mediarss.MediaModule;
 import com.rometools.modules.mediarss.types.MediaGroup;
 import com.rometools.modules.mediarss.types.Metadata;
 import com.rometools.modules.mediarss.types.Thumbnail;
+import com.rometools.rome.feed.atom.Link;
 import com.rometools.rome.feed.synd.SyndCategory;
 import com.rometools.rome.feed.synd.SyndContent;
 import com.rometools.rome.feed.synd.SyndEnclosure;
@@ -40,12 +50,12 @@ import com.rometools.rome.io.SyndFeedInput;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Parses raw xml into a FeedParserResult object
  */
-@RequiredArgsConstructor(onConstructor = @__({ @Inject }))
+@Slf4j
 @Singleton
 public class FeedParser {
 
@@ -56,23 +66,80 @@ public class FeedParser {
 
 	private final EncodingDetector encodingDetector;
 	private final FeedCleaner feedCleaner;
+	private final CommaFeedConfiguration config;
+	private final StreamingFeedParser streamingParser;
+	private final Timer encodingDetection;
+	private final Timer romeParsing;
+	private final Timer streamingParsing;
+	private final Meter streamingParserFallback;
+	private final Meter entriesSkipped;
+
+	@Inject
+	public FeedParser(EncodingDetector encodingDetector, FeedCleaner feedCleaner, CommaFeedConfiguration config, MetricRegistry metrics) {
+		this.encodingDetector = encodingDetector;
+		this.feedCleaner = feedCleaner;
+		this.config = config;
+		this.streamingParser = new StreamingFeedParser();
+		this.encodingDetection = metrics.timer(MetricRegistry.name(getClass(), "encodingDetection"));
+		this.romeParsing = metrics.timer(MetricRegistry.name(getClass(), "romeParsing"));
+		this.streamingParsing = metrics.timer(MetricRegistry.name(getClass(), "streamingParsing"));
+		this.streamingParserFallback = metrics.meter(MetricRegistry.name(getClass(), "streamingParserFallback"));
+		this.entriesSkipped = metrics.meter(MetricRegistry.name(getClass(), "entriesSkipped"));
+	}
 
 	public FeedParserResult parse(String feedUrl, byte[] xml) throws FeedException {
+		return parse(feedUrl, xml, FeedParserHints.NONE);
+	}
+
+	/**
+	 * @param hints
+	 *            used by the streaming parser to skip entries, all entries are returned if the streaming parser is disabled or does not
+	 *            support the feed
+	 */
+	public FeedParserResult parse(String feedUrl, byte[] xml, FeedParserHints hints) throws FeedException {
+		return parse(feedUrl, xml, null, hints);
+	}
+
+	/**
+	 * same as {@link #parse(String, byte[], FeedParserHints)}
+	 *
+	 * @param contentType
+	 *            the Content-Type header of the response, the encoding detected for the feed is reused until it changes
+	 */
+	public FeedParserResult parse(String feedUrl, byte[] xml, String contentType, FeedParserHints hints) throws FeedException {
 		try {
-			Charset encoding = encodingDetector.getEncoding(xml);
-			String xmlString = feedCleaner.trimInvalidXmlCharacters(new String(xml, encoding));
-			if (xmlString == null) {
+			Charset encoding = encodingDetection.time(() -> encodingDetector.getEncoding(xml, feedUrl, contentType));
+
+			// the document is cleaned while it is parsed
+			XmlCleaningReader reader = feedCleaner.newReader(xml, encoding);
+			if (reader.isEmpty()) {
 				throw new FeedException("Input string is null for url " + feedUrl);
 			}
-			xmlString = feedCleaner.replaceHtmlEntitiesWithNumericEntities(xmlString);
 
-			InputSource source = new InputSource(new StringReader(xmlString));
-			SyndFeed feed = new SyndFeedInput().build(source);
-			handleForeignMarkup(feed);
+			SyndFeed feed = null;
+			List<Entry> entries = null;
+			boolean streaming = Boolean.TRUE.equals(config.getApplicationSettings().getStreamingFeedParser());
+			if (streaming) {
+				StreamingFeedParserResult result = parseStreaming(feedUrl, reader, hints);
+				if (result != null) {
+					feed = result.feed();
+					entries = sortEntries(new ArrayList<>(result.entries()));
+					entriesSkipped.mark(result.skipped());
+				}
+			}
+
+			if (feed == null) {
+				// the streaming parser consumed the reader before falling back to ROME
+				InputSource source = new InputSource(streaming ? feedCleaner.newReader(xml, encoding) : reader);
+				Timer.Context romeParsingContext = romeParsing.time();
+				feed = new SyndFeedInput().build(source);
+				romeParsingContext.stop();
+				addAtomLinks(feed);
+				entries = buildEntries(feed, feedUrl);
+			}
 
 			String title = feed.getTitle();
 			String link = feed.getLink();
-			List<Entry> entries = buildEntries(feed, feedUrl);
 			Instant lastEntryDate = entries.stream().findFirst().map(Entry::updated).orElse(null);
 			Instant lastPublishedDate = toValidInstant(feed.getPublishedDate(), false);
 			if (lastPublishedDate == null || lastEntryDate != null && lastPublishedDate.isBefore(lastEntryDate)) {
@@ -80,57 +147,110 @@ public class FeedParser {
 			}
 			Long averageEntryInterval = averageTimeBetweenEntries(entries);
 
-			return new FeedParserResult(title, link, lastPublishedDate, averageEntryInterval, lastEntryDate, entries);
+			String pushHub = findLink(feed, "hub");
+			String pushTopic = findLink(feed, "self");
+
+			return new FeedParserResult(title, link, lastPublishedDate, averageEntryInterval, lastEntryDate, entries, pushHub, pushTopic);
 		} catch (Exception e) {
 			throw new FeedException(String.format("Could not parse feed from %s : %s", feedUrl, e.getMessage()), e);
 		}
 	}
 
 	/**
-	 * Adds atom links for rss feeds
+	 * @return null if the feed is not supported by the streaming parser
+	 */
+	private StreamingFeedParserResult parseStreaming(String feedUrl, Reader xml, FeedParserHints hints) {
+		Timer.Context streamingParsingContext = streamingParsing.time();
+		try {
+			StreamingFeedParserResult result = streamingParser.parse(xml, (feed, item) -> buildEntry(feed, feedUrl, item), hints);
+			streamingParsingContext.stop();
+			return result;
+		} catch (UnsupportedFeedException | XMLStreamException e) {
+			// ROME supports more formats and reports errors in a more helpful way
+			log.debug("falling back to ROME for {}: {}", feedUrl, e.getMessage());
+			streamingParserFallback.mark();
+			return null;
+		}
+	}
+
+	/**
+	 * Adds atom links for rss feeds, they are consumed by the atom link module of ROME if it is on the classpath, or left as foreign
+	 * markup otherwise
 	 */
-	private void handleForeignMarkup(SyndFeed feed) {
+	private void addAtomLinks(SyndFeed feed) {
+		if (feed.getModule(AtomLinkModule.URI) instanceof AtomLinkModule module && module.getLinks() != null) {
+			for (Link atomLink : module.getLinks()) {
+				addLink(feed, atomLink.getRel(), atomLink.getHref());
+			}
+		}
+
 		List<Element> foreignMarkup = feed.getForeignMarkup();
 		if (foreignMarkup == null) {
 			return;
 		}
 		for (Element element : foreignMarkup) {
 			if ("link".equals(element.getName()) && ATOM_10_NS.equals(element.getNamespace())) {
-				SyndLink link = new SyndLinkImpl();
-				link.setRel(element.getAttributeValue("rel"));
-				link.setHref(element.getAttributeValue("href"));
-				feed.getLinks().add(link);
+				addLink(feed, element.getAttributeValue("rel"), element.getAttributeValue("href"));
 			}
 		}
 	}
 
+	private void addLink(SyndFeed feed, String rel, String href) {
+		SyndLink link = new SyndLinkImpl();
+		link.setRel(rel);
+		link.setHref(href);
+		feed.getLinks().add(link);
+	}
+
+	private String findLink(SyndFeed feed, String rel) {
+		return feed.getLinks()
+				.stream()
+				.filter(l -> rel.equalsIgnoreCase(l.getRel()))
+				.map(SyndLink::getHref)
+				.map(StringUtils::trimToNull)
+				.filter(StringUtils::isNotBlank)
+				.findFirst()
+				.orElse(null);
+	}
+
 	private List<Entry> buildEntries(SyndFeed feed, String feedUrl) {
 		List<Entry> entries = new ArrayList<>();
 
 		for (SyndEntry item : feed.getEntries()) {
-			String guid = item.getUri();
-			if (StringUtils.isBlank(guid)) {
-				guid = item.getLink();
-			}
-			if (StringUtils.isBlank(guid)) {
-				// no guid and no link, skip entry
-				continue;
+			Entry entry = buildEntry(feed, feedUrl, item);
+			if (entry != null) {
+				entries.add(entry);
 			}
+		}
 
-			String url = buildEntryUrl(feed, feedUrl, item);
-			if (StringUtils.isBlank(url) && FeedUtils.isAbsoluteUrl(guid)) {
-				// if link is empty but guid is used as url, use guid
-				url = guid;
-			}
+		return sortEntries(entries);
+	}
 
-			Instant updated = buildEntryUpdateDate(item);
-			Content content = buildContent(item);
+	private List<Entry> sortEntries(List<Entry> entries) {
+		entries.sort(Comparator.comparing(Entry::updated).reversed());
+		return entries;
+	}
+
+	private Entry buildEntry(SyndFeed feed, String feedUrl, SyndEntry item) {
+		String guid = item.getUri();
+		if (StringUtils.isBlank(guid)) {
+			guid = item.getLink();
+		}
+		if (StringUtils.isBlank(guid)) {
+			// no guid and no link, skip entry
+			return null;
+		}
 
-			entries.add(new Entry(guid, url, updated, content));
+		String url = buildEntryUrl(feed, feedUrl, item);
+		if (StringUtils.isBlank(url) && FeedUtils.isAbsoluteUrl(guid)) {
+			// if link is empty but guid is used as url, use guid
+			url = guid;
 		}
 
-		entries.sort(Comparator.comparing(Entry::updated).reversed());
-		return entries;
+		Instant updated = buildEntryUpdateDate(item);
+		Content content = buildContent(item);
+
+		return new Entry(guid, url, updated, content);
 	}
 
 	private Content buildContent(SyndEntry item) {
@@ -0,0 +1,19 @@
+package com.commafeed.backend.feed.parser;
+
+import java.util.function.Predicate;
+
+import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
+
+/**
+ * What the caller already knows about the feed, lets the streaming parser skip the entries that will not be used
+ *
+ * @param maxEntries
+ *            only the most recent entries are needed, 0 for no limit
+ * @param knownEntry
+ *            returns true for entries that were already fetched, parsing stops after a run of known entries
+ */
+public record FeedParserHints(int maxEntries, Predicate<Entry> knownEntry) {
+
+	public static final FeedParserHints NONE = new FeedParserHints(0, e -> false);
+
+}
@@ -3,8 +3,14 @@ package com.commafeed.backend.feed.parser;
 import java.time.Instant;
 import java.util.List;
 
+/**
+ * @param pushHub
+ *            the WebSub hub advertised by the feed, or null
+ * @param pushTopic
+ *            the url of the feed the hub knows about, or null
+ */
 public record FeedParserResult(String title, String link, Instant lastPublishedDate, Long averageEntryInterval, Instant lastEntryDate,
-		List<Entry> entries) {
+		List<Entry> entries, String pushHub, String pushTopic) {
 	public record Entry(String guid, String url, Instant updated, Content content) {
 	}
 
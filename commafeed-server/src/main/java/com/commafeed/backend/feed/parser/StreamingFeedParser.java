@@ -0,0 +1,656 @@
+package com.commafeed.backend.feed.parser;
+
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.commafeed.backend.feed.FeedUtils;
+import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
+import com.rometools.modules.mediarss.MediaEntryModuleImpl;
+import com.rometools.modules.mediarss.types.MediaContent;
+import com.rometools.modules.mediarss.types.MediaGroup;
+import com.rometools.modules.mediarss.types.Metadata;
+import com.rometools.modules.mediarss.types.Thumbnail;
+import com.rometools.rome.feed.synd.SyndCategory;
+import com.rometools.rome.feed.synd.SyndCategoryImpl;
+import com.rometools.rome.feed.synd.SyndContent;
+import com.rometools.rome.feed.synd.SyndContentImpl;
+import com.rometools.rome.feed.synd.SyndEnclosure;
+import com.rometools.rome.feed.synd.SyndEnclosureImpl;
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndEntryImpl;
+import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.feed.synd.SyndFeedImpl;
+import com.rometools.rome.feed.synd.SyndLink;
+import com.rometools.rome.feed.synd.SyndLinkImpl;
+import com.rometools.rome.io.impl.DateParser;
+
+/**
+ * Streaming parser for RSS 2.0 and Atom 1.0 feeds, the most common formats.
+ *
+ * Entries are read and converted one at a time instead of building the whole document in memory first, so that only the entries that will
+ * be used are kept. Produces the same values as ROME for the elements it supports and throws {@link UnsupportedFeedException} when it
+ * encounters something it does not support (other formats, xhtml content, xml:base, ...), in which case the feed should be parsed with
+ * ROME instead.
+ */
+class StreamingFeedParser {
+
+	private static final String ATOM_10_NS = "http://www.w3.org/2005/Atom";
+	private static final String CONTENT_NS = "http://purl.org/rss/1.0/modules/content/";
+	private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+	private static final String MEDIA_NS = "http://search.yahoo.com/mrss/";
+
+	// parsing stops after that many consecutive entries that were already known
+	private static final int KNOWN_ENTRIES_RUN = 10;
+
+	private final XMLInputFactory factory;
+
+	StreamingFeedParser() {
+		this.factory = XMLInputFactory.newFactory();
+		this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		this.factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		this.factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	/**
+	 * @param entryBuilder
+	 *            converts an entry, may return null for entries that should be ignored
+	 */
+	StreamingFeedParserResult parse(Reader reader, BiFunction<SyndFeed, SyndEntry, Entry> entryBuilder, FeedParserHints hints)
+			throws XMLStreamException, UnsupportedFeedException {
+		XMLStreamReader xml = factory.createXMLStreamReader(reader);
+		try {
+			if (!nextChild(xml)) {
+				throw new UnsupportedFeedException("no root element");
+			}
+
+			EntryCollector collector = new EntryCollector(entryBuilder, hints);
+			SyndFeed feed;
+			if (is(xml, null, "rss")) {
+				String version = StringUtils.trimToEmpty(xml.getAttributeValue(null, "version"));
+				if (!version.startsWith("2.")) {
+					throw new UnsupportedFeedException("unsupported rss version " + version);
+				}
+				feed = parseRss(xml, collector);
+			} else if (is(xml, ATOM_10_NS, "feed")) {
+				feed = parseAtom(xml, collector);
+			} else {
+				throw new UnsupportedFeedException("unsupported root element " + xml.getName());
+			}
+
+			return new StreamingFeedParserResult(feed, collector.getEntries(), collector.getSkipped());
+		} finally {
+			xml.close();
+		}
+	}
+
+	private SyndFeed parseRss(XMLStreamReader xml, EntryCollector collector) throws XMLStreamException, UnsupportedFeedException {
+		SyndFeed feed = new SyndFeedImpl();
+		feed.setFeedType("rss_2.0");
+
+		while (nextChild(xml)) {
+			if (!is(xml, null, "channel")) {
+				skipElement(xml);
+				continue;
+			}
+
+			Date pubDate = null;
+			Date lastBuildDate = null;
+			Date dcDate = null;
+			while (nextChild(xml)) {
+				if (is(xml, null, "item")) {
+					if (collector.isDone()) {
+						collector.skip();
+						skipElement(xml);
+					} else {
+						collector.add(feed, parseRssItem(xml));
+					}
+				} else if (is(xml, null, "title") && feed.getTitle() == null) {
+					feed.setTitle(readText(xml));
+				} else if (is(xml, null, "link") && feed.getLink() == null) {
+					feed.setLink(readText(xml));
+				} else if (is(xml, null, "pubDate") && pubDate == null) {
+					pubDate = parseDate(readText(xml));
+				} else if (is(xml, null, "lastBuildDate") && lastBuildDate == null) {
+					lastBuildDate = parseDate(readText(xml));
+				} else if (is(xml, DC_NS, "date") && dcDate == null) {
+					dcDate = parseDate(readText(xml));
+				} else if (is(xml, ATOM_10_NS, "link")) {
+					// atom links of rss feeds are foreign markup for ROME, FeedParser adds them to the links of the feed the same way
+					SyndLink link = new SyndLinkImpl();
+					link.setRel(xml.getAttributeValue(null, "rel"));
+					link.setHref(xml.getAttributeValue(null, "href"));
+					feed.getLinks().add(link);
+					skipElement(xml);
+				} else {
+					skipElement(xml);
+				}
+			}
+
+			if (pubDate != null) {
+				feed.setPublishedDate(pubDate);
+			} else if (lastBuildDate != null) {
+				feed.setPublishedDate(lastBuildDate);
+			} else if (dcDate != null) {
+				feed.setPublishedDate(dcDate);
+			}
+		}
+
+		return feed;
+	}
+
+	private SyndEntry parseRssItem(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		String title = null;
+		String link = null;
+		String description = null;
+		String encoded = null;
+		String guid = null;
+		boolean guidPermaLink = true;
+		String author = null;
+		String dcCreator = null;
+		Date pubDate = null;
+		Date dcDate = null;
+		SyndEnclosure enclosure = null;
+		// ROME removes duplicate categories, a category is identified by its name and its domain
+		Map<List<String>, SyndCategory> categories = new LinkedHashMap<>();
+		MediaParser media = new MediaParser();
+
+		while (nextChild(xml)) {
+			if (is(xml, null, "title") && title == null) {
+				title = readText(xml);
+			} else if (is(xml, null, "link") && link == null) {
+				link = readText(xml);
+			} else if (is(xml, null, "description") && description == null) {
+				description = readText(xml);
+			} else if (is(xml, CONTENT_NS, "encoded") && encoded == null) {
+				encoded = readText(xml);
+			} else if (is(xml, null, "guid") && guid == null) {
+				guidPermaLink = !"false".equalsIgnoreCase(StringUtils.trim(xml.getAttributeValue(null, "isPermaLink")));
+				guid = readText(xml);
+			} else if (is(xml, null, "author") && author == null) {
+				author = readText(xml);
+			} else if (is(xml, DC_NS, "creator") && dcCreator == null) {
+				dcCreator = readText(xml);
+			} else if (is(xml, null, "pubDate") && pubDate == null) {
+				pubDate = parseDate(readText(xml));
+			} else if (is(xml, DC_NS, "date") && dcDate == null) {
+				dcDate = parseDate(readText(xml));
+			} else if (is(xml, DC_NS, "subject")) {
+				throw new UnsupportedFeedException("dublin core subjects are not supported");
+			} else if (is(xml, null, "category")) {
+				String domain = xml.getAttributeValue(null, "domain");
+				String name = readText(xml);
+				SyndCategory category = new SyndCategoryImpl();
+				category.setName(name);
+				category.setTaxonomyUri(domain);
+				categories.putIfAbsent(List.of(String.valueOf(name), String.valueOf(domain)), category);
+			} else if (is(xml, null, "enclosure") && enclosure == null) {
+				enclosure = new SyndEnclosureImpl();
+				enclosure.setUrl(xml.getAttributeValue(null, "url"));
+				enclosure.setType(xml.getAttributeValue(null, "type"));
+				skipElement(xml);
+			} else if (MEDIA_NS.equals(xml.getNamespaceURI())) {
+				media.parse(xml);
+			} else {
+				skipElement(xml);
+			}
+		}
+
+		SyndEntry entry = new SyndEntryImpl();
+		entry.setTitle(title);
+		if (guid != null) {
+			entry.setUri(guid);
+			if (link == null && guidPermaLink) {
+				link = guid;
+			}
+		} else {
+			entry.setUri(link);
+		}
+		entry.setLink(link);
+		if (description != null) {
+			entry.setDescription(content("text/html", description));
+		}
+		if (encoded != null) {
+			entry.setContents(new ArrayList<>(List.of(content("html", encoded))));
+		}
+		if (dcCreator != null || author != null) {
+			entry.setAuthor(dcCreator != null ? dcCreator : author);
+		}
+		if (dcDate != null || pubDate != null) {
+			entry.setPublishedDate(dcDate != null ? dcDate : pubDate);
+		}
+		if (!categories.isEmpty()) {
+			entry.setCategories(new ArrayList<>(categories.values()));
+		}
+		if (enclosure != null) {
+			entry.setEnclosures(new ArrayList<>(List.of(enclosure)));
+		}
+		media.addTo(entry);
+		return entry;
+	}
+
+	private SyndFeed parseAtom(XMLStreamReader xml, EntryCollector collector) throws XMLStreamException, UnsupportedFeedException {
+		SyndFeed feed = new SyndFeedImpl();
+		feed.setFeedType("atom_1.0");
+
+		String alternateLink = null;
+		String otherLink = null;
+		while (nextChild(xml)) {
+			if (is(xml, ATOM_10_NS, "entry")) {
+				if (collector.isDone()) {
+					collector.skip();
+					skipElement(xml);
+				} else {
+					collector.add(feed, parseAtomEntry(xml));
+				}
+			} else if (is(xml, ATOM_10_NS, "title") && feed.getTitle() == null) {
+				feed.setTitle(readTextConstruct(xml));
+			} else if (is(xml, ATOM_10_NS, "updated") && feed.getPublishedDate() == null) {
+				feed.setPublishedDate(parseDate(readText(xml)));
+			} else if (is(xml, ATOM_10_NS, "link")) {
+				SyndLink link = parseAtomLink(xml);
+				feed.getLinks().add(link);
+				if ("alternate".equals(link.getRel())) {
+					alternateLink = alternateLink == null ? link.getHref() : alternateLink;
+				} else {
+					otherLink = otherLink == null ? link.getHref() : otherLink;
+				}
+				// the link of the feed may be needed to build the urls of the entries
+				feed.setLink(alternateLink != null ? alternateLink : otherLink);
+			} else {
+				skipElement(xml);
+			}
+		}
+
+		return feed;
+	}
+
+	private SyndEntry parseAtomEntry(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		String id = null;
+		String title = null;
+		String summary = null;
+		String content = null;
+		String author = null;
+		String alternateLink = null;
+		String otherLink = null;
+		SyndEnclosure enclosure = null;
+		Date updated = null;
+		Date published = null;
+		List<SyndCategory> categories = new ArrayList<>();
+		MediaParser media = new MediaParser();
+
+		while (nextChild(xml)) {
+			if (is(xml, ATOM_10_NS, "id") && id == null) {
+				id = readText(xml);
+			} else if (is(xml, ATOM_10_NS, "title") && title == null) {
+				title = readTextConstruct(xml);
+			} else if (is(xml, ATOM_10_NS, "summary") && summary == null) {
+				summary = readTextConstruct(xml);
+			} else if (is(xml, ATOM_10_NS, "content") && content == null) {
+				if (xml.getAttributeValue(null, "src") != null) {
+					throw new UnsupportedFeedException("out-of-line content is not supported");
+				}
+				content = readTextConstruct(xml);
+			} else if (is(xml, ATOM_10_NS, "author") && author == null) {
+				author = parseAtomPersonName(xml);
+			} else if (is(xml, ATOM_10_NS, "updated") && updated == null) {
+				updated = parseDate(readText(xml));
+			} else if (is(xml, ATOM_10_NS, "published") && published == null) {
+				published = parseDate(readText(xml));
+			} else if (is(xml, ATOM_10_NS, "category")) {
+				SyndCategory category = new SyndCategoryImpl();
+				category.setName(xml.getAttributeValue(null, "term"));
+				category.setTaxonomyUri(xml.getAttributeValue(null, "scheme"));
+				categories.add(category);
+				skipElement(xml);
+			} else if (is(xml, ATOM_10_NS, "link")) {
+				SyndLink link = parseAtomLink(xml);
+				if ("alternate".equals(link.getRel())) {
+					alternateLink = alternateLink == null ? link.getHref() : alternateLink;
+				} else {
+					otherLink = otherLink == null ? link.getHref() : otherLink;
+					if ("enclosure".equals(link.getRel()) && enclosure == null) {
+						enclosure = new SyndEnclosureImpl();
+						enclosure.setUrl(link.getHref());
+						enclosure.setType(link.getType());
+					}
+				}
+			} else if (DC_NS.equals(xml.getNamespaceURI())) {
+				throw new UnsupportedFeedException("dublin core elements in atom entries are not supported");
+			} else if (MEDIA_NS.equals(xml.getNamespaceURI())) {
+				media.parse(xml);
+			} else {
+				skipElement(xml);
+			}
+		}
+
+		SyndEntry entry = new SyndEntryImpl();
+		String link = alternateLink != null ? alternateLink : otherLink;
+		entry.setLink(link);
+		entry.setUri(id != null ? id : link);
+		entry.setTitle(title);
+		if (summary != null) {
+			entry.setDescription(content("text", summary));
+		}
+		if (content != null) {
+			entry.setContents(new ArrayList<>(List.of(content("html", content))));
+		}
+		if (author != null) {
+			entry.setAuthor(author);
+		}
+		entry.setUpdatedDate(updated);
+		entry.setPublishedDate(published);
+		entry.setCategories(categories);
+		if (enclosure != null) {
+			entry.setEnclosures(new ArrayList<>(List.of(enclosure)));
+		}
+		media.addTo(entry);
+		return entry;
+	}
+
+	private SyndLink parseAtomLink(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		String href = xml.getAttributeValue(null, "href");
+		if (href != null && !FeedUtils.isAbsoluteUrl(href)) {
+			// ROME resolves relative links against the base of the document
+			throw new UnsupportedFeedException("relative links are not supported");
+		}
+
+		SyndLink link = new SyndLinkImpl();
+		link.setRel(Objects.toString(xml.getAttributeValue(null, "rel"), "alternate"));
+		link.setHref(href);
+		link.setType(xml.getAttributeValue(null, "type"));
+		skipElement(xml);
+		return link;
+	}
+
+	private String parseAtomPersonName(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		String name = null;
+		while (nextChild(xml)) {
+			if (is(xml, ATOM_10_NS, "name") && name == null) {
+				name = readText(xml);
+			} else {
+				skipElement(xml);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * reads an atom text construct, only plain text and escaped html are supported
+	 */
+	private String readTextConstruct(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		String type = xml.getAttributeValue(null, "type");
+		if (type != null && !"text".equals(type) && !"html".equals(type)) {
+			throw new UnsupportedFeedException("unsupported text construct type " + type);
+		}
+		return readText(xml);
+	}
+
+	/**
+	 * reads the text of the current element, which must not contain other elements
+	 */
+	private String readText(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		StringBuilder sb = new StringBuilder();
+		while (xml.hasNext()) {
+			int event = xml.next();
+			switch (event) {
+			case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> sb.append(xml.getText());
+			case XMLStreamConstants.END_ELEMENT -> {
+				return sb.toString();
+			}
+			case XMLStreamConstants.START_ELEMENT -> throw new UnsupportedFeedException("markup in text is not supported");
+			case XMLStreamConstants.ENTITY_REFERENCE -> throw new UnsupportedFeedException("unresolved entity " + xml.getLocalName());
+			default -> {
+				// comments and processing instructions are not part of the text
+			}
+			}
+		}
+		throw new XMLStreamException("unexpected end of document");
+	}
+
+	/**
+	 * moves to the next child of the current element
+	 *
+	 * @return false if the current element has no more children, the reader is then on the end of the current element
+	 */
+	private boolean nextChild(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+		while (xml.hasNext()) {
+			int event = xml.next();
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT -> {
+				if (xml.getAttributeValue(XMLConstants.XML_NS_URI, "base") != null) {
+					throw new UnsupportedFeedException("xml:base is not supported");
+				}
+				return true;
+			}
+			case XMLStreamConstants.END_ELEMENT, XMLStreamConstants.END_DOCUMENT -> {
+				return false;
+			}
+			case XMLStreamConstants.DTD -> throw new UnsupportedFeedException("doctypes are not supported");
+			case XMLStreamConstants.ENTITY_REFERENCE -> throw new UnsupportedFeedException("unresolved entity " + xml.getLocalName());
+			default -> {
+				// whitespace, text and comments between elements
+			}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * skips the current element and its children, the reader is then on the end of the element
+	 */
+	private void skipElement(XMLStreamReader xml) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static boolean is(XMLStreamReader xml, String namespace, String localName) {
+		return localName.equals(xml.getLocalName()) && StringUtils.equals(StringUtils.trimToNull(xml.getNamespaceURI()), namespace);
+	}
+
+	private static Date parseDate(String value) {
+		return DateParser.parseDate(StringUtils.trim(value), Locale.US);
+	}
+
+	private static SyndContent content(String type, String value) {
+		SyndContent content = new SyndContentImpl();
+		content.setType(type);
+		content.setValue(value);
+		return content;
+	}
+
+	/**
+	 * the media rss metadata ROME exposes on entries: the description and thumbnails of the entry and of its first group
+	 */
+	private class MediaParser {
+
+		private Metadata metadata;
+		private Metadata groupMetadata;
+
+		void parse(XMLStreamReader xml) throws XMLStreamException, UnsupportedFeedException {
+			if (metadata == null) {
+				metadata = new Metadata();
+			}
+
+			if ("group".equals(xml.getLocalName())) {
+				if (groupMetadata != null) {
+					skipElement(xml);
+					return;
+				}
+
+				groupMetadata = new Metadata();
+				while (nextChild(xml)) {
+					if (MEDIA_NS.equals(xml.getNamespaceURI())) {
+						parseMetadata(xml, groupMetadata);
+					} else {
+						skipElement(xml);
+					}
+				}
+			} else {
+				parseMetadata(xml, metadata);
+			}
+		}
+
+		private void parseMetadata(XMLStreamReader xml, Metadata target) throws XMLStreamException, UnsupportedFeedException {
+			if ("description".equals(xml.getLocalName()) && target.getDescription() == null) {
+				target.setDescription(readText(xml));
+			} else if ("thumbnail".equals(xml.getLocalName())) {
+				Thumbnail thumbnail = parseThumbnail(xml);
+				if (thumbnail != null) {
+					target.setThumbnail(ArrayUtils.add(target.getThumbnail(), thumbnail));
+				}
+				skipElement(xml);
+			} else {
+				skipElement(xml);
+			}
+		}
+
+		private Thumbnail parseThumbnail(XMLStreamReader xml) {
+			String url = xml.getAttributeValue(null, "url");
+			if (url == null) {
+				return null;
+			}
+
+			try {
+				String width = xml.getAttributeValue(null, "width");
+				String height = xml.getAttributeValue(null, "height");
+				Integer w = width == null ? null : Integer.valueOf(width);
+				Integer h = height == null ? null : Integer.valueOf(height);
+				return new Thumbnail(new URI(url), w, h, null);
+			} catch (URISyntaxException | NumberFormatException e) {
+				// ROME ignores invalid thumbnails
+				return null;
+			}
+		}
+
+		void addTo(SyndEntry entry) {
+			if (metadata == null) {
+				return;
+			}
+
+			MediaEntryModuleImpl module = new MediaEntryModuleImpl();
+			module.setMetadata(metadata);
+			if (groupMetadata != null) {
+				MediaGroup group = new MediaGroup(new MediaContent[0]);
+				group.setMetadata(groupMetadata);
+				module.setMediaGroups(new MediaGroup[] { group });
+			} else {
+				module.setMediaGroups(new MediaGroup[0]);
+			}
+			entry.getModules().add(module);
+		}
+	}
+
+	/**
+	 * keeps the entries that will be used and detects when the rest of the feed is already known
+	 */
+	private static class EntryCollector {
+
+		private final BiFunction<SyndFeed, SyndEntry, Entry> entryBuilder;
+		private final FeedParserHints hints;
+		// the least recent entry first, so that it can be evicted when there are too many entries
+		private final PriorityQueue<IndexedEntry> entries = new PriorityQueue<>(Comparator
+				.comparing((IndexedEntry e) -> e.entry().updated())
+				.thenComparing(IndexedEntry::index, Comparator.reverseOrder()));
+
+		private int index;
+		private int skipped;
+		private int knownRun;
+		private Entry previous;
+		private boolean mostRecentFirst = true;
+
+		EntryCollector(BiFunction<SyndFeed, SyndEntry, Entry> entryBuilder, FeedParserHints hints) {
+			this.entryBuilder = entryBuilder;
+			this.hints = hints;
+		}
+
+		void add(SyndFeed feed, SyndEntry item) {
+			Entry entry = entryBuilder.apply(feed, item);
+			if (entry == null) {
+				return;
+			}
+
+			// stopping at known entries is only safe if the feed lists its entries from the most recent to the least recent
+			if (previous != null && entry.updated().isAfter(previous.updated())) {
+				mostRecentFirst = false;
+			}
+			previous = entry;
+			knownRun = hints.knownEntry().test(entry) ? knownRun + 1 : 0;
+
+			entries.add(new IndexedEntry(entry, index++));
+			if (hints.maxEntries() > 0 && entries.size() > hints.maxEntries()) {
+				entries.poll();
+				skipped++;
+			}
+		}
+
+		void skip() {
+			skipped++;
+		}
+
+		/**
+		 * @return true if the following entries are known and can be skipped
+		 */
+		boolean isDone() {
+			return mostRecentFirst && knownRun >= KNOWN_ENTRIES_RUN;
+		}
+
+		/**
+		 * @return the entries in the order of the document
+		 */
+		List<Entry> getEntries() {
+			return entries.stream().sorted(Comparator.comparing(IndexedEntry::index)).map(IndexedEntry::entry).toList();
+		}
+
+		int getSkipped() {
+			return skipped;
+		}
+
+		private record IndexedEntry(Entry entry, int index) {
+		}
+	}
+
+	/**
+	 * @param skipped
+	 *            the number of entries that were dropped or not read
+	 */
+	record StreamingFeedParserResult(SyndFeed feed, List<Entry> entries, int skipped) {
+	}
+
+	static class UnsupportedFeedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedFeedException(String message) {
+			super(message);
+		}
+	}
+
+}
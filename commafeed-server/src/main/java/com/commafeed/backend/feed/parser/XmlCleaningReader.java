@@ -0,0 +1,167 @@
+package com.commafeed.backend.feed.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Objects;
+
+/**
+ * Cleans xml while it is read, in a single pass and without copying the whole document:
+ * <ul>
+ * <li>skips everything before the first tag</li>
+ * <li>drops the characters that are not allowed in xml documents</li>
+ * <li>replaces html entities with their numeric equivalent, xml parsers only know about the entities declared by xml</li>
+ * </ul>
+ */
+class XmlCleaningReader extends Reader {
+
+	private static final int NONE = -2;
+	private static final int MAX_ENTITY_LENGTH = HtmlEntities.HTML_TO_NUMERIC_MAP.keySet()
+			.stream()
+			.mapToInt(String::length)
+			.max()
+			.orElse(0);
+	private static final int MAX_REPLACEMENT_LENGTH = HtmlEntities.HTML_TO_NUMERIC_MAP.values()
+			.stream()
+			.mapToInt(String::length)
+			.max()
+			.orElse(0);
+
+	private final Reader in;
+
+	// characters read from the underlying reader
+	private final char[] buffer = new char[8192];
+	private int position;
+	private int limit;
+	private boolean firstTagFound;
+
+	// a character read while looking for the end of an entity, to be read again
+	private int pushedBack = NONE;
+
+	// characters ready to be returned, an entity or its replacement
+	private final char[] pending = new char[Math.max(MAX_ENTITY_LENGTH, MAX_REPLACEMENT_LENGTH)];
+	private int pendingPosition;
+	private int pendingLength;
+
+	XmlCleaningReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return true if the document does not contain any tag
+	 */
+	boolean isEmpty() throws IOException {
+		if (pushedBack != NONE || pendingPosition < pendingLength) {
+			return false;
+		}
+
+		int c = nextValidCharacter();
+		if (c == -1) {
+			return true;
+		}
+		pushedBack = c;
+		return false;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, cbuf.length);
+		if (len == 0) {
+			return 0;
+		}
+
+		int count = 0;
+		while (count < len) {
+			if (pendingPosition < pendingLength) {
+				int n = Math.min(len - count, pendingLength - pendingPosition);
+				System.arraycopy(pending, pendingPosition, cbuf, off + count, n);
+				pendingPosition += n;
+				count += n;
+				continue;
+			}
+
+			int c = nextValidCharacter();
+			if (c == -1) {
+				break;
+			} else if (c == '&') {
+				readEntity();
+			} else {
+				cbuf[off + count++] = (char) c;
+			}
+		}
+		return count == 0 ? -1 : count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * reads the characters following '&amp;' into the pending buffer, and replaces them if they form a known html entity
+	 */
+	private void readEntity() throws IOException {
+		pendingPosition = 0;
+		pendingLength = 0;
+		pending[pendingLength++] = '&';
+
+		while (pendingLength < MAX_ENTITY_LENGTH) {
+			int c = nextValidCharacter();
+			if (c == ';') {
+				pending[pendingLength++] = ';';
+				String replacement = HtmlEntities.HTML_TO_NUMERIC_MAP.get(new String(pending, 0, pendingLength));
+				if (replacement != null) {
+					replacement.getChars(0, replacement.length(), pending, 0);
+					pendingLength = replacement.length();
+				}
+				return;
+			}
+
+			if (!isEntityNameCharacter(c)) {
+				// not an entity, the character may start another one
+				pushedBack = c;
+				return;
+			}
+			pending[pendingLength++] = (char) c;
+		}
+	}
+
+	private int nextValidCharacter() throws IOException {
+		if (pushedBack != NONE) {
+			int c = pushedBack;
+			pushedBack = NONE;
+			return c;
+		}
+
+		while (true) {
+			if (position == limit) {
+				int n = in.read(buffer, 0, buffer.length);
+				if (n <= 0) {
+					return -1;
+				}
+				position = 0;
+				limit = n;
+			}
+
+			char c = buffer[position++];
+			if (!firstTagFound) {
+				if (c != '<') {
+					continue;
+				}
+				firstTagFound = true;
+			}
+
+			if (isValidXmlCharacter(c)) {
+				return c;
+			}
+		}
+	}
+
+	private static boolean isValidXmlCharacter(char c) {
+		return (c >= 32 || c == 9 || c == 10 || c == 13) && !Character.isSurrogate(c);
+	}
+
+	private static boolean isEntityNameCharacter(int c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.commafeed.backend.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A named lease held by one of the nodes sharing the database, used to elect a leader
+ */
+@Entity
+@Table(name = "CLUSTERLEASES")
+@SuppressWarnings("serial")
+@Getter
+@Setter
+public class ClusterLease extends AbstractModel {
+
+	public static final String SCHEDULED_TASKS = "scheduled-tasks";
+
+	@Column(length = 64, nullable = false, unique = true)
+	private String name;
+
+	/**
+	 * the node holding the lease
+	 */
+	@Column(length = 128)
+	private String owner;
+
+	/**
+	 * the lease is free after this date
+	 */
+	@Column
+	private Instant expiration;
+
+}
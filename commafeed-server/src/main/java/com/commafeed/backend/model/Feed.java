@@ -97,4 +97,55 @@ public class Feed extends AbstractModel {
 	@Column(length = 40)
 	private String lastContentHash;
 
+	/**
+	 * statistical model of the arrival of new entries, used to decide when to refresh the feed
+	 */
+	@Column(length = 255)
+	private String entryArrivalModel;
+
+	/**
+	 * the node that claimed the feed for refresh, when several nodes share the same database
+	 */
+	@Column(length = 128)
+	private String leaseOwner;
+
+	/**
+	 * the claim of the node expires after this date, in case the node died while refreshing the feed
+	 */
+	@Column
+	private Instant leaseExpiration;
+
+	/**
+	 * the WebSub hub advertised by the feed
+	 */
+	@Column(length = 2048)
+	private String pushHub;
+
+	/**
+	 * the url of the feed known by the hub
+	 */
+	@Column(length = 2048)
+	private String pushTopic;
+
+	@Column(length = 40)
+	private String pushTopicHash;
+
+	/**
+	 * secret shared with the hub to sign the content it pushes to us
+	 */
+	@Column(length = 40)
+	private String pushSecret;
+
+	/**
+	 * the hub pushes new entries to us until this date
+	 */
+	@Column
+	private Instant pushLeaseExpiration;
+
+	/**
+	 * we asked the hub for a subscription and accept its verification until this date
+	 */
+	@Column
+	private Instant pushVerificationDeadline;
+
 }
@@ -35,6 +35,11 @@ public class FeedEntryContent extends AbstractModel {
 	@Column(length = 40)
 	private String contentHash;
 
+	// hash of all the columns compared by equivalentTo(), unique so that equivalent contents are never inserted twice. Contents inserted
+	// before this column existed don't have one.
+	@Column(length = 40)
+	private String equivalenceHash;
+
 	@Column(name = "author", length = 128)
 	private String author;
 
@@ -0,0 +1,51 @@
+package com.commafeed.backend.service;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.frontend.ws.WebSocketSessions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Keeps track of the users currently using the application, either because they have an open websocket session or because they recently
+ * called the API
+ */
+@Singleton
+public class ActiveUserService {
+
+	private static final Duration ACTIVITY_WINDOW = Duration.ofMinutes(15);
+
+	private final WebSocketSessions webSocketSessions;
+	private final Cache<Long, Boolean> recentlyActive;
+
+	@Inject
+	public ActiveUserService(WebSocketSessions webSocketSessions, MetricRegistry metrics) {
+		this.webSocketSessions = webSocketSessions;
+		this.recentlyActive = CacheBuilder.newBuilder().expireAfterWrite(ACTIVITY_WINDOW.toMillis(), TimeUnit.MILLISECONDS).build();
+
+		metrics.register(MetricRegistry.name(getClass(), "recentlyActive"), (Gauge<Long>) recentlyActive::size);
+	}
+
+	public void markActive(Long userId) {
+		recentlyActive.put(userId, Boolean.TRUE);
+	}
+
+	public boolean isActive(Long userId) {
+		return recentlyActive.getIfPresent(userId) != null || webSocketSessions.isConnected(userId);
+	}
+
+	public Set<Long> getActiveUserIds() {
+		Set<Long> userIds = new HashSet<>(recentlyActive.asMap().keySet());
+		userIds.addAll(webSocketSessions.getConnectedUserIds());
+		return userIds;
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.commafeed.backend.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.dao.ClusterLeaseDAO;
+import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.model.ClusterLease;
+
+import io.dropwizard.lifecycle.Managed;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinates the nodes sharing the same database when clustering is enabled.
+ *
+ * Each node has a unique id used to claim feeds. One of the nodes is elected leader by periodically renewing a lease in the database, only
+ * the leader runs the scheduled tasks.
+ */
+@Slf4j
+@Singleton
+public class ClusterService implements Managed {
+
+	private final UnitOfWork unitOfWork;
+	private final ClusterLeaseDAO clusterLeaseDAO;
+	private final boolean clustered;
+	private final Duration leaseDuration;
+	private final ScheduledExecutorService heartbeatExecutor;
+
+	@Getter
+	private final String nodeId;
+
+	// the leadership is only trusted until the lease expires, in case the lease could not be renewed in time
+	private volatile Instant leadershipExpiration = Instant.EPOCH;
+
+	@Inject
+	public ClusterService(UnitOfWork unitOfWork, ClusterLeaseDAO clusterLeaseDAO, CommaFeedConfiguration config) {
+		this.unitOfWork = unitOfWork;
+		this.clusterLeaseDAO = clusterLeaseDAO;
+		this.clustered = Boolean.TRUE.equals(config.getApplicationSettings().getClustered());
+		this.leaseDuration = config.getApplicationSettings().getLeaseDuration().toJavaDuration();
+		this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+		this.nodeId = getHostName() + "-" + UUID.randomUUID();
+	}
+
+	@Override
+	public void start() {
+		if (!clustered) {
+			return;
+		}
+
+		log.info("starting cluster node {}", nodeId);
+		heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, getLeaseRenewalPeriod().toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() {
+		heartbeatExecutor.shutdownNow();
+		if (clustered && isLeader()) {
+			// let another node take over right away instead of waiting for the lease to expire
+			unitOfWork.run(() -> clusterLeaseDAO.release(ClusterLease.SCHEDULED_TASKS, nodeId));
+			leadershipExpiration = Instant.EPOCH;
+		}
+	}
+
+	public boolean isClustered() {
+		return clustered;
+	}
+
+	/**
+	 * @return true if this node should run the scheduled tasks, always true if clustering is disabled
+	 */
+	public boolean isLeader() {
+		return !clustered || Instant.now().isBefore(leadershipExpiration);
+	}
+
+	/**
+	 * date after which a claim made now by this node can be taken over by another node
+	 */
+	public Instant getLeaseExpiration() {
+		return Instant.now().plus(leaseDuration);
+	}
+
+	/**
+	 * how often leases should be renewed so that they never expire while the node is alive
+	 */
+	public Duration getLeaseRenewalPeriod() {
+		return Duration.ofMillis(Math.max(1, leaseDuration.toMillis() / 3));
+	}
+
+	private void heartbeat() {
+		try {
+			Instant now = Instant.now();
+			Instant expiration = now.plus(leaseDuration);
+			boolean wasLeader = isLeader();
+			boolean leader = unitOfWork.call(() -> clusterLeaseDAO.tryAcquire(ClusterLease.SCHEDULED_TASKS, nodeId, expiration));
+			leadershipExpiration = leader ? expiration : Instant.EPOCH;
+
+			if (leader != wasLeader) {
+				log.info("cluster node {} is {} the leader", nodeId, leader ? "now" : "no longer");
+			}
+		} catch (Exception e) {
+			log.error("could not renew the cluster lease: {}", e.getMessage(), e);
+		}
+	}
+
+	private static String getHostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			return "unknown";
+		}
+	}
+
+}
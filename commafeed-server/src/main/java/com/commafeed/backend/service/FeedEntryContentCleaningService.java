@@ -13,6 +13,8 @@ import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Entities.EscapeMode;
 import org.jsoup.safety.Cleaner;
 import org.jsoup.safety.Safelist;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 import org.w3c.css.sac.CSSException;
 import org.w3c.css.sac.CSSParseException;
 import org.w3c.css.sac.ErrorHandler;
@@ -36,24 +38,32 @@ public class FeedEntryContentCleaningService {
 	private static final List<String> ALLOWED_IMG_CSS_RULES = Arrays.asList("display", "width", "height");
 	private static final char[] FORBIDDEN_CSS_RULE_CHARACTERS = new char[] { '(', ')' };
 
+	// the cleaner only reads the whitelist, it can be shared between threads
+	private static final Cleaner CLEANER = new Cleaner(HTML_WHITELIST);
+	private static final Evaluator STYLED_ELEMENTS = QueryParser.parse("iframe[style], img[style]");
+	private static final ErrorHandler CSS_ERROR_HANDLER = new CssErrorHandler();
+
+	// characters of the styles that can be cleaned without a css parser, see cleanSimpleStyle()
+	private static final String SIMPLE_STYLE_CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789-%:; \t\n\r\f";
+	private static final List<String> SIMPLE_STYLE_UNITS = Arrays.asList("", "px", "em", "pt", "%");
+
 	public String clean(String content, String baseUri, boolean keepTextOnly) {
 		if (StringUtils.isNotBlank(content)) {
+			if (keepTextOnly && isPlainText(content)) {
+				// no markup and no entity, the text is the content with normalized whitespace
+				return normalizeWhitespace(content);
+			}
+
 			baseUri = StringUtils.trimToEmpty(baseUri);
 
 			Document dirty = Jsoup.parseBodyFragment(content, baseUri);
-			Cleaner cleaner = new Cleaner(HTML_WHITELIST);
-			Document clean = cleaner.clean(dirty);
+			Document clean = CLEANER.clean(dirty);
 
-			for (Element e : clean.select("iframe[style]")) {
-				String style = e.attr("style");
-				String escaped = escapeIFrameCss(style);
-				e.attr("style", escaped);
-			}
-
-			for (Element e : clean.select("img[style]")) {
-				String style = e.attr("style");
-				String escaped = escapeImgCss(style);
-				e.attr("style", escaped);
+			if (!keepTextOnly) {
+				for (Element e : clean.select(STYLED_ELEMENTS)) {
+					List<String> allowedRules = "iframe".equals(e.normalName()) ? ALLOWED_IFRAME_CSS_RULES : ALLOWED_IMG_CSS_RULES;
+					e.attr("style", cleanStyle(e.attr("style"), allowedRules));
+				}
 			}
 
 			clean.outputSettings(new OutputSettings().escapeMode(EscapeMode.base).prettyPrint(false));
@@ -101,31 +111,119 @@ public class FeedEntryContentCleaningService {
 		return whitelist;
 	}
 
-	private String escapeIFrameCss(String orig) {
-		String rule = "";
-		try {
-			List<String> rules = new ArrayList<>();
-			CSSStyleDeclaration decl = buildCssParser().parseStyleDeclaration(new InputSource(new StringReader(orig)));
+	/**
+	 * @return true if jsoup would read the content as a single text node without any character reference
+	 */
+	static boolean isPlainText(String content) {
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c == '<' || c == '&' || c < ' ' && !isWhitespace(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-			for (int i = 0; i < decl.getLength(); i++) {
-				String property = decl.item(i);
-				String value = decl.getPropertyValue(property);
-				if (StringUtils.isBlank(property) || StringUtils.isBlank(value)) {
+	/**
+	 * same as jsoup's Element.text() for a single text node: whitespace sequences are replaced by a single space, zero width spaces and
+	 * soft hyphens are removed and the result is trimmed
+	 */
+	static String normalizeWhitespace(String content) {
+		StringBuilder sb = new StringBuilder(content.length());
+		boolean lastWasWhite = false;
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (isWhitespace(c) || c == '\u00A0') {
+				if (!lastWasWhite && sb.length() > 0) {
+					sb.append(' ');
+					lastWasWhite = true;
+				}
+			} else if (c != '\u200B' && c != '\u00AD') {
+				sb.append(c);
+				lastWasWhite = false;
+			}
+		}
+		if (lastWasWhite) {
+			sb.setLength(sb.length() - 1);
+		}
+		return sb.toString();
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+
+	static String cleanStyle(String style, List<String> allowedRules) {
+		String rule = cleanSimpleStyle(style, allowedRules);
+		return rule != null ? rule : cleanStyleWithParser(style, allowedRules);
+	}
+
+	/**
+	 * cleans the styles only made of simple declarations (e.g. "width: 100px; display: block") without a css parser. Values are limited
+	 * to identifiers and integers with an optional unit, for which the output of the css parser is known.
+	 *
+	 * @return the cleaned style, or null if the style needs to be cleaned by the css parser
+	 */
+	static String cleanSimpleStyle(String style, List<String> allowedRules) {
+		if (!StringUtils.containsOnly(style, SIMPLE_STYLE_CHARACTERS)) {
+			return null;
+		}
+
+		List<String> properties = new ArrayList<>();
+		StringBuilder rules = new StringBuilder();
+		String[] declarations = StringUtils.splitPreserveAllTokens(style, ';');
+		for (int i = 0; i < declarations.length; i++) {
+			String declaration = declarations[i];
+			if (StringUtils.isBlank(declaration)) {
+				// the css parser discards the whole style when a declaration is empty, only a trailing semicolon is harmless
+				if (i == declarations.length - 1) {
 					continue;
 				}
+				return null;
+			}
 
-				if (ALLOWED_IFRAME_CSS_RULES.contains(property) && StringUtils.containsNone(value, FORBIDDEN_CSS_RULE_CHARACTERS)) {
-					rules.add(property + ":" + decl.getPropertyValue(property) + ";");
+			int colon = declaration.indexOf(':');
+			if (colon == -1 || declaration.indexOf(':', colon + 1) != -1) {
+				return null;
+			}
+
+			String property = declaration.substring(0, colon).trim();
+			String[] values = StringUtils.split(declaration.substring(colon + 1));
+			// duplicate properties are resolved by the css parser
+			if (!isSimpleIdentifier(property) || properties.contains(property) || values.length == 0) {
+				return null;
+			}
+			properties.add(property);
+
+			for (String value : values) {
+				if (!isSimpleIdentifier(value) && !isSimpleNumber(value)) {
+					return null;
 				}
 			}
-			rule = StringUtils.join(rules, "");
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
+
+			if (allowedRules.contains(property)) {
+				rules.append(property).append(':').append(String.join(" ", values)).append(';');
+			}
 		}
-		return rule;
+		return rules.toString();
+	}
+
+	private static boolean isSimpleIdentifier(String s) {
+		return !s.isEmpty() && StringUtils.isAllLowerCase(s.substring(0, 1)) && StringUtils.containsOnly(s, "abcdefghijklmnopqrstuvwxyz-");
 	}
 
-	private String escapeImgCss(String orig) {
+	private static boolean isSimpleNumber(String s) {
+		int digits = 0;
+		while (digits < s.length() && Character.isDigit(s.charAt(digits))) {
+			digits++;
+		}
+
+		// leading zeros and large numbers are reformatted by the css parser
+		boolean simpleInteger = digits == 1 || digits > 1 && digits <= 6 && s.charAt(0) != '0';
+		return simpleInteger && SIMPLE_STYLE_UNITS.contains(s.substring(digits));
+	}
+
+	static String cleanStyleWithParser(String orig, List<String> allowedRules) {
 		String rule = "";
 		try {
 			List<String> rules = new ArrayList<>();
@@ -138,7 +236,7 @@ public class FeedEntryContentCleaningService {
 					continue;
 				}
 
-				if (ALLOWED_IMG_CSS_RULES.contains(property) && StringUtils.containsNone(value, FORBIDDEN_CSS_RULE_CHARACTERS)) {
+				if (allowedRules.contains(property) && StringUtils.containsNone(value, FORBIDDEN_CSS_RULE_CHARACTERS)) {
 					rules.add(property + ":" + decl.getPropertyValue(property) + ";");
 				}
 			}
@@ -149,26 +247,26 @@ public class FeedEntryContentCleaningService {
 		return rule;
 	}
 
-	private CSSOMParser buildCssParser() {
+	private static CSSOMParser buildCssParser() {
 		CSSOMParser parser = new CSSOMParser();
+		parser.setErrorHandler(CSS_ERROR_HANDLER);
+		return parser;
+	}
 
-		parser.setErrorHandler(new ErrorHandler() {
-			@Override
-			public void warning(CSSParseException exception) throws CSSException {
-				log.debug("warning while parsing css: {}", exception.getMessage(), exception);
-			}
-
-			@Override
-			public void error(CSSParseException exception) throws CSSException {
-				log.debug("error while parsing css: {}", exception.getMessage(), exception);
-			}
+	private static class CssErrorHandler implements ErrorHandler {
+		@Override
+		public void warning(CSSParseException exception) throws CSSException {
+			log.debug("warning while parsing css: {}", exception.getMessage(), exception);
+		}
 
-			@Override
-			public void fatalError(CSSParseException exception) throws CSSException {
-				log.debug("fatal error while parsing css: {}", exception.getMessage(), exception);
-			}
-		});
+		@Override
+		public void error(CSSParseException exception) throws CSSException {
+			log.debug("error while parsing css: {}", exception.getMessage(), exception);
+		}
 
-		return parser;
+		@Override
+		public void fatalError(CSSParseException exception) throws CSSException {
+			log.debug("fatal error while parsing css: {}", exception.getMessage(), exception);
+		}
 	}
 }
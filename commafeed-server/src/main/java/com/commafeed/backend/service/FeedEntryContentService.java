@@ -1,11 +1,21 @@
 package com.commafeed.backend.service;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.commafeed.backend.Digests;
 import com.commafeed.backend.dao.FeedEntryContentDAO;
+import com.commafeed.backend.dao.FeedEntryContentDAO.ContentFingerprint;
 import com.commafeed.backend.feed.FeedUtils;
 import com.commafeed.backend.feed.parser.FeedParserResult.Content;
 import com.commafeed.backend.feed.parser.FeedParserResult.Enclosure;
@@ -14,33 +24,104 @@ import com.commafeed.backend.model.FeedEntryContent;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import lombok.RequiredArgsConstructor;
 
-@RequiredArgsConstructor(onConstructor = @__({ @Inject }))
 @Singleton
 public class FeedEntryContentService {
 
 	private final FeedEntryContentDAO feedEntryContentDAO;
 	private final FeedEntryContentCleaningService cleaningService;
+	private final Timer cleaning;
+
+	@Inject
+	public FeedEntryContentService(FeedEntryContentDAO feedEntryContentDAO, FeedEntryContentCleaningService cleaningService,
+			MetricRegistry metrics) {
+		this.feedEntryContentDAO = feedEntryContentDAO;
+		this.cleaningService = cleaningService;
+		this.cleaning = metrics.timer(MetricRegistry.name(getClass(), "cleaning"));
+	}
 
 	/**
+	 * Returns the existing equivalent content for each of the contents built by {@link #prepare(Content, String)}, or creates it if it
+	 * does not exist yet. Existing contents are looked up with a single query comparing small columns only, large columns are loaded only
+	 * for the remaining candidates.
+	 *
+	 * The prepared contents are not modified and can be used again if the transaction is rolled back.
+	 *
 	 * this is NOT thread-safe
+	 *
+	 * @return the contents, in the same order as the given contents
 	 */
-	public FeedEntryContent findOrCreate(Content content, String baseUrl) {
-		FeedEntryContent entryContent = buildContent(content, baseUrl);
-		Optional<FeedEntryContent> existing = feedEntryContentDAO.findExisting(entryContent.getContentHash(), entryContent.getTitleHash())
+	public List<FeedEntryContent> findOrCreate(List<FeedEntryContent> entryContents) {
+		Map<String, List<ContentFingerprint>> fingerprintsByHashes = feedEntryContentDAO.findFingerprints(entryContents)
 				.stream()
-				.filter(entryContent::equivalentTo)
-				.findFirst();
-		if (existing.isPresent()) {
-			return existing.get();
-		} else {
-			feedEntryContentDAO.saveOrUpdate(entryContent);
-			return entryContent;
+				.collect(Collectors.groupingBy(f -> f.contentHash() + f.titleHash()));
+		Set<Long> candidateIds = entryContents.stream()
+				.flatMap(c -> getFingerprints(fingerprintsByHashes, c).stream().filter(f -> f.matches(c)))
+				.map(ContentFingerprint::id)
+				.collect(Collectors.toSet());
+		Map<Long, FeedEntryContent> candidates = candidateIds.isEmpty() ? Map.of()
+				: feedEntryContentDAO.findByIds(candidateIds).stream().collect(Collectors.toMap(FeedEntryContent::getId, Function.identity()));
+
+		List<FeedEntryContent> results = new ArrayList<>();
+		List<FeedEntryContent> created = new ArrayList<>();
+		for (FeedEntryContent entryContent : entryContents) {
+			FeedEntryContent existing = getFingerprints(fingerprintsByHashes, entryContent).stream()
+					.filter(f -> f.matches(entryContent))
+					.map(f -> candidates.get(f.id()))
+					.filter(entryContent::equivalentTo)
+					.findFirst()
+					// the same content may appear multiple times in the same batch
+					.orElseGet(() -> created.stream().filter(entryContent::equivalentTo).findFirst().orElse(null));
+			if (existing != null) {
+				results.add(existing);
+			} else {
+				FeedEntryContent copy = copy(entryContent);
+				created.add(copy);
+				results.add(copy);
+			}
 		}
+
+		// new contents are inserted together so that hibernate can batch the statements
+		feedEntryContentDAO.saveOrUpdate(created);
+		return results;
+	}
+
+	private static List<ContentFingerprint> getFingerprints(Map<String, List<ContentFingerprint>> fingerprintsByHashes,
+			FeedEntryContent entryContent) {
+		return fingerprintsByHashes.getOrDefault(entryContent.getContentHash() + entryContent.getTitleHash(), List.of());
 	}
 
-	private FeedEntryContent buildContent(Content content, String baseUrl) {
+	/**
+	 * cleans and hashes the content, this does not need a database connection and is thread-safe
+	 */
+	public FeedEntryContent prepare(Content content, String baseUrl) {
+		Timer.Context context = cleaning.time();
+		try {
+			return doBuildContent(content, baseUrl);
+		} finally {
+			context.stop();
+		}
+	}
+
+	private static FeedEntryContent copy(FeedEntryContent c) {
+		FeedEntryContent entryContent = new FeedEntryContent();
+		entryContent.setTitle(c.getTitle());
+		entryContent.setTitleHash(c.getTitleHash());
+		entryContent.setContent(c.getContent());
+		entryContent.setContentHash(c.getContentHash());
+		entryContent.setEquivalenceHash(c.getEquivalenceHash());
+		entryContent.setAuthor(c.getAuthor());
+		entryContent.setCategories(c.getCategories());
+		entryContent.setEnclosureUrl(c.getEnclosureUrl());
+		entryContent.setEnclosureType(c.getEnclosureType());
+		entryContent.setMediaDescription(c.getMediaDescription());
+		entryContent.setMediaThumbnailUrl(c.getMediaThumbnailUrl());
+		entryContent.setMediaThumbnailWidth(c.getMediaThumbnailWidth());
+		entryContent.setMediaThumbnailHeight(c.getMediaThumbnailHeight());
+		return entryContent;
+	}
+
+	private FeedEntryContent doBuildContent(Content content, String baseUrl) {
 		FeedEntryContent entryContent = new FeedEntryContent();
 		entryContent.setTitleHash(Digests.sha1Hex(StringUtils.trimToEmpty(content.title())));
 		entryContent.setContentHash(Digests.sha1Hex(StringUtils.trimToEmpty(content.content())));
@@ -63,7 +144,21 @@ public class FeedEntryContentService {
 			entryContent.setMediaThumbnailHeight(media.thumbnailHeight());
 		}
 
+		entryContent.setEquivalenceHash(buildEquivalenceHash(entryContent));
 		return entryContent;
 	}
 
+	/**
+	 * hashes the values compared by {@link FeedEntryContent#equivalentTo(FeedEntryContent)}, each value is prefixed by its length so that
+	 * null and empty values and values spanning separators are told apart
+	 */
+	private static String buildEquivalenceHash(FeedEntryContent c) {
+		StringBuilder sb = new StringBuilder();
+		Stream.of(c.getTitle(), c.getContent(), c.getAuthor(), c.getCategories(), c.getEnclosureUrl(), c.getEnclosureType(),
+				c.getMediaDescription(), c.getMediaThumbnailUrl(), c.getMediaThumbnailWidth(), c.getMediaThumbnailHeight())
+				.map(v -> v == null ? null : v.toString())
+				.forEach(v -> sb.append(v == null ? -1 : v.length()).append(':').append(Objects.toString(v, "")));
+		return Digests.sha1Hex(sb.toString());
+	}
+
 }
@@ -1,11 +1,12 @@
 package com.commafeed.backend.service;
 
 import java.time.Year;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -24,6 +25,10 @@ import org.apache.commons.logging.LogFactory;
 import org.jsoup.Jsoup;
 
 import com.commafeed.backend.model.FeedEntry;
+import com.commafeed.backend.model.FeedEntryContent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -33,9 +38,19 @@ import lombok.RequiredArgsConstructor;
 @Singleton
 public class FeedEntryFilteringService {
 
+	private static final long MAX_EVALUATION_TIME_MILLIS = 500;
+	private static final int MAX_EVALUATION_THREADS = 32;
+
 	private static final JexlEngine ENGINE = initEngine();
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	// compiled scripts by filter, a lot of subscriptions share the same filter and scripts are immutable once compiled
+	private final Cache<String, Script> scripts = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+	// filters are not evaluated on the calling thread, which may hold database locks: some operations can't be cancelled (e.g. regular
+	// expressions with catastrophic backtracking) and the caller needs to be able to give up on them. The pool is bounded, evaluations
+	// are rejected once all its threads are stuck on such operations.
+	private final ExecutorService executor = new ThreadPoolExecutor(0, MAX_EVALUATION_THREADS, 1, TimeUnit.MINUTES,
+			new SynchronousQueue<>(), new ThreadFactoryBuilder().setNameFormat("feed-entry-filter-%d").setDaemon(true).build());
 
 	private static JexlEngine initEngine() {
 		// classloader that prevents object creation
@@ -71,38 +86,69 @@ public class FeedEntryFilteringService {
 		return engine;
 	}
 
+	/**
+	 * extracts the lowercase text filters are evaluated against. The result can be reused to evaluate several filters against the
+	 * same entry.
+	 */
+	public FilterableEntry toFilterable(FeedEntry entry) {
+		return toFilterable(entry.getContent(), entry.getUrl());
+	}
+
+	/**
+	 * same as {@link #toFilterable(FeedEntry)} for an entry that is not built yet, this does not need a database connection
+	 */
+	public FilterableEntry toFilterable(FeedEntryContent content, String entryUrl) {
+		String title = content.getTitle() == null ? "" : Jsoup.parse(content.getTitle()).text().toLowerCase();
+		String author = content.getAuthor() == null ? "" : content.getAuthor().toLowerCase();
+		String text = content.getContent() == null ? "" : Jsoup.parse(content.getContent()).text().toLowerCase();
+		String url = entryUrl == null ? "" : entryUrl.toLowerCase();
+		String categories = content.getCategories() == null ? "" : content.getCategories().toLowerCase();
+		return new FilterableEntry(title, author, text, url, categories);
+	}
+
 	public boolean filterMatchesEntry(String filter, FeedEntry entry) throws FeedEntryFilterException {
 		if (StringUtils.isBlank(filter)) {
 			return true;
 		}
+		return filterMatchesEntry(filter, toFilterable(entry));
+	}
 
-		Script script;
-		try {
-			script = ENGINE.createScript(filter);
-		} catch (JexlException e) {
-			throw new FeedEntryFilterException("Exception while parsing expression " + filter, e);
+	public boolean filterMatchesEntry(String filter, FilterableEntry entry) throws FeedEntryFilterException {
+		if (StringUtils.isBlank(filter)) {
+			return true;
 		}
 
+		Script script = getScript(filter);
+
+		// a new context for each evaluation, scripts can assign variables
 		JexlContext context = new MapContext();
-		context.set("title", entry.getContent().getTitle() == null ? "" : Jsoup.parse(entry.getContent().getTitle()).text().toLowerCase());
-		context.set("author", entry.getContent().getAuthor() == null ? "" : entry.getContent().getAuthor().toLowerCase());
-		context.set("content",
-				entry.getContent().getContent() == null ? "" : Jsoup.parse(entry.getContent().getContent()).text().toLowerCase());
-		context.set("url", entry.getUrl() == null ? "" : entry.getUrl().toLowerCase());
-		context.set("categories", entry.getContent().getCategories() == null ? "" : entry.getContent().getCategories().toLowerCase());
+		context.set("title", entry.title());
+		context.set("author", entry.author());
+		context.set("content", entry.content());
+		context.set("url", entry.url());
+		context.set("categories", entry.categories());
 
 		context.set("year", Year.now().getValue());
 
-		Callable<Object> callable = script.callable(context);
-		Future<Object> future = executor.submit(callable);
+		Future<Object> future;
+		try {
+			future = executor.submit(script.callable(context));
+		} catch (RejectedExecutionException e) {
+			throw new FeedEntryFilterException("Too many filters being evaluated, could not evaluate expression " + filter, e);
+		}
+
 		Object result;
 		try {
-			result = future.get(500, TimeUnit.MILLISECONDS);
+			result = future.get(MAX_EVALUATION_TIME_MILLIS, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
 			throw new FeedEntryFilterException("interrupted while evaluating expression " + filter, e);
 		} catch (ExecutionException e) {
 			throw new FeedEntryFilterException("Exception while evaluating expression " + filter, e);
 		} catch (TimeoutException e) {
+			// stops loops, the thread stays busy until operations that can't be interrupted complete
+			future.cancel(true);
 			throw new FeedEntryFilterException("Took too long evaluating expression " + filter, e);
 		}
 		try {
@@ -112,6 +158,25 @@ public class FeedEntryFilteringService {
 		}
 	}
 
+	private Script getScript(String filter) throws FeedEntryFilterException {
+		Script script = scripts.getIfPresent(filter);
+		if (script == null) {
+			try {
+				script = ENGINE.createScript(filter);
+			} catch (JexlException e) {
+				throw new FeedEntryFilterException("Exception while parsing expression " + filter, e);
+			}
+			scripts.put(filter, script);
+		}
+		return script;
+	}
+
+	/**
+	 * The lowercase text of an entry, as seen by filters
+	 */
+	public record FilterableEntry(String title, String author, String content, String url, String categories) {
+	}
+
 	@SuppressWarnings("serial")
 	public static class FeedEntryFilterException extends Exception {
 		public FeedEntryFilterException(String message, Throwable t) {
@@ -1,8 +1,16 @@
 package com.commafeed.backend.service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.commafeed.backend.Digests;
 import com.commafeed.backend.cache.CacheService;
 import com.commafeed.backend.dao.FeedEntryDAO;
@@ -13,18 +21,18 @@ import com.commafeed.backend.feed.FeedUtils;
 import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
 import com.commafeed.backend.model.Feed;
 import com.commafeed.backend.model.FeedEntry;
+import com.commafeed.backend.model.FeedEntryContent;
 import com.commafeed.backend.model.FeedEntryStatus;
 import com.commafeed.backend.model.FeedSubscription;
 import com.commafeed.backend.model.User;
 import com.commafeed.backend.service.FeedEntryFilteringService.FeedEntryFilterException;
+import com.commafeed.backend.service.FeedEntryFilteringService.FilterableEntry;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-@RequiredArgsConstructor(onConstructor = @__({ @Inject }))
 @Singleton
 public class FeedEntryService {
 
@@ -34,29 +42,115 @@ public class FeedEntryService {
 	private final FeedEntryContentService feedEntryContentService;
 	private final FeedEntryFilteringService feedEntryFilteringService;
 	private final CacheService cache;
+	private final Timer filterEvaluation;
+
+	@Inject
+	public FeedEntryService(FeedSubscriptionDAO feedSubscriptionDAO, FeedEntryDAO feedEntryDAO, FeedEntryStatusDAO feedEntryStatusDAO,
+			FeedEntryContentService feedEntryContentService, FeedEntryFilteringService feedEntryFilteringService, CacheService cache,
+			MetricRegistry metrics) {
+		this.feedSubscriptionDAO = feedSubscriptionDAO;
+		this.feedEntryDAO = feedEntryDAO;
+		this.feedEntryStatusDAO = feedEntryStatusDAO;
+		this.feedEntryContentService = feedEntryContentService;
+		this.feedEntryFilteringService = feedEntryFilteringService;
+		this.cache = cache;
+		this.filterEvaluation = metrics.timer(MetricRegistry.name(getClass(), "filterEvaluation"));
+	}
+
+	/**
+	 * returns the entries that don't exist yet for this feed, using a single query instead of one query per entry
+	 */
+	public List<Entry> findNewEntries(Feed feed, List<Entry> entries) {
+		if (entries.isEmpty()) {
+			return entries;
+		}
+
+		Set<String> existing = feedEntryDAO.findExistingGuidHashes(entries.stream().map(e -> Digests.sha1Hex(e.guid())).toList(), feed);
+		return entries.stream().filter(e -> !existing.contains(Digests.sha1Hex(e.guid()))).toList();
+	}
 
 	/**
+	 * returns the prepared entries that don't exist yet for this feed, must be called in a transaction
+	 */
+	public List<PreparedEntry> findNewPreparedEntries(Feed feed, List<PreparedEntry> entries) {
+		if (entries.isEmpty()) {
+			return entries;
+		}
+
+		Set<String> existing = feedEntryDAO.findExistingGuidHashes(entries.stream().map(PreparedEntry::guidHash).toList(), feed);
+		return entries.stream().filter(e -> !existing.contains(e.guidHash())).toList();
+	}
+
+	/**
+	 * cleans and hashes the entries and extracts the text filters are evaluated against, so that they can be inserted without further
+	 * processing. This does not need a database connection and runs on the calling thread, feeds are prepared in parallel by the threads
+	 * that parsed them. Entries appearing more than once in the feed are prepared only once.
+	 */
+	public List<PreparedEntry> prepare(Feed feed, List<Entry> entries) {
+		Map<String, Entry> entriesByGuidHash = new LinkedHashMap<>();
+		entries.forEach(e -> entriesByGuidHash.putIfAbsent(Digests.sha1Hex(e.guid()), e));
+
+		return entriesByGuidHash.entrySet().stream().map(e -> prepare(feed, e.getValue(), e.getKey())).toList();
+	}
+
+	private PreparedEntry prepare(Feed feed, Entry entry, String guidHash) {
+		FeedEntryContent content = feedEntryContentService.prepare(entry.content(), feed.getLink());
+		String url = FeedUtils.truncate(entry.url(), 2048);
+		return new PreparedEntry(entry, FeedUtils.truncate(entry.guid(), 2048), guidHash, url, content,
+				feedEntryFilteringService.toFilterable(content, url));
+	}
+
+	/**
+	 * inserts the prepared entries, their contents are shared with existing equivalent contents. Must be called in a transaction.
+	 *
 	 * this is NOT thread-safe
+	 *
+	 * @return the entries, in the same order as the prepared entries
 	 */
-	public FeedEntry findOrCreate(Feed feed, Entry entry) {
-		String guid = FeedUtils.truncate(entry.guid(), 2048);
-		String guidHash = Digests.sha1Hex(entry.guid());
-		FeedEntry existing = feedEntryDAO.findExisting(guidHash, feed);
-		if (existing != null) {
-			return existing;
+	public List<FeedEntry> create(Feed feed, List<PreparedEntry> entries) {
+		List<FeedEntryContent> contents = feedEntryContentService.findOrCreate(entries.stream().map(PreparedEntry::content).toList());
+
+		List<FeedEntry> feedEntries = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i++) {
+			PreparedEntry entry = entries.get(i);
+			feedEntries.add(buildEntry(feed, entry, contents.get(i)));
 		}
+		feedEntryDAO.saveOrUpdate(feedEntries);
+		return feedEntries;
+	}
 
-		FeedEntry feedEntry = buildEntry(feed, entry, guid, guidHash);
-		feedEntryDAO.saveOrUpdate(feedEntry);
-		return feedEntry;
+	/**
+	 * applies the filters of the subscriptions to a new entry, the entry is marked as read for the subscriptions whose filter does not
+	 * match
+	 *
+	 * @param filterable
+	 *            the text of the entry extracted by {@link #prepare(Feed, List)}
+	 * @return the subscriptions for which the entry is unread
+	 */
+	public List<FeedSubscription> applyFilters(List<FeedSubscription> subscriptions, FeedEntry entry, FilterableEntry filterable) {
+		List<FeedSubscription> unread = new ArrayList<>(subscriptions.size());
+		for (FeedSubscription sub : subscriptions) {
+			if (StringUtils.isBlank(sub.getFilter())) {
+				unread.add(sub);
+				continue;
+			}
+
+			if (applyFilter(sub, entry, filterable)) {
+				unread.add(sub);
+			}
+		}
+		return unread;
 	}
 
-	public boolean applyFilter(FeedSubscription sub, FeedEntry entry) {
+	private boolean applyFilter(FeedSubscription sub, FeedEntry entry, FilterableEntry filterable) {
 		boolean matches = true;
+		Timer.Context context = filterEvaluation.time();
 		try {
-			matches = feedEntryFilteringService.filterMatchesEntry(sub.getFilter(), entry);
+			matches = feedEntryFilteringService.filterMatchesEntry(sub.getFilter(), filterable);
 		} catch (FeedEntryFilterException e) {
 			log.error("could not evaluate filter {}", sub.getFilter(), e);
+		} finally {
+			context.stop();
 		}
 
 		if (!matches) {
@@ -68,16 +162,16 @@ public class FeedEntryService {
 		return matches;
 	}
 
-	private FeedEntry buildEntry(Feed feed, Entry e, String guid, String guidHash) {
+	private FeedEntry buildEntry(Feed feed, PreparedEntry e, FeedEntryContent content) {
 		FeedEntry entry = new FeedEntry();
-		entry.setGuid(guid);
-		entry.setGuidHash(guidHash);
-		entry.setUrl(FeedUtils.truncate(e.url(), 2048));
-		entry.setUpdated(e.updated());
+		entry.setGuid(e.guid());
+		entry.setGuidHash(e.guidHash());
+		entry.setUrl(e.url());
+		entry.setUpdated(e.entry().updated());
 		entry.setInserted(Instant.now());
 		entry.setFeed(feed);
 
-		entry.setContent(feedEntryContentService.findOrCreate(e.content(), feed.getLink()));
+		entry.setContent(content);
 		return entry;
 	}
 
@@ -144,4 +238,12 @@ public class FeedEntryService {
 		statusesToMark.forEach(s -> s.setRead(true));
 		feedEntryStatusDAO.saveOrUpdate(statusesToMark);
 	}
+
+	/**
+	 * an entry ready to be inserted, its content is cleaned and hashed but not yet persisted
+	 */
+	public record PreparedEntry(Entry entry, String guid, String guidHash, String url, FeedEntryContent content,
+			FilterableEntry filterable) {
+	}
+
 }
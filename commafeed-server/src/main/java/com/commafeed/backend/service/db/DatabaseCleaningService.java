@@ -12,6 +12,7 @@ import com.commafeed.backend.dao.FeedEntryDAO;
 import com.commafeed.backend.dao.FeedEntryDAO.FeedCapacity;
 import com.commafeed.backend.dao.FeedEntryStatusDAO;
 import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.feed.FeedRefreshScheduler;
 import com.commafeed.backend.model.Feed;
 
 import jakarta.inject.Inject;
@@ -33,16 +34,19 @@ public class DatabaseCleaningService {
 	private final FeedEntryDAO feedEntryDAO;
 	private final FeedEntryContentDAO feedEntryContentDAO;
 	private final FeedEntryStatusDAO feedEntryStatusDAO;
+	private final FeedRefreshScheduler feedRefreshScheduler;
 	private final Meter entriesDeletedMeter;
 
 	@Inject
 	public DatabaseCleaningService(CommaFeedConfiguration config, UnitOfWork unitOfWork, FeedDAO feedDAO, FeedEntryDAO feedEntryDAO,
-			FeedEntryContentDAO feedEntryContentDAO, FeedEntryStatusDAO feedEntryStatusDAO, MetricRegistry metrics) {
+			FeedEntryContentDAO feedEntryContentDAO, FeedEntryStatusDAO feedEntryStatusDAO, FeedRefreshScheduler feedRefreshScheduler,
+			MetricRegistry metrics) {
 		this.unitOfWork = unitOfWork;
 		this.feedDAO = feedDAO;
 		this.feedEntryDAO = feedEntryDAO;
 		this.feedEntryContentDAO = feedEntryContentDAO;
 		this.feedEntryStatusDAO = feedEntryStatusDAO;
+		this.feedRefreshScheduler = feedRefreshScheduler;
 		this.batchSize = config.getApplicationSettings().getDatabaseCleanupBatchSize();
 		this.entriesDeletedMeter = metrics.meter(MetricRegistry.name(getClass(), "entriesDeleted"));
 	}
@@ -64,6 +68,7 @@ public class DatabaseCleaningService {
 				} while (entriesDeleted > 0);
 			}
 			deleted = unitOfWork.call(() -> feedDAO.delete(feeds));
+			feeds.forEach(feed -> feedRefreshScheduler.unschedule(feed.getId()));
 			total += deleted;
 			log.info("removed {} feeds without subscriptions", total);
 		} while (deleted != 0);
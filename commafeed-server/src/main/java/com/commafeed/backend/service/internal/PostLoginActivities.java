@@ -7,6 +7,7 @@ import com.commafeed.CommaFeedConfiguration;
 import com.commafeed.backend.dao.UnitOfWork;
 import com.commafeed.backend.dao.UserDAO;
 import com.commafeed.backend.model.User;
+import com.commafeed.backend.service.ActiveUserService;
 import com.commafeed.backend.service.FeedSubscriptionService;
 
 import jakarta.inject.Inject;
@@ -20,9 +21,13 @@ public class PostLoginActivities {
 	private final UserDAO userDAO;
 	private final FeedSubscriptionService feedSubscriptionService;
 	private final UnitOfWork unitOfWork;
+	private final ActiveUserService activeUserService;
 	private final CommaFeedConfiguration config;
 
 	public void executeFor(User user) {
+		// the feeds of active users are refreshed first
+		activeUserService.markActive(user.getId());
+
 		// only update lastLogin every once in a while in order to avoid invalidating the cache every time someone logs in
 		Instant now = Instant.now();
 		Instant lastLogin = user.getLastLogin();
@@ -3,6 +3,8 @@ package com.commafeed.backend.task;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import com.commafeed.backend.service.ClusterService;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -15,8 +17,13 @@ public abstract class ScheduledTask {
 
 	protected abstract TimeUnit getTimeUnit();
 
-	public void register(ScheduledExecutorService executor) {
+	public void register(ScheduledExecutorService executor, ClusterService clusterService) {
 		Runnable runnable = () -> {
+			if (!clusterService.isLeader()) {
+				// another node of the cluster runs the task
+				return;
+			}
+
 			try {
 				ScheduledTask.this.run();
 			} catch (Exception e) {
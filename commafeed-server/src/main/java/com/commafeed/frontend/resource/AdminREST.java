@@ -14,6 +14,9 @@ import com.commafeed.CommaFeedConfiguration;
 import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
 import com.commafeed.backend.dao.UserDAO;
 import com.commafeed.backend.dao.UserRoleDAO;
+import com.commafeed.backend.feed.FeedHostLimiter.BusyHost;
+import com.commafeed.backend.feed.FeedRefreshEngine;
+import com.commafeed.backend.feed.SlowestFeeds.SlowFeed;
 import com.commafeed.backend.model.User;
 import com.commafeed.backend.model.UserRole;
 import com.commafeed.backend.model.UserRole.Role;
@@ -61,6 +64,7 @@ public class AdminREST {
 	private final PasswordEncryptionService encryptionService;
 	private final CommaFeedConfiguration config;
 	private final MetricRegistry metrics;
+	private final FeedRefreshEngine feedRefreshEngine;
 
 	@Path("/user/save")
 	@POST
@@ -246,4 +250,29 @@ public class AdminREST {
 		return Response.ok(metrics).build();
 	}
 
+	@Path("/metrics/slowestFeeds")
+	@GET
+	@UnitOfWork
+	@Operation(
+			summary = "Retrieve the feeds that took the longest to refresh",
+			description = "Retrieve the feeds that took the longest to refresh, using the duration of their last refresh, slowest first",
+			responses = { @ApiResponse(content = @Content(array = @ArraySchema(schema = @Schema(implementation = SlowFeed.class)))) })
+	@Timed
+	public Response getSlowestFeeds(@Parameter(hidden = true) @SecurityCheck(Role.ADMIN) User user) {
+		return Response.ok(feedRefreshEngine.getSlowestFeeds()).build();
+	}
+
+	@Path("/metrics/busiestHosts")
+	@GET
+	@UnitOfWork
+	@Operation(
+			summary = "Retrieve the hosts whose feeds wait the longest",
+			description = "Retrieve the hosts whose feeds have been waiting the longest for the host to be available, "
+					+ "using the wait of the oldest waiting feed of each host, longest wait first",
+			responses = { @ApiResponse(content = @Content(array = @ArraySchema(schema = @Schema(implementation = BusyHost.class)))) })
+	@Timed
+	public Response getBusiestHosts(@Parameter(hidden = true) @SecurityCheck(Role.ADMIN) User user) {
+		return Response.ok(feedRefreshEngine.getBusiestHosts()).build();
+	}
+
 }
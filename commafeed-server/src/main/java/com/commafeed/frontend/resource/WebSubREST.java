@@ -0,0 +1,75 @@
+package com.commafeed.frontend.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.codahale.metrics.annotation.Timed;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.backend.feed.WebSubService;
+
+import io.swagger.v3.oas.annotations.Hidden;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * WebSub subscriber callbacks, called by the hubs
+ *
+ * See https://www.w3.org/TR/websub/
+ */
+@Path("/push")
+@RequiredArgsConstructor(onConstructor = @__({ @Inject }))
+@Singleton
+@Hidden
+public class WebSubREST {
+
+	private final WebSubService webSubService;
+	private final CommaFeedConfiguration config;
+
+	@Path("/callback/{topicHash}")
+	@GET
+	@Produces(MediaType.TEXT_PLAIN)
+	@Timed
+	public Response verify(@PathParam("topicHash") String topicHash, @QueryParam("hub.mode") String mode,
+			@QueryParam("hub.topic") String topic, @QueryParam("hub.challenge") String challenge,
+			@QueryParam("hub.lease_seconds") Long leaseSeconds) {
+		String response = webSubService.onVerification(topicHash, mode, topic, challenge, leaseSeconds);
+		if (response == null) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+		return Response.ok(response).build();
+	}
+
+	@Path("/callback/{topicHash}")
+	@POST
+	@Consumes(MediaType.WILDCARD)
+	@Timed
+	public Response receive(@PathParam("topicHash") String topicHash, @HeaderParam("X-Hub-Signature") String signature,
+			InputStream input) throws IOException {
+		// pushed content is not bigger than the feed itself, don't read more than we would when fetching the feed
+		long maxSize = config.getApplicationSettings().getMaxResponseSize().toBytes();
+		byte[] content = input.readNBytes((int) Math.min(maxSize + 1, Integer.MAX_VALUE - 8));
+		if (content.length > maxSize) {
+			return Response.status(Status.REQUEST_ENTITY_TOO_LARGE).build();
+		}
+
+		if (!webSubService.onContentDistribution(topicHash, content, signature)) {
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+		}
+
+		// acknowledge the content even if the signature was invalid, the hub must not be able to tell whether the signature was valid
+		return Response.noContent().build();
+	}
+
+}
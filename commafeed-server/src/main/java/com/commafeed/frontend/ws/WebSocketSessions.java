@@ -3,6 +3,7 @@ package com.commafeed.frontend.ws;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
@@ -36,6 +37,18 @@ public class WebSocketSessions {
 		sessions.values().forEach(v -> v.remove(session));
 	}
 
+	public boolean isConnected(Long userId) {
+		Set<Session> userSessions = sessions.get(userId);
+		return userSessions != null && userSessions.stream().anyMatch(Session::isOpen);
+	}
+
+	/**
+	 * the users with at least one open session
+	 */
+	public Set<Long> getConnectedUserIds() {
+		return sessions.keySet().stream().filter(this::isConnected).collect(Collectors.toSet());
+	}
+
 	public void sendMessage(User user, String text) {
 		Set<Session> userSessions = sessions.get(user.getId());
 		if (userSessions != null && !userSessions.isEmpty()) {
@@ -2,7 +2,10 @@ package com.commafeed.backend;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.IOUtils;
@@ -16,18 +19,23 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockserver.client.MockServerClient;
 import org.mockserver.junit.jupiter.MockServerExtension;
+import org.mockserver.model.ConnectionOptions;
 import org.mockserver.model.Delay;
 import org.mockserver.model.HttpRequest;
 import org.mockserver.model.HttpResponse;
 import org.mockserver.model.MediaType;
 
+import com.codahale.metrics.MetricRegistry;
 import com.commafeed.CommaFeedConfiguration;
 import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
 import com.commafeed.backend.HttpGetter.HttpResponseException;
 import com.commafeed.backend.HttpGetter.HttpResult;
 import com.commafeed.backend.HttpGetter.NotModifiedException;
+import com.commafeed.backend.HttpGetter.ResponseTooLargeException;
 import com.google.common.net.HttpHeaders;
 
+import io.dropwizard.util.DataSize;
+
 @ExtendWith(MockServerExtension.class)
 class HttpGetterTest {
 
@@ -48,11 +56,13 @@ class HttpGetterTest {
 		ApplicationSettings settings = new ApplicationSettings();
 		settings.setUserAgent("http-getter-test");
 		settings.setBackgroundThreads(3);
+		settings.setMaxResponseSize(DataSize.kibibytes(512));
+		settings.setAsyncFetch(true);
 
 		CommaFeedConfiguration config = new CommaFeedConfiguration();
 		config.setApplicationSettings(settings);
 
-		this.getter = new HttpGetter(config);
+		this.getter = new HttpGetter(config, new MetricRegistry());
 	}
 
 	@ParameterizedTest
@@ -64,6 +74,62 @@ class HttpGetterTest {
 
 		HttpResponseException e = Assertions.assertThrows(HttpResponseException.class, () -> getter.getBinary(this.feedUrl, TIMEOUT));
 		Assertions.assertEquals(code, e.getCode());
+		Assertions.assertNull(e.getRetryAfter());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { HttpStatus.TOO_MANY_REQUESTS_429, HttpStatus.SERVICE_UNAVAILABLE_503 })
+	void retryAfter(int code) {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response().withStatusCode(code).withHeader(HttpHeaders.RETRY_AFTER, "120"));
+
+		HttpResponseException e = Assertions.assertThrows(HttpResponseException.class, () -> getter.getBinary(this.feedUrl, TIMEOUT));
+		Assertions.assertEquals(code, e.getCode());
+		Assertions.assertEquals(Duration.ofSeconds(120), e.getRetryAfter());
+	}
+
+	@Test
+	void retryAfterDate() {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withStatusCode(HttpStatus.SERVICE_UNAVAILABLE_503)
+						.withHeader(HttpHeaders.DATE, "Wed, 21 Oct 2015 07:28:00 GMT")
+						.withHeader(HttpHeaders.RETRY_AFTER, "Wed, 21 Oct 2015 08:28:00 GMT"));
+
+		HttpResponseException e = Assertions.assertThrows(HttpResponseException.class, () -> getter.getBinary(this.feedUrl, TIMEOUT));
+		Assertions.assertEquals(Duration.ofHours(1), e.getRetryAfter());
+	}
+
+	@Test
+	void cacheControlMaxAge() throws Exception {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withBody(feedContent)
+						.withHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=600")
+						.withHeader(HttpHeaders.EXPIRES, "Wed, 21 Oct 2015 07:28:00 GMT"));
+
+		HttpResult result = getter.getBinary(this.feedUrl, TIMEOUT);
+		Assertions.assertEquals(Duration.ofMinutes(10), result.getValidFor());
+	}
+
+	@Test
+	void expires() throws Exception {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withBody(feedContent)
+						.withHeader(HttpHeaders.DATE, "Wed, 21 Oct 2015 07:28:00 GMT")
+						.withHeader(HttpHeaders.EXPIRES, "Wed, 21 Oct 2015 07:58:00 GMT"));
+
+		HttpResult result = getter.getBinary(this.feedUrl, TIMEOUT);
+		Assertions.assertEquals(Duration.ofMinutes(30), result.getValidFor());
+	}
+
+	@Test
+	void noCacheHeaders() throws Exception {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET")).respond(HttpResponse.response().withBody(feedContent));
+
+		HttpResult result = getter.getBinary(this.feedUrl, TIMEOUT);
+		Assertions.assertNull(result.getValidFor());
 	}
 
 	@Test
@@ -109,6 +175,97 @@ class HttpGetterTest {
 		Assertions.assertEquals("http://localhost:" + this.mockServerClient.getPort() + "/redirected-2", result.getUrlAfterRedirect());
 	}
 
+	@Test
+	void largeResponse() throws Exception {
+		// larger than the initial buffer, smaller than the maximum size
+		byte[] content = new byte[300 * 1024];
+		Arrays.fill(content, (byte) 'a');
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET")).respond(HttpResponse.response().withBody(content));
+
+		Assertions.assertArrayEquals(content, getter.getBinary(this.feedUrl, TIMEOUT).getContent());
+
+		// the buffer of the thread is reused for the next response
+		this.mockServerClient.reset();
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET")).respond(HttpResponse.response().withBody(feedContent));
+		Assertions.assertArrayEquals(feedContent, getter.getBinary(this.feedUrl, TIMEOUT).getContent());
+	}
+
+	@Test
+	void responseTooLarge() {
+		byte[] content = new byte[600 * 1024];
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET")).respond(HttpResponse.response().withBody(content));
+
+		ResponseTooLargeException e = Assertions.assertThrows(ResponseTooLargeException.class,
+				() -> getter.getBinary(this.feedUrl, TIMEOUT));
+		Assertions.assertEquals(content.length, e.getSize());
+	}
+
+	@Test
+	void responseTooLargeWithoutContentLength() {
+		byte[] content = new byte[600 * 1024];
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withBody(content)
+						.withConnectionOptions(ConnectionOptions.connectionOptions().withSuppressContentLengthHeader(true)));
+
+		ResponseTooLargeException e = Assertions.assertThrows(ResponseTooLargeException.class,
+				() -> getter.getBinary(this.feedUrl, TIMEOUT));
+		Assertions.assertTrue(e.getSize() > 512 * 1024);
+	}
+
+	@Test
+	void validFeedAsync() throws Exception {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withBody(feedContent)
+						.withContentType(MediaType.APPLICATION_ATOM_XML)
+						.withHeader(HttpHeaders.LAST_MODIFIED, "123456")
+						.withHeader(HttpHeaders.ETAG, "78910"));
+
+		HttpResult result = getter.getBinaryAsync(this.feedUrl, null, null, TIMEOUT).get();
+		Assertions.assertArrayEquals(feedContent, result.getContent());
+		Assertions.assertEquals(MediaType.APPLICATION_ATOM_XML.toString(), result.getContentType());
+		Assertions.assertEquals("123456", result.getLastModifiedSince());
+		Assertions.assertEquals("78910", result.getETag());
+		Assertions.assertEquals(this.feedUrl, result.getUrlAfterRedirect());
+	}
+
+	@Test
+	void followRedirectsAsync() throws Exception {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET").withPath("/"))
+				.respond(HttpResponse.response()
+						.withStatusCode(HttpStatus.MOVED_PERMANENTLY_301)
+						.withHeader(HttpHeaders.LOCATION, "http://localhost:" + this.mockServerClient.getPort() + "/redirected"));
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET").withPath("/redirected"))
+				.respond(HttpResponse.response().withBody(feedContent));
+
+		HttpResult result = getter.getBinaryAsync(this.feedUrl, null, null, TIMEOUT).get();
+		Assertions.assertEquals("http://localhost:" + this.mockServerClient.getPort() + "/redirected", result.getUrlAfterRedirect());
+	}
+
+	@Test
+	void eTagReturns304Async() {
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET").withHeader(HttpHeaders.IF_NONE_MATCH, "78910"))
+				.respond(HttpResponse.response().withStatusCode(HttpStatus.NOT_MODIFIED_304));
+
+		ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+				() -> getter.getBinaryAsync(this.feedUrl, null, "78910", TIMEOUT).get());
+		Assertions.assertInstanceOf(NotModifiedException.class, e.getCause());
+	}
+
+	@Test
+	void responseTooLargeAsync() {
+		byte[] content = new byte[600 * 1024];
+		this.mockServerClient.when(HttpRequest.request().withMethod("GET"))
+				.respond(HttpResponse.response()
+						.withBody(content)
+						.withConnectionOptions(ConnectionOptions.connectionOptions().withSuppressContentLengthHeader(true)));
+
+		ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+				() -> getter.getBinaryAsync(this.feedUrl, null, null, TIMEOUT).get());
+		Assertions.assertInstanceOf(ResponseTooLargeException.class, e.getCause());
+	}
+
 	@Test
 	void dataTimeout() {
 		int smallTimeout = 500;
@@ -0,0 +1,67 @@
+package com.commafeed.backend.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.commafeed.backend.model.ClusterLease;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class ClusterLeaseDAOTest {
+
+	private static final String NODE = "node-1";
+	private static final String OTHER_NODE = "node-2";
+
+	private final DAOTestExtension database = DAOTestExtension.newBuilder().addEntityClass(ClusterLease.class).build();
+
+	private ClusterLeaseDAO clusterLeaseDAO;
+
+	@BeforeEach
+	void init() {
+		clusterLeaseDAO = new ClusterLeaseDAO(database.getSessionFactory());
+
+		ClusterLease lease = new ClusterLease();
+		lease.setName(ClusterLease.SCHEDULED_TASKS);
+		database.inTransaction(() -> clusterLeaseDAO.saveOrUpdate(lease));
+	}
+
+	@Test
+	void onlyOneNodeHoldsTheLease() {
+		Assertions.assertTrue(tryAcquire(NODE, Instant.now().plus(Duration.ofMinutes(5))));
+		Assertions.assertFalse(tryAcquire(OTHER_NODE, Instant.now().plus(Duration.ofMinutes(5))));
+
+		// the owner renews its lease
+		Assertions.assertTrue(tryAcquire(NODE, Instant.now().plus(Duration.ofMinutes(5))));
+	}
+
+	@Test
+	void expiredLeaseCanBeTakenOver() {
+		Assertions.assertTrue(tryAcquire(NODE, Instant.now().minus(Duration.ofSeconds(1))));
+		Assertions.assertTrue(tryAcquire(OTHER_NODE, Instant.now().plus(Duration.ofMinutes(5))));
+		Assertions.assertFalse(tryAcquire(NODE, Instant.now().plus(Duration.ofMinutes(5))));
+	}
+
+	@Test
+	void releasedLeaseCanBeTakenOver() {
+		Assertions.assertTrue(tryAcquire(NODE, Instant.now().plus(Duration.ofMinutes(5))));
+
+		// only the owner can release the lease
+		database.inTransaction(() -> clusterLeaseDAO.release(ClusterLease.SCHEDULED_TASKS, OTHER_NODE));
+		Assertions.assertFalse(tryAcquire(OTHER_NODE, Instant.now().plus(Duration.ofMinutes(5))));
+
+		database.inTransaction(() -> clusterLeaseDAO.release(ClusterLease.SCHEDULED_TASKS, NODE));
+		Assertions.assertTrue(tryAcquire(OTHER_NODE, Instant.now().plus(Duration.ofMinutes(5))));
+	}
+
+	private boolean tryAcquire(String owner, Instant expiration) {
+		return database.inTransaction(() -> clusterLeaseDAO.tryAcquire(ClusterLease.SCHEDULED_TASKS, owner, expiration));
+	}
+
+}
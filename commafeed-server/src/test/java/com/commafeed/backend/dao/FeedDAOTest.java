@@ -0,0 +1,183 @@
+package com.commafeed.backend.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.commafeed.backend.dao.FeedDAO.FeedFilter;
+import com.commafeed.backend.model.AbstractModel;
+import com.commafeed.backend.model.Feed;
+import com.commafeed.backend.model.FeedCategory;
+import com.commafeed.backend.model.FeedEntry;
+import com.commafeed.backend.model.FeedEntryContent;
+import com.commafeed.backend.model.FeedEntryStatus;
+import com.commafeed.backend.model.FeedEntryTag;
+import com.commafeed.backend.model.FeedSubscription;
+import com.commafeed.backend.model.User;
+import com.commafeed.backend.model.UserRole;
+import com.commafeed.backend.model.UserSettings;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class FeedDAOTest {
+
+	private static final String NODE = "node-1";
+	private static final String OTHER_NODE = "node-2";
+
+	private final DAOTestExtension database = DAOTestExtension.newBuilder()
+			.addEntityClass(Feed.class)
+			.addEntityClass(FeedCategory.class)
+			.addEntityClass(FeedEntry.class)
+			.addEntityClass(FeedEntryContent.class)
+			.addEntityClass(FeedEntryStatus.class)
+			.addEntityClass(FeedEntryTag.class)
+			.addEntityClass(FeedSubscription.class)
+			.addEntityClass(User.class)
+			.addEntityClass(UserRole.class)
+			.addEntityClass(UserSettings.class)
+			.build();
+
+	private FeedDAO feedDAO;
+
+	@BeforeEach
+	void init() {
+		feedDAO = new FeedDAO(database.getSessionFactory());
+	}
+
+	@Test
+	void claimsDueFeeds() {
+		Feed due = insert("due", Instant.now().minus(Duration.ofMinutes(1)));
+		Feed notDue = insert("not-due", Instant.now().plus(Duration.ofMinutes(5)));
+
+		List<Feed> claimed = claim(NODE);
+		Assertions.assertEquals(List.of(due.getId()), ids(claimed));
+		Assertions.assertEquals(NODE, claimed.get(0).getLeaseOwner());
+
+		// the claimed feed is not due anymore, nothing left to claim
+		Assertions.assertEquals(List.of(), claim(OTHER_NODE));
+		Assertions.assertNull(reload(notDue).getLeaseOwner());
+	}
+
+	@Test
+	void doesNotClaimFeedsLeasedByAnotherNode() {
+		Feed feed = insert("leased", Instant.now().minus(Duration.ofMinutes(1)));
+		lease(feed, OTHER_NODE, Instant.now().plus(Duration.ofMinutes(5)));
+
+		Assertions.assertEquals(List.of(), claim(NODE));
+		Assertions.assertEquals(OTHER_NODE, reload(feed).getLeaseOwner());
+	}
+
+	@Test
+	void claimsFeedsWhoseLeaseExpired() {
+		Feed feed = insert("expired", Instant.now().minus(Duration.ofMinutes(1)));
+		lease(feed, OTHER_NODE, Instant.now().minus(Duration.ofSeconds(1)));
+
+		Assertions.assertEquals(List.of(feed.getId()), ids(claim(NODE)));
+		Assertions.assertEquals(NODE, reload(feed).getLeaseOwner());
+	}
+
+	@Test
+	void renewsOnlyOwnLeases() {
+		Feed own = insert("own", null);
+		Feed other = insert("other", null);
+		Instant expiration = Instant.now().plus(Duration.ofMinutes(1));
+		lease(own, NODE, expiration);
+		lease(other, OTHER_NODE, expiration);
+
+		Instant renewed = expiration.plus(Duration.ofMinutes(5));
+		long count = inNewSession(() -> feedDAO.renewLeases(ids(List.of(own, other)), NODE, renewed));
+
+		Assertions.assertEquals(1, count);
+		Assertions.assertEquals(renewed.toEpochMilli(), reload(own).getLeaseExpiration().toEpochMilli());
+		Assertions.assertEquals(expiration.toEpochMilli(), reload(other).getLeaseExpiration().toEpochMilli());
+	}
+
+	@Test
+	void filtersFeedsBySubscribers() {
+		Instant due = Instant.now().minus(Duration.ofMinutes(1));
+		Feed lonely = insert("lonely", due.minus(Duration.ofMinutes(1)));
+		Feed popular = insert("popular", due);
+		User user1 = insertUser("user1");
+		User user2 = insertUser("user2");
+		subscribe(user1, lonely);
+		subscribe(user1, popular);
+		subscribe(user2, popular);
+
+		Assertions.assertEquals(List.of(lonely.getId(), popular.getId()), ids(findNextUpdatable(FeedFilter.NONE)));
+		Assertions.assertEquals(List.of(popular.getId()), ids(findNextUpdatable(new FeedFilter(null, 2))));
+		Assertions.assertEquals(List.of(popular.getId()), ids(findNextUpdatable(new FeedFilter(List.of(user2.getId()), null))));
+		Assertions.assertEquals(List.of(), ids(findNextUpdatable(new FeedFilter(List.of(user2.getId()), 3))));
+	}
+
+	private List<Feed> findNextUpdatable(FeedFilter filter) {
+		return inNewSession(() -> feedDAO.findNextUpdatable(10, null, filter));
+	}
+
+	private List<Feed> claim(String owner) {
+		Instant leaseExpiration = Instant.now().plus(Duration.ofMinutes(5));
+		Instant nextUpdateDate = Instant.now().plus(Duration.ofMinutes(10));
+		return inNewSession(() -> feedDAO.claimNextUpdatable(10, null, FeedFilter.NONE, owner, leaseExpiration, nextUpdateDate));
+	}
+
+	private Feed insert(String name, Instant disabledUntil) {
+		Feed feed = new Feed();
+		feed.setUrl("https://host.com/" + name);
+		feed.setUrlAfterRedirect(feed.getUrl());
+		feed.setNormalizedUrl(feed.getUrl());
+		feed.setNormalizedUrlHash(name);
+		feed.setDisabledUntil(disabledUntil);
+		database.inTransaction(() -> feedDAO.saveOrUpdate(feed));
+		return feed;
+	}
+
+	private User insertUser(String name) {
+		User user = new User();
+		user.setName(name);
+		user.setPassword(new byte[] { 1 });
+		user.setSalt(new byte[] { 1 });
+		database.inTransaction(() -> database.getSessionFactory().getCurrentSession().persist(user));
+		return user;
+	}
+
+	private void subscribe(User user, Feed feed) {
+		FeedSubscription sub = new FeedSubscription();
+		sub.setUser(user);
+		sub.setFeed(feed);
+		sub.setTitle(feed.getUrl());
+		database.inTransaction(() -> database.getSessionFactory().getCurrentSession().persist(sub));
+	}
+
+	private void lease(Feed feed, String owner, Instant expiration) {
+		database.inTransaction(() -> {
+			Feed f = feedDAO.findById(feed.getId());
+			f.setLeaseOwner(owner);
+			f.setLeaseExpiration(expiration);
+		});
+	}
+
+	private Feed reload(Feed feed) {
+		return inNewSession(() -> feedDAO.findById(feed.getId()));
+	}
+
+	/**
+	 * the extension uses the same session for the whole test while the application uses a new session for each unit of work, clear the
+	 * session so that entities are loaded from the database
+	 */
+	private <T> T inNewSession(Callable<T> call) {
+		database.getSessionFactory().getCurrentSession().clear();
+		return database.inTransaction(call);
+	}
+
+	private static List<Long> ids(List<Feed> feeds) {
+		return feeds.stream().map(AbstractModel::getId).toList();
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.commafeed.backend.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimitTest {
+
+	private final List<Integer> changes = new ArrayList<>();
+
+	@Test
+	void increasesWhenSaturated() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2, 1, 3, changes::add);
+
+		window(limit, 100, 2);
+		Assertions.assertEquals(3, limit.getLimit());
+
+		// ceiling
+		window(limit, 100, 3);
+		Assertions.assertEquals(3, limit.getLimit());
+		Assertions.assertEquals(List.of(3), changes);
+	}
+
+	@Test
+	void doesNotIncreaseWhenNotSaturated() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2, 1, 3, changes::add);
+
+		window(limit, 100, 1);
+		Assertions.assertEquals(2, limit.getLimit());
+		Assertions.assertTrue(changes.isEmpty());
+	}
+
+	@Test
+	void decreasesWhenLatencyIncreases() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 8, 2, 10, changes::add);
+
+		window(limit, 100, 1);
+		window(limit, 1000, 1);
+		Assertions.assertEquals(6, limit.getLimit());
+
+		// floor
+		window(limit, 10000, 1);
+		window(limit, 100000, 1);
+		window(limit, 1000000, 1);
+		Assertions.assertEquals(2, limit.getLimit());
+	}
+
+	private void window(AdaptiveConcurrencyLimit limit, long latency, int inFlight) {
+		for (int i = 0; i < 10; i++) {
+			limit.onSample(latency, inFlight);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.commafeed.backend.VirtualThreadExecutors;
+
+class BoundedExecutorTest {
+
+	private BoundedExecutor executor;
+
+	@AfterEach
+	void cleanup() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void runsTasks(boolean virtualThreads) throws Exception {
+		assumeSupported(virtualThreads);
+		executor = new BoundedExecutor("test", 2, virtualThreads);
+
+		Assertions.assertEquals("result", executor.supplyAsync(() -> "result").get(5, TimeUnit.SECONDS));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void blocksSubmissionsWhenLimitIsReached(boolean virtualThreads) throws Exception {
+		assumeSupported(virtualThreads);
+		executor = new BoundedExecutor("test", 1, virtualThreads);
+
+		CountDownLatch latch = new CountDownLatch(1);
+		CompletableFuture<Void> first = executor.runAsync(() -> await(latch));
+		Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> executor.getActiveCount() == 1);
+
+		// the second submission waits for the first task to complete
+		CompletableFuture<CompletableFuture<String>> second = CompletableFuture.supplyAsync(() -> executor.supplyAsync(() -> "second"));
+		Thread.sleep(200);
+		Assertions.assertFalse(second.isDone());
+
+		latch.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals("second", second.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void limitCanBeChanged(boolean virtualThreads) throws Exception {
+		assumeSupported(virtualThreads);
+		executor = new BoundedExecutor("test", 1, virtualThreads);
+
+		executor.setLimit(2);
+		Assertions.assertEquals(2, executor.getLimit());
+
+		CountDownLatch latch = new CountDownLatch(1);
+		CompletableFuture<Void> first = executor.runAsync(() -> await(latch));
+		CompletableFuture<Void> second = executor.runAsync(() -> await(latch));
+		Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> executor.getActiveCount() == 2);
+
+		latch.countDown();
+		CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+
+		executor.setLimit(1);
+		Assertions.assertEquals(1, executor.getLimit());
+	}
+
+	private static void assumeSupported(boolean virtualThreads) {
+		Assumptions.assumeTrue(!virtualThreads || VirtualThreadExecutors.isSupported(), "virtual threads are not supported by this jvm");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
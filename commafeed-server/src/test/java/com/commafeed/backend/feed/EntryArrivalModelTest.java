@@ -0,0 +1,120 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EntryArrivalModelTest {
+
+	private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+	@Test
+	void learnsAverageInterval() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		Assertions.assertEquals(4, observe(model, entries(4, Duration.ofHours(1))));
+
+		Assertions.assertEquals(3, model.getSamples());
+		Assertions.assertEquals(Duration.ofHours(1).toMillis(), model.getAverageInterval(), 1);
+		Assertions.assertTrue(model.isReliable());
+	}
+
+	@Test
+	void onlyObservesNewEntries() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		List<Instant> entries = entries(4, Duration.ofHours(1));
+		observe(model, entries);
+
+		Instant lastEntryDate = entries.get(entries.size() - 1);
+		Assertions.assertEquals(0, model.observe(entries, lastEntryDate, lastEntryDate));
+		Assertions.assertEquals(3, model.getSamples());
+	}
+
+	@Test
+	void fetchesWithoutNewEntriesSlowDownTheModel() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		List<Instant> entries = entries(10, Duration.ofHours(1));
+		observe(model, entries);
+
+		Instant lastEntryDate = entries.get(entries.size() - 1);
+		Assertions.assertEquals(0, model.observe(List.of(), lastEntryDate, lastEntryDate.plus(Duration.ofHours(9))));
+		Assertions.assertEquals(Duration.ofHours(2).toMillis(), model.getAverageInterval(), Duration.ofMinutes(1).toMillis());
+	}
+
+	@Test
+	void notReliableWithTooFewSamples() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		observe(model, entries(2, Duration.ofHours(1)));
+
+		Assertions.assertFalse(model.isReliable());
+		Instant now = Instant.now();
+		Assertions.assertEquals(now.plus(Duration.ofHours(24)), model.getNextCheck(now, 0.5, Duration.ofMinutes(5), Duration.ofHours(24)));
+	}
+
+	@Test
+	void nextCheckFollowsInterval() {
+		EntryArrivalModel hourly = new EntryArrivalModel();
+		observe(hourly, entries(200, Duration.ofHours(1)));
+		EntryArrivalModel daily = new EntryArrivalModel();
+		observe(daily, entries(20, Duration.ofDays(1)));
+
+		Instant now = START.plus(Duration.ofDays(30));
+		Duration min = Duration.ofMinutes(5);
+		Duration max = Duration.ofHours(24);
+		Instant hourlyNextCheck = hourly.getNextCheck(now, 0.5, min, max);
+		Instant dailyNextCheck = daily.getNextCheck(now, 0.5, min, max);
+
+		Assertions.assertTrue(hourlyNextCheck.isBefore(dailyNextCheck));
+		Assertions.assertTrue(Duration.between(now, hourlyNextCheck).compareTo(Duration.ofHours(2)) <= 0);
+		Assertions.assertTrue(hourly.getNextCheck(now, 0.9, min, max).isAfter(hourlyNextCheck));
+	}
+
+	@Test
+	void nextCheckIsBounded() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		observe(model, entries(10, Duration.ofSeconds(1)));
+
+		Instant now = Instant.now();
+		Assertions.assertEquals(now.plus(Duration.ofMinutes(5)), model.getNextCheck(now, 0.5, Duration.ofMinutes(5), Duration.ofHours(24)));
+	}
+
+	@Test
+	void serialization() {
+		EntryArrivalModel model = new EntryArrivalModel();
+		observe(model, entries(10, Duration.ofMinutes(90)));
+		model.observe(List.of(), START.plus(Duration.ofMinutes(90 * 9)), START.plus(Duration.ofDays(1)));
+
+		EntryArrivalModel parsed = EntryArrivalModel.parse(model.serialize());
+		Assertions.assertEquals(model.getSamples(), parsed.getSamples());
+		Assertions.assertEquals(model.getAverageInterval(), parsed.getAverageInterval(), model.getAverageInterval() / 1000);
+		Assertions.assertEquals(model.serialize(), parsed.serialize());
+	}
+
+	@Test
+	void invalidValuesAreIgnored() {
+		Assertions.assertEquals(0, EntryArrivalModel.parse(null).getSamples());
+		Assertions.assertEquals(0, EntryArrivalModel.parse("").getSamples());
+		Assertions.assertEquals(0, EntryArrivalModel.parse("1;abc;3;1,2;1").getSamples());
+		Assertions.assertEquals(0, EntryArrivalModel.parse("2;1;3;1;1").getSamples());
+		Assertions.assertEquals(0, EntryArrivalModel.parse("1;1;3;1,2;1").getSamples());
+	}
+
+	/**
+	 * observes the entries as if the feed was fetched right after the last one was published
+	 */
+	private int observe(EntryArrivalModel model, List<Instant> entries) {
+		return model.observe(entries, null, entries.get(entries.size() - 1));
+	}
+
+	private List<Instant> entries(int count, Duration interval) {
+		List<Instant> entries = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			entries.add(START.plus(interval.multipliedBy(i)));
+		}
+		return entries;
+	}
+
+}
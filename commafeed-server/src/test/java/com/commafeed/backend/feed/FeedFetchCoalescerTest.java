@@ -0,0 +1,137 @@
+package com.commafeed.backend.feed;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+import com.commafeed.backend.HttpGetter.HttpResult;
+import com.commafeed.backend.feed.FeedFetchCoalescer.SharedFetch;
+import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserHints;
+import com.commafeed.backend.feed.parser.FeedParserResult;
+
+class FeedFetchCoalescerTest {
+
+	private static final String URL = "https://host.com/feed.xml";
+
+	private MetricRegistry metrics;
+	private FeedFetchCoalescer coalescer;
+
+	@BeforeEach
+	void init() {
+		ApplicationSettings settings = new ApplicationSettings();
+		settings.setFetchCoalescing(true);
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+
+		metrics = new MetricRegistry();
+		coalescer = new FeedFetchCoalescer(config, metrics);
+	}
+
+	@Test
+	void concurrentFetchesOfTheSameUrlAreCoalesced() throws Exception {
+		AtomicInteger fetches = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		FeedFetchCoalescer.Fetch fetch = () -> {
+			fetches.incrementAndGet();
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return result();
+		};
+
+		CompletableFuture<SharedFetch> first = CompletableFuture.supplyAsync(() -> fetchUnchecked(fetch));
+		Awaitility.await().until(() -> fetches.get() == 1);
+		CompletableFuture<SharedFetch> second = CompletableFuture.supplyAsync(() -> fetchUnchecked(fetch));
+		Awaitility.await().until(() -> metrics.meter(MetricRegistry.name(FeedFetchCoalescer.class, "coalesced")).getCount() == 1);
+		latch.countDown();
+
+		Assertions.assertSame(first.get(), second.get());
+		Assertions.assertEquals(1, fetches.get());
+
+		// the fetch is done, the next one hits the network again
+		coalescer.fetch(URL, null, null, fetch);
+		Assertions.assertEquals(2, fetches.get());
+	}
+
+	@Test
+	void fetchesWithDifferentConditionalHeadersAreNotCoalesced() throws Exception {
+		CompletableFuture<HttpResult> pending = new CompletableFuture<>();
+		AtomicInteger fetches = new AtomicInteger();
+
+		CompletableFuture<SharedFetch> first = coalescer.fetchAsync(URL, null, "etag-1", () -> {
+			fetches.incrementAndGet();
+			return pending;
+		});
+		CompletableFuture<SharedFetch> second = coalescer.fetchAsync(URL, null, "etag-1", () -> {
+			fetches.incrementAndGet();
+			return pending;
+		});
+		CompletableFuture<SharedFetch> third = coalescer.fetchAsync(URL, null, "etag-2", () -> {
+			fetches.incrementAndGet();
+			return pending;
+		});
+
+		Assertions.assertSame(first, second);
+		Assertions.assertNotSame(first, third);
+		Assertions.assertEquals(2, fetches.get());
+	}
+
+	@Test
+	void failuresAreShared() {
+		CompletableFuture<HttpResult> pending = new CompletableFuture<>();
+		CompletableFuture<SharedFetch> first = coalescer.fetchAsync(URL, null, null, () -> pending);
+		CompletableFuture<SharedFetch> second = coalescer.fetchAsync(URL, null, null, () -> pending);
+
+		pending.completeExceptionally(new IOException("unreachable"));
+
+		Assertions.assertInstanceOf(IOException.class, Assertions.assertThrows(ExecutionException.class, first::get).getCause());
+		Assertions.assertInstanceOf(IOException.class, Assertions.assertThrows(ExecutionException.class, second::get).getCause());
+	}
+
+	@Test
+	void parsingIsSharedOnlyWithoutHints() throws Exception {
+		FeedParser parser = Mockito.mock(FeedParser.class);
+		FeedParserResult parserResult = new FeedParserResult("title", URL, null, null, null, List.of(), null, null);
+		Mockito.when(parser.parse(ArgumentMatchers.eq(URL), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+				.thenReturn(parserResult);
+
+		SharedFetch fetch = coalescer.fetch(URL, null, null, this::result);
+		Assertions.assertSame(parserResult, fetch.parse(parser, FeedParserHints.NONE));
+		Assertions.assertSame(parserResult, fetch.parse(parser, FeedParserHints.NONE));
+		Mockito.verify(parser, Mockito.times(1)).parse(URL, fetch.getResult().getContent(), "application/xml", FeedParserHints.NONE);
+
+		FeedParserHints hints = new FeedParserHints(10, e -> false);
+		fetch.parse(parser, hints);
+		fetch.parse(parser, hints);
+		Mockito.verify(parser, Mockito.times(2)).parse(URL, fetch.getResult().getContent(), "application/xml", hints);
+	}
+
+	private SharedFetch fetchUnchecked(FeedFetchCoalescer.Fetch fetch) {
+		try {
+			return coalescer.fetch(URL, null, null, fetch);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private HttpResult result() {
+		return new HttpResult("content".getBytes(), "application/xml", null, null, 0, URL, null);
+	}
+
+}
@@ -2,6 +2,8 @@ package com.commafeed.backend.feed;
 
 import java.time.Instant;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,10 +13,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
 import com.commafeed.backend.HttpGetter;
 import com.commafeed.backend.HttpGetter.HttpResult;
 import com.commafeed.backend.HttpGetter.NotModifiedException;
+import com.commafeed.backend.feed.FeedFetcher.FeedFetcherResult;
 import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserHints;
 import com.commafeed.backend.urlprovider.FeedURLProvider;
 import com.google.gwt.thirdparty.guava.common.hash.Hashing;
 
@@ -34,7 +41,12 @@ class FeedFetcherTest {
 
 	@BeforeEach
 	void init() {
-		fetcher = new FeedFetcher(parser, getter, urlProviders);
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(new ApplicationSettings());
+
+		MetricRegistry metrics = new MetricRegistry();
+		fetcher = new FeedFetcher(parser, getter, urlProviders, new HostHealthTracker(config, metrics),
+				new FeedFetchCoalescer(config, metrics));
 	}
 
 	@Test
@@ -46,7 +58,7 @@ class FeedFetcherTest {
 		String lastContentHash = Hashing.sha1().hashBytes(content).toString();
 
 		Mockito.when(getter.getBinary(url, lastModified, etag, 20000))
-				.thenReturn(new HttpResult(content, "content-type", "last-modified-2", "etag-2", 20, null));
+				.thenReturn(new HttpResult(content, "content-type", "last-modified-2", "etag-2", 20, null, null));
 
 		NotModifiedException e = Assertions.assertThrows(NotModifiedException.class,
 				() -> fetcher.fetch(url, false, lastModified, etag, Instant.now(), lastContentHash));
@@ -56,4 +68,25 @@ class FeedFetcherTest {
 
 	}
 
+	@Test
+	void updatesHeaderWhenContentDitNotChangeAsync() {
+		String url = "https://aaa.com";
+		String lastModified = "last-modified-1";
+		String etag = "etag-1";
+		byte[] content = "content".getBytes();
+		String lastContentHash = Hashing.sha1().hashBytes(content).toString();
+
+		Mockito.when(getter.getBinaryAsync(url, lastModified, etag, 20000))
+				.thenReturn(CompletableFuture
+						.completedFuture(new HttpResult(content, "content-type", "last-modified-2", "etag-2", 20, null, null)));
+
+		CompletableFuture<FeedFetcherResult> future = fetcher.fetchAsync(url, lastModified, etag, Instant.now(), lastContentHash,
+				FeedParserHints.NONE, Runnable::run);
+		ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+
+		NotModifiedException cause = Assertions.assertInstanceOf(NotModifiedException.class, e.getCause());
+		Assertions.assertEquals("last-modified-2", cause.getNewLastModifiedHeader());
+		Assertions.assertEquals("etag-2", cause.getNewEtagHeader());
+	}
+
 }
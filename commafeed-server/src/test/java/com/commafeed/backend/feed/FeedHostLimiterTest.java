@@ -0,0 +1,132 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.backend.feed.FeedHostLimiter.BusyHost;
+import com.commafeed.backend.model.Feed;
+
+class FeedHostLimiterTest {
+
+	private final List<Feed> dispatched = new CopyOnWriteArrayList<>();
+
+	private FeedHostLimiter limiter;
+
+	@AfterEach
+	void cleanup() {
+		if (limiter != null) {
+			limiter.stop();
+		}
+	}
+
+	@Test
+	void disabledLimiterNeverParks() {
+		limiter = new FeedHostLimiter(0, 0, 0, dispatched::add, new MetricRegistry());
+
+		Assertions.assertTrue(limiter.tryAcquire(feed(1L, "https://host.com/1")));
+		Assertions.assertTrue(limiter.tryAcquire(feed(2L, "https://host.com/2")));
+	}
+
+	@Test
+	void parksFeedsOfBusyHostAndDispatchesThemOnRelease() {
+		limiter = new FeedHostLimiter(1, 0, 0, dispatched::add, new MetricRegistry());
+
+		Feed first = feed(1L, "https://host.com/1");
+		Feed second = feed(2L, "https://host.com/2");
+		Feed other = feed(3L, "https://other.com/3");
+
+		Assertions.assertTrue(limiter.tryAcquire(first));
+		Assertions.assertFalse(limiter.tryAcquire(second));
+		Assertions.assertTrue(limiter.tryAcquire(other));
+
+		limiter.release(first);
+		Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> dispatched.contains(second));
+	}
+
+	@Test
+	void releaseUsesTheHostTheSlotWasAcquiredFor() {
+		limiter = new FeedHostLimiter(1, 0, 0, dispatched::add, new MetricRegistry());
+
+		Feed feed = feed(1L, "https://host.com/1");
+		Assertions.assertTrue(limiter.tryAcquire(feed));
+
+		// the feed was redirected to another host while being fetched
+		feed.setUrlAfterRedirect("https://redirected.com/1");
+		limiter.release(feed);
+
+		Assertions.assertTrue(limiter.tryAcquire(feed(2L, "https://host.com/2")));
+	}
+
+	@Test
+	void concurrentFetchesOfTheSameFeedReleaseTheirOwnSlot() {
+		limiter = new FeedHostLimiter(2, 0, 0, dispatched::add, new MetricRegistry());
+
+		Feed feed = feed(1L, "https://host.com/1");
+		Assertions.assertTrue(limiter.tryAcquire(feed));
+		Assertions.assertTrue(limiter.tryAcquire(feed));
+
+		limiter.release(feed);
+		limiter.release(feed);
+
+		Assertions.assertTrue(limiter.tryAcquire(feed(2L, "https://host.com/2")));
+		Assertions.assertTrue(limiter.tryAcquire(feed(3L, "https://host.com/3")));
+	}
+
+	@Test
+	void enforcesMinimumDelayBetweenFetches() {
+		limiter = new FeedHostLimiter(0, 200, 0, dispatched::add, new MetricRegistry());
+
+		Feed first = feed(1L, "https://host.com/1");
+		Feed second = feed(2L, "https://host.com/2");
+
+		Assertions.assertTrue(limiter.tryAcquire(first));
+		Assertions.assertFalse(limiter.tryAcquire(second));
+		Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> dispatched.contains(second));
+	}
+
+	@Test
+	void limitsParkedFeedsPerHost() {
+		limiter = new FeedHostLimiter(1, 0, 1, dispatched::add, new MetricRegistry());
+
+		Assertions.assertTrue(limiter.tryAcquire(feed(1L, "https://host.com/1")));
+		Assertions.assertFalse(limiter.isParkingFull(feed(2L, "https://host.com/2")));
+		Assertions.assertFalse(limiter.tryAcquire(feed(2L, "https://host.com/2")));
+
+		Assertions.assertTrue(limiter.isParkingFull(feed(3L, "https://host.com/3")));
+		Assertions.assertFalse(limiter.isParkingFull(feed(4L, "https://other.com/4")));
+	}
+
+	@Test
+	void reportsHostsWithTheLongestWaitFirst() throws InterruptedException {
+		limiter = new FeedHostLimiter(1, 0, 0, dispatched::add, new MetricRegistry());
+
+		Assertions.assertTrue(limiter.tryAcquire(feed(1L, "https://host.com/1")));
+		Assertions.assertFalse(limiter.tryAcquire(feed(2L, "https://host.com/2")));
+		Assertions.assertFalse(limiter.tryAcquire(feed(3L, "https://host.com/3")));
+		Thread.sleep(10);
+		Assertions.assertTrue(limiter.tryAcquire(feed(4L, "https://other.com/4")));
+		Assertions.assertFalse(limiter.tryAcquire(feed(5L, "https://other.com/5")));
+		Assertions.assertTrue(limiter.tryAcquire(feed(6L, "https://idle.com/6")));
+
+		List<BusyHost> hosts = limiter.getBusiestHosts(10);
+		Assertions.assertEquals(List.of("host.com", "other.com"), hosts.stream().map(BusyHost::host).toList());
+		Assertions.assertEquals(1, hosts.get(0).active());
+		Assertions.assertEquals(2, hosts.get(0).parked());
+		Assertions.assertEquals(1, limiter.getBusiestHosts(1).size());
+	}
+
+	private Feed feed(Long id, String url) {
+		Feed feed = new Feed();
+		feed.setId(id);
+		feed.setUrl(url);
+		return feed;
+	}
+
+}
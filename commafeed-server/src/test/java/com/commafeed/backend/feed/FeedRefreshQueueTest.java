@@ -0,0 +1,163 @@
+package com.commafeed.backend.feed;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.backend.model.Feed;
+
+class FeedRefreshQueueTest {
+
+	private FeedRefreshQueue queue;
+
+	@BeforeEach
+	void init() {
+		queue = new FeedRefreshQueue(new MetricRegistry());
+	}
+
+	@Test
+	void feedsAreQueuedOnlyOnce() throws Exception {
+		Assertions.assertTrue(queue.offer(feed(1L)));
+		Assertions.assertFalse(queue.offer(feed(1L)));
+		Assertions.assertTrue(queue.offer(feed(2L)));
+
+		Assertions.assertEquals(2, queue.size());
+		Assertions.assertEquals(1L, queue.take().getId());
+		Assertions.assertEquals(2L, queue.take().getId());
+		Assertions.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void urgentFeedsAreTakenFirst() throws Exception {
+		queue.offer(feed(1L));
+		queue.offer(feed(2L));
+		queue.offerUrgent(feed(3L));
+
+		Assertions.assertEquals(3L, queue.take().getId());
+		Assertions.assertEquals(1L, queue.take().getId());
+	}
+
+	@Test
+	void promotedFeedsAreNotQueuedTwice() throws Exception {
+		queue.offer(feed(1L));
+		queue.offer(feed(2L));
+		queue.offerUrgent(feed(2L));
+		queue.offerUrgent(feed(2L));
+
+		Assertions.assertEquals(2, queue.size());
+		Assertions.assertEquals(2L, queue.take().getId());
+		Assertions.assertEquals(1L, queue.take().getId());
+		Assertions.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void removedFeedsAreNotTaken() throws Exception {
+		queue.offer(feed(1L));
+		queue.offerUrgent(feed(2L));
+
+		Assertions.assertTrue(queue.remove(2L));
+		Assertions.assertFalse(queue.remove(2L));
+		Assertions.assertFalse(queue.contains(2L));
+		Assertions.assertEquals(1L, queue.take().getId());
+	}
+
+	@Test
+	void lanesAreTakenInPriorityOrder() throws Exception {
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, null);
+		queue.offer(feed(2L), FeedRefreshPriority.POPULAR, null);
+		queue.offer(feed(3L), FeedRefreshPriority.ACTIVE_USERS, null);
+		queue.offerUrgent(feed(4L));
+
+		Assertions.assertEquals(4L, queue.take().getId());
+		Assertions.assertEquals(3L, queue.take().getId());
+		Assertions.assertEquals(2L, queue.take().getId());
+		Assertions.assertEquals(1L, queue.take().getId());
+	}
+
+	@Test
+	void ownersTakeTurns() throws Exception {
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(2L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(3L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(4L), FeedRefreshPriority.NORMAL, 20L);
+		queue.offer(feed(5L), FeedRefreshPriority.NORMAL, null);
+
+		Assertions.assertEquals(1L, queue.take().getId());
+		Assertions.assertEquals(4L, queue.take().getId());
+		Assertions.assertEquals(5L, queue.take().getId());
+		Assertions.assertEquals(2L, queue.take().getId());
+		Assertions.assertEquals(3L, queue.take().getId());
+	}
+
+	@Test
+	void ownersAreLimited() throws Exception {
+		queue = new FeedRefreshQueue(1, new MetricRegistry());
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(2L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(3L), FeedRefreshPriority.NORMAL, 20L);
+
+		Assertions.assertEquals(1L, queue.take().getId());
+		Assertions.assertEquals(3L, queue.take().getId());
+		Assertions.assertTrue(queue.isExhausted());
+		Assertions.assertFalse(queue.isEmpty());
+
+		queue.release(3L);
+		Assertions.assertTrue(queue.isExhausted());
+
+		queue.release(1L);
+		Assertions.assertFalse(queue.isExhausted());
+		Assertions.assertEquals(2L, queue.take().getId());
+	}
+
+	@Test
+	void feedTakenTwiceIsReleasedTwice() throws Exception {
+		queue = new FeedRefreshQueue(2, new MetricRegistry());
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, 10L);
+		Assertions.assertEquals(1L, queue.take().getId());
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, 10L);
+		Assertions.assertEquals(1L, queue.take().getId());
+
+		queue.offer(feed(2L), FeedRefreshPriority.NORMAL, 10L);
+		Assertions.assertTrue(queue.isExhausted());
+
+		queue.release(1L);
+		Assertions.assertEquals(2L, queue.take().getId());
+
+		queue.release(1L);
+		queue.release(2L);
+		queue.offer(feed(3L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(4L), FeedRefreshPriority.NORMAL, 10L);
+		Assertions.assertEquals(3L, queue.take().getId());
+		Assertions.assertEquals(4L, queue.take().getId());
+	}
+
+	@Test
+	void feedsWithoutOwnerAreNotLimited() throws Exception {
+		queue = new FeedRefreshQueue(1, new MetricRegistry());
+		queue.offer(feed(1L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(2L), FeedRefreshPriority.NORMAL, 10L);
+		queue.offer(feed(3L), FeedRefreshPriority.NORMAL, null);
+		queue.offer(feed(4L), FeedRefreshPriority.NORMAL, null);
+
+		Assertions.assertEquals(1L, queue.take().getId());
+		Assertions.assertEquals(3L, queue.take().getId());
+		Assertions.assertEquals(4L, queue.take().getId());
+		Assertions.assertTrue(queue.isExhausted());
+	}
+
+	@Test
+	void ageOfOldestIsZeroWhenEmpty() {
+		Assertions.assertEquals(0, queue.getAgeOfOldestMillis());
+
+		queue.offer(feed(1L));
+		Assertions.assertTrue(queue.getAgeOfOldestMillis() >= 0);
+	}
+
+	private Feed feed(Long id) {
+		Feed feed = new Feed();
+		feed.setId(id);
+		return feed;
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.commafeed.backend.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+
+class FeedRefreshSchedulerTest {
+
+	private FeedRefreshScheduler scheduler;
+
+	@BeforeEach
+	void init() {
+		ApplicationSettings settings = new ApplicationSettings();
+		settings.setRefreshIntervalMinutes(0);
+
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+
+		scheduler = new FeedRefreshScheduler(config, new MetricRegistry());
+	}
+
+	@Test
+	void returnsOnlyDueFeedsMostOverdueFirst() {
+		Instant now = Instant.now();
+		scheduler.schedule(1L, now.minus(Duration.ofMinutes(1)));
+		scheduler.schedule(2L, now.minus(Duration.ofMinutes(5)));
+		scheduler.schedule(3L, now.plus(Duration.ofHours(1)));
+
+		Assertions.assertEquals(List.of(2L, 1L), scheduler.pollDue(10));
+		Assertions.assertEquals(1, scheduler.size());
+	}
+
+	@Test
+	void returnsHighestPriorityClassFirst() {
+		Instant now = Instant.now();
+		scheduler.schedule(1L, now.minus(Duration.ofMinutes(5)), FeedRefreshPriority.NORMAL);
+		scheduler.schedule(2L, now.minus(Duration.ofMinutes(1)), FeedRefreshPriority.ACTIVE_USERS);
+		scheduler.schedule(3L, now.minus(Duration.ofMinutes(2)), FeedRefreshPriority.POPULAR);
+		scheduler.schedule(4L, now.plus(Duration.ofHours(1)), FeedRefreshPriority.ACTIVE_USERS);
+
+		Assertions.assertEquals(List.of(2L, 3L), scheduler.pollDue(2));
+		Assertions.assertEquals(List.of(1L), scheduler.pollDue(2));
+		Assertions.assertTrue(scheduler.timeUntilNextDue(Duration.ofHours(2)).compareTo(Duration.ofMinutes(59)) > 0);
+	}
+
+	@Test
+	void respectsMax() {
+		Instant past = Instant.now().minus(Duration.ofMinutes(1));
+		scheduler.schedule(1L, past);
+		scheduler.schedule(2L, past);
+		scheduler.schedule(3L, past);
+
+		Assertions.assertEquals(2, scheduler.pollDue(2).size());
+		Assertions.assertEquals(1, scheduler.pollDue(2).size());
+		Assertions.assertTrue(scheduler.pollDue(2).isEmpty());
+	}
+
+	@Test
+	void reschedulingReplacesPreviousDate() {
+		scheduler.schedule(1L, Instant.now().minus(Duration.ofMinutes(1)));
+		scheduler.schedule(1L, Instant.now().plus(Duration.ofHours(1)));
+
+		Assertions.assertTrue(scheduler.pollDue(10).isEmpty());
+		Assertions.assertEquals(1, scheduler.size());
+	}
+
+	@Test
+	void unscheduledFeedsAreNotReturned() {
+		scheduler.schedule(1L, Instant.now().minus(Duration.ofMinutes(1)));
+		scheduler.unschedule(1L);
+
+		Assertions.assertTrue(scheduler.pollDue(10).isEmpty());
+		Assertions.assertEquals(0, scheduler.size());
+	}
+
+	@Test
+	void overdueFeedsLoadedOnStartupAreDue() {
+		scheduler.scheduleAll(Map.of(1L, Instant.now().minus(Duration.ofDays(1)), 2L, Instant.now().plus(Duration.ofDays(1))));
+
+		Assertions.assertEquals(List.of(1L), scheduler.pollDue(10));
+	}
+
+	@Test
+	void timeUntilNextDueIsCapped() {
+		Duration max = Duration.ofSeconds(15);
+		Assertions.assertEquals(max, scheduler.timeUntilNextDue(max));
+
+		scheduler.schedule(1L, Instant.now().plus(Duration.ofHours(1)));
+		Assertions.assertEquals(max, scheduler.timeUntilNextDue(max));
+
+		scheduler.schedule(2L, Instant.now().minus(Duration.ofMinutes(1)));
+		Assertions.assertEquals(Duration.ZERO, scheduler.timeUntilNextDue(max));
+	}
+
+}
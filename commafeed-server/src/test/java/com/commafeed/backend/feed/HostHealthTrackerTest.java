@@ -0,0 +1,142 @@
+package com.commafeed.backend.feed;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+import com.commafeed.backend.HttpGetter.HttpResponseException;
+import com.commafeed.backend.feed.HostHealthTracker.HostUnavailableException;
+
+import io.dropwizard.util.Duration;
+
+class HostHealthTrackerTest {
+
+	private static final String HOST = "host.com";
+
+	private ApplicationSettings settings;
+
+	@BeforeEach
+	void init() {
+		settings = new ApplicationSettings();
+		settings.setCircuitBreakerFailureThreshold(3);
+		settings.setCircuitBreakerOpenDuration(Duration.minutes(5));
+	}
+
+	@Test
+	void opensCircuitAfterConsecutiveFailures() throws Exception {
+		HostHealthTracker tracker = newTracker();
+
+		tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+		tracker.onFailure(HOST, 5000, new ConnectException());
+		tracker.checkAvailable(HOST);
+
+		tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+		Assertions.assertThrows(HostUnavailableException.class, () -> tracker.checkAvailable(HOST));
+	}
+
+	@Test
+	void httpErrorsDoNotCountAsFailures() throws Exception {
+		HostHealthTracker tracker = newTracker();
+
+		for (int i = 0; i < 5; i++) {
+			tracker.onFailure(HOST, 100, new HttpResponseException(500, "error"));
+		}
+		tracker.checkAvailable(HOST);
+	}
+
+	@Test
+	void responseResetsFailureCount() throws Exception {
+		HostHealthTracker tracker = newTracker();
+
+		tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+		tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+		tracker.onResponse(HOST, 100);
+		tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+
+		tracker.checkAvailable(HOST);
+	}
+
+	@Test
+	void sendsSingleProbeOnceOpenDurationElapsed() throws Exception {
+		settings.setCircuitBreakerOpenDuration(Duration.milliseconds(0));
+		HostHealthTracker tracker = newTracker();
+
+		for (int i = 0; i < 3; i++) {
+			tracker.onFailure(HOST, 20000, new SocketTimeoutException());
+		}
+
+		// the open duration is zero, the first request is the probe and other requests are rejected while it is in flight
+		tracker.checkAvailable(HOST);
+		Assertions.assertThrows(HostUnavailableException.class, () -> tracker.checkAvailable(HOST));
+		tracker.onResponse(HOST, 100);
+		tracker.checkAvailable(HOST);
+		tracker.checkAvailable(HOST);
+	}
+
+	@Test
+	void probeGetsMaximumTimeout() throws Exception {
+		settings.setCircuitBreakerOpenDuration(Duration.milliseconds(0));
+		settings.setAdaptiveFetchTimeout(true);
+		HostHealthTracker tracker = newTracker();
+
+		for (int i = 0; i < 10; i++) {
+			tracker.onResponse(HOST, 2000);
+		}
+		for (int i = 0; i < 3; i++) {
+			tracker.onFailure(HOST, 100, new ConnectException());
+		}
+
+		tracker.checkAvailable(HOST);
+		Assertions.assertEquals(20000, tracker.getTimeout(HOST, 20000));
+	}
+
+	@Test
+	void adaptiveTimeoutFollowsLatencies() {
+		settings.setAdaptiveFetchTimeout(true);
+		HostHealthTracker tracker = newTracker();
+
+		Assertions.assertEquals(20000, tracker.getTimeout(HOST, 20000));
+
+		for (int i = 0; i < 10; i++) {
+			tracker.onResponse(HOST, 2000);
+		}
+		Assertions.assertEquals(8000, tracker.getTimeout(HOST, 20000));
+
+		// older samples are discarded
+		for (int i = 0; i < 20; i++) {
+			tracker.onResponse(HOST, 100);
+		}
+		Assertions.assertEquals(5000, tracker.getTimeout(HOST, 20000));
+	}
+
+	@Test
+	void timeoutsCountAsLatencySamples() {
+		settings.setAdaptiveFetchTimeout(true);
+		HostHealthTracker tracker = newTracker();
+
+		for (int i = 0; i < 10; i++) {
+			tracker.onResponse(HOST, 2000);
+		}
+		Assertions.assertEquals(8000, tracker.getTimeout(HOST, 20000));
+
+		// the request following a timeout gets the maximum timeout
+		tracker.onFailure(HOST, 3000, new SocketTimeoutException());
+		Assertions.assertEquals(20000, tracker.getTimeout(HOST, 20000));
+
+		tracker.onResponse(HOST, 2000);
+		Assertions.assertEquals(12000, tracker.getTimeout(HOST, 20000));
+	}
+
+	private HostHealthTracker newTracker() {
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+		return new HostHealthTracker(config, new MetricRegistry());
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.commafeed.backend.feed;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.commafeed.backend.feed.SlowestFeeds.SlowFeed;
+import com.commafeed.backend.model.Feed;
+
+class SlowestFeedsTest {
+
+	@Test
+	void keepsSlowestFeeds() {
+		SlowestFeeds slowestFeeds = new SlowestFeeds(2);
+		slowestFeeds.record(feed(1L), 100);
+		slowestFeeds.record(feed(2L), 300);
+		slowestFeeds.record(feed(3L), 50);
+		slowestFeeds.record(feed(4L), 200);
+
+		Assertions.assertEquals(List.of(2L, 4L), slowestFeeds.get().stream().map(SlowFeed::feedId).toList());
+	}
+
+	@Test
+	void keepsLastDurationOfFeed() {
+		SlowestFeeds slowestFeeds = new SlowestFeeds(2);
+		slowestFeeds.record(feed(1L), 100);
+		slowestFeeds.record(feed(1L), 10);
+
+		Assertions.assertEquals(List.of(new SlowFeed(1L, "https://host.com/1", 10)), slowestFeeds.get());
+	}
+
+	private Feed feed(Long id) {
+		Feed feed = new Feed();
+		feed.setId(id);
+		feed.setUrl("https://host.com/" + id);
+		return feed;
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.commafeed.backend.feed;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+import com.commafeed.backend.HttpGetter;
+import com.commafeed.backend.dao.FeedDAO;
+import com.commafeed.backend.dao.UnitOfWork;
+import com.commafeed.backend.dao.UnitOfWork.SessionRunner;
+import com.commafeed.backend.dao.UnitOfWork.SessionRunnerReturningValue;
+import com.commafeed.backend.feed.parser.FeedParser;
+import com.commafeed.backend.feed.parser.FeedParserResult;
+import com.commafeed.backend.feed.parser.FeedParserResult.Entry;
+import com.commafeed.backend.model.Feed;
+import com.google.common.hash.Hashing;
+
+@ExtendWith(MockitoExtension.class)
+class WebSubServiceTest {
+
+	private static final String TOPIC = "https://host.com/feed.xml";
+	private static final String TOPIC_HASH = "hash";
+
+	@Mock
+	private UnitOfWork unitOfWork;
+	@Mock
+	private FeedDAO feedDAO;
+	@Mock
+	private HttpGetter httpGetter;
+	@Mock
+	private FeedParser parser;
+	@Mock
+	private FeedRefreshEngine feedRefreshEngine;
+
+	private WebSubService service;
+
+	@BeforeEach
+	void init() {
+		ApplicationSettings settings = new ApplicationSettings();
+		settings.setWebSubEnabled(true);
+		settings.setMaxFeedCapacity(0);
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+
+		service = new WebSubService(unitOfWork, feedDAO, httpGetter, parser, () -> feedRefreshEngine, config, new MetricRegistry());
+	}
+
+	@Test
+	void verifiesPendingSubscription() {
+		mockCall();
+		mockRun();
+		Feed feed = feed();
+		feed.setPushVerificationDeadline(Instant.now().plus(Duration.ofMinutes(5)));
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(feed));
+
+		Assertions.assertEquals("challenge", service.onVerification(TOPIC_HASH, "subscribe", TOPIC, "challenge", 3600L));
+		Mockito.verify(feedDAO).setPushSubscriptionVerified(ArgumentMatchers.eq(List.of(1L)), ArgumentMatchers.any(Instant.class));
+	}
+
+	@Test
+	void refusesVerificationOfUnknownTopic() {
+		mockCall();
+		Feed feed = feed();
+		feed.setPushVerificationDeadline(Instant.now().plus(Duration.ofMinutes(5)));
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(feed));
+
+		Assertions.assertNull(service.onVerification(TOPIC_HASH, "subscribe", "https://other.com/feed.xml", "challenge", 3600L));
+		Mockito.verify(feedDAO, Mockito.never()).setPushSubscriptionVerified(ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void refusesVerificationWithoutPendingSubscription() {
+		mockCall();
+		Feed expired = feed();
+		expired.setPushVerificationDeadline(Instant.now().minus(Duration.ofMinutes(5)));
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(feed()));
+		Assertions.assertNull(service.onVerification(TOPIC_HASH, "subscribe", TOPIC, "challenge", 3600L));
+
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(expired));
+		Assertions.assertNull(service.onVerification(TOPIC_HASH, "subscribe", TOPIC, "challenge", 3600L));
+		Mockito.verify(feedDAO, Mockito.never()).setPushSubscriptionVerified(ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void refusesUnsubscribeAndDeniedVerifications() {
+		Assertions.assertNull(service.onVerification(TOPIC_HASH, "unsubscribe", TOPIC, "challenge", null));
+		Assertions.assertNull(service.onVerification(TOPIC_HASH, "denied", TOPIC, "challenge", null));
+		Mockito.verifyNoInteractions(feedDAO);
+	}
+
+	@Test
+	void insertsEntriesOfSignedContent() throws Exception {
+		mockCall();
+		Feed feed = feed();
+		feed.setPushSecret("secret");
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(feed));
+
+		List<Entry> entries = List.of(new Entry("guid", "https://host.com/1", Instant.now(), null));
+		byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+		Mockito.when(parser.parse(TOPIC, content))
+				.thenReturn(new FeedParserResult("title", TOPIC, null, null, null, entries, feed.getPushHub(), TOPIC));
+		Mockito.when(feedRefreshEngine.updatePushedEntries(feed, entries)).thenReturn(CompletableFuture.completedFuture(null));
+
+		String signature = "sha1=" + Hashing.hmacSha1("secret".getBytes(StandardCharsets.UTF_8)).hashBytes(content);
+		Assertions.assertTrue(service.onContentDistribution(TOPIC_HASH, content, signature));
+		Mockito.verify(feedRefreshEngine, Mockito.timeout(5000)).updatePushedEntries(feed, entries);
+	}
+
+	@Test
+	void ignoresContentWithInvalidSignature() {
+		mockCall();
+		Feed feed = feed();
+		feed.setPushSecret("secret");
+		Mockito.when(feedDAO.findByPushTopicHash(TOPIC_HASH)).thenReturn(List.of(feed));
+
+		Assertions.assertTrue(service.onContentDistribution(TOPIC_HASH, "content".getBytes(StandardCharsets.UTF_8), "sha1=invalid"));
+		Mockito.verifyNoInteractions(parser, feedRefreshEngine);
+	}
+
+	@Test
+	void validSignatures() {
+		byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+		byte[] key = "secret".getBytes(StandardCharsets.UTF_8);
+
+		Assertions.assertTrue(WebSubService.isValidSignature("secret", content, "sha1=" + Hashing.hmacSha1(key).hashBytes(content)));
+		Assertions.assertTrue(WebSubService.isValidSignature("secret", content, "sha256=" + Hashing.hmacSha256(key).hashBytes(content)));
+	}
+
+	@Test
+	void invalidSignatures() {
+		byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+		String signature = "sha1=" + Hashing.hmacSha1("secret".getBytes(StandardCharsets.UTF_8)).hashBytes(content);
+
+		Assertions.assertFalse(WebSubService.isValidSignature("other", content, signature));
+		Assertions.assertFalse(WebSubService.isValidSignature(null, content, signature));
+		Assertions.assertFalse(WebSubService.isValidSignature("secret", content, null));
+		Assertions.assertFalse(WebSubService.isValidSignature("secret", content, "md5=abc"));
+		Assertions.assertFalse(WebSubService.isValidSignature("secret", "other".getBytes(StandardCharsets.UTF_8), signature));
+	}
+
+	private void mockCall() {
+		Mockito.when(unitOfWork.call(ArgumentMatchers.any()))
+				.thenAnswer(i -> ((SessionRunnerReturningValue<?>) i.getArgument(0)).runInSession());
+	}
+
+	private void mockRun() {
+		Mockito.doAnswer(i -> {
+			((SessionRunner) i.getArgument(0)).runInSession();
+			return null;
+		}).when(unitOfWork).run(ArgumentMatchers.any());
+	}
+
+	private Feed feed() {
+		Feed feed = new Feed();
+		feed.setId(1L);
+		feed.setUrl(TOPIC);
+		feed.setPushHub("https://hub.com");
+		feed.setPushTopic(TOPIC);
+		feed.setPushTopicHash(TOPIC_HASH);
+		return feed;
+	}
+
+}
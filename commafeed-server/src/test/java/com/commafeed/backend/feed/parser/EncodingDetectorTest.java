@@ -1,7 +1,13 @@
 package com.commafeed.backend.feed.parser;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
 
 class EncodingDetectorTest {
 
@@ -16,4 +22,75 @@ class EncodingDetectorTest {
 		Assertions.assertEquals("UTF-8", encodingDetector.extractDeclaredEncoding("<?xml encoding='UTF-8'?>".getBytes()));
 	}
 
+	@Test
+	void byteOrderMarkIsTrusted() {
+		byte[] utf16 = ("\uFEFF<?xml version=\"1.0\" encoding=\"windows-1252\"?>" + xml("été")).getBytes(StandardCharsets.UTF_16BE);
+		Assertions.assertEquals(StandardCharsets.UTF_16BE, encodingDetector.getEncoding(utf16));
+
+		byte[] utf8 = ("\uFEFF" + xml("été")).getBytes(StandardCharsets.UTF_8);
+		Assertions.assertEquals(StandardCharsets.UTF_8, encodingDetector.getEncoding(utf8));
+	}
+
+	@Test
+	void declaredUtf8IsTrustedOnlyIfValid() {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml("Les élèves étaient à l'école pendant l'été.");
+		Assertions.assertEquals(StandardCharsets.UTF_8, encodingDetector.getEncoding(xml.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(Charset.forName("windows-1252"),
+				encodingDetector.getEncoding(xml.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	@Test
+	void utf8Validation() {
+		Assertions.assertTrue(EncodingDetector.isValidUtf8("ascii, é, € and \uD83D\uDE00".getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertFalse(EncodingDetector.isValidUtf8("é".getBytes(StandardCharsets.ISO_8859_1)));
+		// truncated sequence
+		Assertions.assertFalse(EncodingDetector.isValidUtf8(new byte[] { 'a', (byte) 0xE2, (byte) 0x82 }));
+		// overlong encoding of '/'
+		Assertions.assertFalse(EncodingDetector.isValidUtf8(new byte[] { (byte) 0xC0, (byte) 0xAF }));
+		// surrogate
+		Assertions.assertFalse(EncodingDetector.isValidUtf8(new byte[] { (byte) 0xED, (byte) 0xA0, (byte) 0x80 }));
+	}
+
+	@Test
+	void undeclaredValidUtf8IsNotDetected() {
+		EncodingDetector detector = Mockito.spy(new EncodingDetector());
+		byte[] utf8 = xml("Les élèves étaient à l'école pendant l'été.").getBytes(StandardCharsets.UTF_8);
+
+		Assertions.assertEquals(StandardCharsets.UTF_8, detector.getEncoding(utf8, "https://host.com/feed.xml", "text/xml"));
+		Mockito.verify(detector, Mockito.never()).detectEncoding(ArgumentMatchers.any());
+	}
+
+	@Test
+	void detectedEncodingIsCachedUntilContentTypeChanges() {
+		EncodingDetector detector = Mockito.spy(new EncodingDetector());
+		String text = "Les élèves étaient à l'école pendant l'été, ils ont appris à écrire des lettres très élégantes.";
+		byte[] latin1 = xml(text).getBytes(StandardCharsets.ISO_8859_1);
+		byte[] utf8 = xml(text).getBytes(StandardCharsets.UTF_8);
+
+		Charset windows1252 = Charset.forName("windows-1252");
+		Assertions.assertEquals(windows1252, detector.getEncoding(latin1, "https://host.com/feed.xml", "text/xml"));
+		Assertions.assertEquals(windows1252, detector.getEncoding(latin1, "https://host.com/feed.xml", "text/xml"));
+		Mockito.verify(detector, Mockito.times(1)).detectEncoding(ArgumentMatchers.any());
+
+		// the cached encoding does not apply to content that is valid UTF-8
+		Assertions.assertEquals(StandardCharsets.UTF_8, detector.getEncoding(utf8, "https://host.com/feed.xml", "text/xml"));
+
+		Assertions.assertEquals(windows1252, detector.getEncoding(latin1, "https://host.com/feed.xml", "text/xml; charset=iso-8859-1"));
+		Mockito.verify(detector, Mockito.times(2)).detectEncoding(ArgumentMatchers.any());
+	}
+
+	@Test
+	void encodingDetectedFromAsciiSampleIsNotCached() {
+		EncodingDetector detector = Mockito.spy(new EncodingDetector());
+		byte[] latin1 = xml(StringUtils.repeat('a', 70000) + " l'été").getBytes(StandardCharsets.ISO_8859_1);
+
+		detector.getEncoding(latin1, "https://host.com/feed.xml", "text/xml");
+		detector.getEncoding(latin1, "https://host.com/feed.xml", "text/xml");
+		Mockito.verify(detector, Mockito.times(2)).detectEncoding(ArgumentMatchers.any());
+	}
+
+	private String xml(String text) {
+		return "<rss><channel><title>" + text + "</title></channel></rss>";
+	}
+
 }
\ No newline at end of file
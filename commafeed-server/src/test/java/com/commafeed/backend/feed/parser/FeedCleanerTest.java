@@ -1,5 +1,10 @@
 package com.commafeed.backend.feed.parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -8,9 +13,50 @@ class FeedCleanerTest {
 	FeedCleaner feedCleaner = new FeedCleaner();
 
 	@Test
-	void testReplaceHtmlEntitiesWithNumericEntities() {
+	void testReplaceHtmlEntitiesWithNumericEntities() throws IOException {
 		String source = "<source>T&acute;l&acute;phone &prime;</source>";
-		Assertions.assertEquals("<source>T&#180;l&#180;phone &#8242;</source>", feedCleaner.replaceHtmlEntitiesWithNumericEntities(source));
+		Assertions.assertEquals("<source>T&#180;l&#180;phone &#8242;</source>", clean(source));
+	}
+
+	@Test
+	void unknownOrIncompleteEntitiesAreKept() throws IOException {
+		Assertions.assertEquals("<a>&unknown; &amp &#38; &&#38; AT&T &thetasymthetasym;</a>",
+				clean("<a>&unknown; &amp &#38; &&amp; AT&T &thetasymthetasym;</a>"));
+		Assertions.assertEquals("<a>&am", clean("<a>&am"));
+	}
+
+	@Test
+	void invalidCharactersAreRemoved() throws IOException {
+		Assertions.assertEquals("<a>\tb\r\nc&#38;d</a>", clean("\uFEFF  text <a>\tb\u0001\r\nc\u0000&a\u000Bmp;d\uD83D\uDE00</a>"));
+	}
+
+	@Test
+	void documentWithoutTagIsEmpty() throws IOException {
+		Assertions.assertTrue(feedCleaner.newReader("  no xml here ".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).isEmpty());
+		Assertions.assertFalse(feedCleaner.newReader(" <a/>".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8).isEmpty());
+	}
+
+	@Test
+	void entitiesSpanningBufferBoundariesAreReplaced() throws IOException {
+		String source = "<a>" + "&eacute;".repeat(5000) + "</a>";
+		String expected = "<a>" + "&#233;".repeat(5000) + "</a>";
+
+		try (Reader reader = feedCleaner.newReader(source.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+			// read one character at a time to also cover entities split across calls
+			StringBuilder sb = new StringBuilder();
+			char[] c = new char[1];
+			while (reader.read(c, 0, 1) != -1) {
+				sb.append(c[0]);
+			}
+			Assertions.assertEquals(expected, sb.toString());
+		}
+		Assertions.assertEquals(expected, clean(source));
+	}
+
+	private String clean(String xml) throws IOException {
+		try (Reader reader = feedCleaner.newReader(xml.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+			return IOUtils.toString(reader);
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package com.commafeed.backend.feed.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+
+class FeedParserTest {
+
+	private static final String URL = "https://hostname.local/feed.xml";
+
+	private static final String RSS = """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<rss version="2.0" xmlns:atom="http://www.w3.org/2005/Atom" xmlns:content="http://purl.org/rss/1.0/modules/content/"
+				xmlns:dc="http://purl.org/dc/elements/1.1/" xmlns:media="http://search.yahoo.com/mrss/">
+				<channel>
+					<title>Feed title</title>
+					<link>https://hostname.local</link>
+					<pubDate>Sun, 31 Dec 2023 15:00:00 +0100</pubDate>
+					<atom:link rel="hub" href="https://hub.local" />
+					<atom:link rel="self" href="https://hostname.local/feed.xml" />
+					<item>
+						<title>Item 2</title>
+						<link>https://hostname.local/2</link>
+						<guid isPermaLink="false">guid-2</guid>
+						<description>Item 2 &lt;b&gt;description&lt;/b&gt;</description>
+						<content:encoded><![CDATA[<p>Item 2 content</p>]]></content:encoded>
+						<dc:creator>Author 2</dc:creator>
+						<category>cat1</category>
+						<category>cat2</category>
+						<enclosure url="https://hostname.local/2.mp3" type="audio/mpeg" length="1" />
+						<media:description>Media description</media:description>
+						<media:thumbnail url="https://hostname.local/2.jpg" width="120" height="90" />
+						<pubDate>Sat, 30 Dec 2023 15:00:00 +0100</pubDate>
+					</item>
+					<item>
+						<title>Item 1</title>
+						<link>/1</link>
+						<description>Item 1 description</description>
+						<author>author1@hostname.local</author>
+						<pubDate>Fri, 29 Dec 2023 15:00:00 +0100</pubDate>
+					</item>
+				</channel>
+			</rss>
+			""";
+
+	private static final String ATOM = """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<feed xmlns="http://www.w3.org/2005/Atom" xmlns:media="http://search.yahoo.com/mrss/">
+				<title>Feed title</title>
+				<link rel="alternate" href="https://hostname.local" />
+				<link rel="hub" href="https://hub.local" />
+				<updated>2023-12-31T15:00:00Z</updated>
+				<entry>
+					<id>urn:entry:2</id>
+					<title type="html">Entry &lt;i&gt;2&lt;/i&gt;</title>
+					<link href="https://hostname.local/2" />
+					<link rel="enclosure" href="https://hostname.local/2.mp4" type="video/mp4" />
+					<updated>2023-12-30T15:00:00Z</updated>
+					<published>2023-12-29T15:00:00Z</published>
+					<author><name>Author 2</name></author>
+					<category term="cat1" />
+					<summary>Entry 2 summary</summary>
+					<content type="html">&lt;p&gt;Entry 2 content&lt;/p&gt;</content>
+					<media:group>
+						<media:description>Media description</media:description>
+						<media:thumbnail url="https://hostname.local/2.jpg" width="480" height="360" />
+					</media:group>
+				</entry>
+				<entry>
+					<id>urn:entry:1</id>
+					<title>Entry 1</title>
+					<link rel="alternate" href="https://hostname.local/1" />
+					<updated>2023-12-28T15:00:00Z</updated>
+					<summary>Entry 1 summary</summary>
+				</entry>
+			</feed>
+			""";
+
+	@Test
+	void streamingParserMatchesRomeForRss() throws Exception {
+		assertSameResult(RSS);
+	}
+
+	@Test
+	void romeFindsHubOfRssFeeds() throws Exception {
+		FeedParserResult result = parser(false).parse(URL, RSS.getBytes(StandardCharsets.UTF_8));
+		Assertions.assertEquals("https://hub.local", result.pushHub());
+		Assertions.assertEquals("https://hostname.local/feed.xml", result.pushTopic());
+	}
+
+	@Test
+	void streamingParserMatchesRomeForAtom() throws Exception {
+		assertSameResult(ATOM);
+	}
+
+	@Test
+	void unsupportedFeedsAreParsedWithRome() throws Exception {
+		String xhtml = ATOM.replace("<title>Entry 1</title>",
+				"<title type=\"xhtml\"><div xmlns=\"http://www.w3.org/1999/xhtml\">Entry <b>1</b></div></title>");
+		assertSameResult(xhtml);
+	}
+
+	@Test
+	void streamingParserKeepsMostRecentEntries() throws Exception {
+		byte[] xml = IOUtils.toByteArray(Objects.requireNonNull(getClass().getResource("/feed/rss_2.xml")));
+
+		FeedParserResult result = parser(true).parse(URL, xml, new FeedParserHints(2, e -> false));
+		Assertions.assertEquals(List.of("Item 4", "Item 3"), result.entries().stream().map(e -> e.content().title()).toList());
+	}
+
+	@Test
+	void streamingParserStopsAtKnownEntries() throws Exception {
+		byte[] xml = rss(IntStream.range(0, 30).map(i -> 29 - i)).getBytes(StandardCharsets.UTF_8);
+
+		// the 5 most recent entries are new
+		FeedParserResult result = parser(true).parse(URL, xml, new FeedParserHints(0, e -> Integer.parseInt(e.guid()) < 25));
+		Assertions.assertEquals(15, result.entries().size());
+		Assertions.assertEquals("29", result.entries().get(0).guid());
+
+		// the whole feed is parsed by ROME
+		Assertions.assertEquals(30, parser(false).parse(URL, xml, new FeedParserHints(0, e -> true)).entries().size());
+	}
+
+	@Test
+	void streamingParserDoesNotStopIfEntriesAreNotSorted() throws Exception {
+		// entries are listed from the least recent to the most recent, the new entries are at the end
+		byte[] xml = rss(IntStream.range(0, 30)).getBytes(StandardCharsets.UTF_8);
+
+		FeedParserResult result = parser(true).parse(URL, xml, new FeedParserHints(0, e -> Integer.parseInt(e.guid()) < 25));
+		Assertions.assertEquals(30, result.entries().size());
+	}
+
+	private void assertSameResult(String xml) throws Exception {
+		byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+		FeedParserResult rome = parser(false).parse(URL, bytes);
+		FeedParserResult streaming = parser(true).parse(URL, bytes);
+
+		Assertions.assertFalse(rome.entries().isEmpty());
+		Assertions.assertEquals(rome, streaming);
+	}
+
+	/**
+	 * @param items
+	 *            the items in the order of the document, the higher the more recent
+	 */
+	private String rss(IntStream items) {
+		String item = "<item><guid>%d</guid><title>Item %d</title><pubDate>Sat, 1 Jan 2000 00:%02d:00 +0000</pubDate></item>";
+		String content = items.mapToObj(i -> item.formatted(i, i, i)).collect(Collectors.joining());
+		return "<rss version=\"2.0\"><channel>" + content + "</channel></rss>";
+	}
+
+	private FeedParser parser(boolean streaming) {
+		ApplicationSettings settings = new ApplicationSettings();
+		settings.setStreamingFeedParser(streaming);
+		CommaFeedConfiguration config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+		return new FeedParser(new EncodingDetector(), new FeedCleaner(), config, new MetricRegistry());
+	}
+
+}
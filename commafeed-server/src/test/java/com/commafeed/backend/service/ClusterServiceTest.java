@@ -0,0 +1,52 @@
+package com.commafeed.backend.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.commafeed.CommaFeedConfiguration;
+import com.commafeed.CommaFeedConfiguration.ApplicationSettings;
+import com.commafeed.backend.dao.ClusterLeaseDAO;
+import com.commafeed.backend.dao.UnitOfWork;
+
+class ClusterServiceTest {
+
+	private ClusterLeaseDAO clusterLeaseDAO;
+	private ApplicationSettings settings;
+	private CommaFeedConfiguration config;
+
+	@BeforeEach
+	void init() {
+		clusterLeaseDAO = Mockito.mock(ClusterLeaseDAO.class);
+		settings = new ApplicationSettings();
+		config = new CommaFeedConfiguration();
+		config.setApplicationSettings(settings);
+	}
+
+	@Test
+	void alwaysLeaderWhenNotClustered() {
+		settings.setClustered(false);
+		ClusterService service = new ClusterService(Mockito.mock(UnitOfWork.class), clusterLeaseDAO, config);
+
+		service.start();
+		Assertions.assertTrue(service.isLeader());
+		service.stop();
+		Mockito.verifyNoInteractions(clusterLeaseDAO);
+	}
+
+	@Test
+	void notLeaderUntilLeaseAcquired() {
+		settings.setClustered(true);
+		ClusterService service = new ClusterService(Mockito.mock(UnitOfWork.class), clusterLeaseDAO, config);
+
+		Assertions.assertFalse(service.isLeader());
+	}
+
+	@Test
+	void nodeIdsAreUnique() {
+		Assertions.assertNotEquals(new ClusterService(Mockito.mock(UnitOfWork.class), clusterLeaseDAO, config).getNodeId(),
+				new ClusterService(Mockito.mock(UnitOfWork.class), clusterLeaseDAO, config).getNodeId());
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.commafeed.backend.service;
+
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FeedEntryContentCleaningServiceTest {
+
+	private static final List<String> ALLOWED_RULES = List.of("display", "width", "height");
+
+	private final FeedEntryContentCleaningService service = new FeedEntryContentCleaningService();
+
+	@Test
+	void plainTextMatchesJsoupText() {
+		List<String> texts = List.of("title", "  a  title\twith \r\n whitespace ", "caf\u00E9 \u00A0 \u200Bzero\u00ADwidth",
+				"emoji \uD83D\uDE00 > quotes \"'", "a\u0001b", "AT&amp;T", "<b>bold</b> title", "a &eacute; b");
+		for (String text : texts) {
+			Assertions.assertEquals(Jsoup.parseBodyFragment(text).body().text(), service.clean(text, null, true), text);
+		}
+	}
+
+	@Test
+	void stylesAreCleaned() {
+		String content = "<p style=\"color: red\">a</p><img src=\"https://host.com/a.png\" style=\"width: 100px; position: absolute\">"
+				+ "<iframe src=\"https://host.com/\" style=\"border: 0; display: none\"></iframe>";
+		Assertions.assertEquals("<p>a</p><img src=\"https://host.com/a.png\" style=\"width:100px;\">"
+				+ "<iframe src=\"https://host.com/\" style=\"border:0;\"></iframe>", service.clean(content, null, false));
+	}
+
+	@Test
+	void simpleStylesMatchCssParser() {
+		List<String> styles = List.of("width: 100px", "width:100px;height:50%;", " display : block ; ; width: 0 ", "width: 1em 2pt",
+				"height: 10", "width: 100px; width: 200px", "width: 010px", "width: 1.5em", "WIDTH: 100px", "width: 100PX",
+				"width: calc(100% - 10px)", "width: 100px !important", "display: none; position: absolute", "width:", ": 100px",
+				"height: 1234567px", "width: -5px", "display: inline-block", "width: 0; ", "width: 0;;", ";width: 0");
+		for (String style : styles) {
+			String simple = FeedEntryContentCleaningService.cleanSimpleStyle(style, ALLOWED_RULES);
+			if (simple != null) {
+				Assertions.assertEquals(FeedEntryContentCleaningService.cleanStyleWithParser(style, ALLOWED_RULES), simple, style);
+			}
+		}
+	}
+
+	@Test
+	void complexStylesAreHandledByCssParser() {
+		Assertions.assertNull(FeedEntryContentCleaningService.cleanSimpleStyle("width: 1.5em", ALLOWED_RULES));
+		Assertions.assertNull(FeedEntryContentCleaningService.cleanSimpleStyle("width: 100px; width: 200px", ALLOWED_RULES));
+		Assertions.assertNull(FeedEntryContentCleaningService.cleanSimpleStyle(" display : block ; ; width: 0 ", ALLOWED_RULES));
+		Assertions.assertEquals("width:100px;",
+				FeedEntryContentCleaningService.cleanSimpleStyle("width: 100px; color: red", ALLOWED_RULES));
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.commafeed.backend.service;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.codahale.metrics.MetricRegistry;
+import com.commafeed.backend.Digests;
+import com.commafeed.backend.dao.FeedEntryContentDAO;
+import com.commafeed.backend.dao.FeedEntryContentDAO.ContentFingerprint;
+import com.commafeed.backend.feed.parser.FeedParserResult.Content;
+import com.commafeed.backend.model.FeedEntryContent;
+
+@ExtendWith(MockitoExtension.class)
+class FeedEntryContentServiceTest {
+
+	private static final String BASE_URL = "https://host.com";
+
+	@Mock
+	private FeedEntryContentDAO feedEntryContentDAO;
+	@Mock
+	private FeedEntryContentCleaningService cleaningService;
+
+	private FeedEntryContentService service;
+
+	@BeforeEach
+	void init() {
+		Mockito.when(cleaningService.clean(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyBoolean()))
+				.thenAnswer(invocation -> invocation.getArgument(0));
+		service = new FeedEntryContentService(feedEntryContentDAO, cleaningService, new MetricRegistry());
+	}
+
+	@Test
+	void reusesExistingEquivalentContent() {
+		FeedEntryContent existing = existingContent(1L, "title", "content");
+		Mockito.when(feedEntryContentDAO.findFingerprints(ArgumentMatchers.any())).thenReturn(List.of(fingerprint(existing)));
+		Mockito.when(feedEntryContentDAO.findByIds(ArgumentMatchers.any())).thenReturn(List.of(existing));
+
+		List<FeedEntryContent> results = service.findOrCreate(List.of(prepared("title", "content"), prepared("other", "content")));
+
+		Assertions.assertSame(existing, results.get(0));
+		Assertions.assertEquals("other", results.get(1).getTitle());
+		Mockito.verify(feedEntryContentDAO).saveOrUpdate(List.of(results.get(1)));
+	}
+
+	@Test
+	void doesNotLoadContentsWithDifferentFingerprint() {
+		FeedEntryContent existing = existingContent(1L, "title", "content");
+		existing.setAuthor("someone else");
+		Mockito.when(feedEntryContentDAO.findFingerprints(ArgumentMatchers.any())).thenReturn(List.of(fingerprint(existing)));
+
+		List<FeedEntryContent> results = service.findOrCreate(List.of(prepared("title", "content")));
+
+		Assertions.assertNotSame(existing, results.get(0));
+		Mockito.verify(feedEntryContentDAO, Mockito.never()).findByIds(ArgumentMatchers.any());
+		Mockito.verify(feedEntryContentDAO).saveOrUpdate(results);
+	}
+
+	@Test
+	void insertsDuplicateContentsOfTheSameBatchOnlyOnce() {
+		Mockito.when(feedEntryContentDAO.findFingerprints(ArgumentMatchers.any())).thenReturn(List.of());
+
+		List<FeedEntryContent> results = service.findOrCreate(List.of(prepared("title", "content"), prepared("title", "content")));
+
+		Assertions.assertSame(results.get(0), results.get(1));
+		Mockito.verify(feedEntryContentDAO).saveOrUpdate(List.of(results.get(0)));
+	}
+
+	@Test
+	void preparedContentsAreNotModified() {
+		Mockito.when(feedEntryContentDAO.findFingerprints(ArgumentMatchers.any())).thenReturn(List.of());
+		FeedEntryContent prepared = prepared("title", "content");
+
+		List<FeedEntryContent> results = service.findOrCreate(List.of(prepared));
+
+		Assertions.assertNotSame(prepared, results.get(0));
+		Assertions.assertTrue(prepared.equivalentTo(results.get(0)));
+		Assertions.assertEquals(prepared.getContentHash(), results.get(0).getContentHash());
+		Assertions.assertEquals(prepared.getEquivalenceHash(), results.get(0).getEquivalenceHash());
+		Mockito.verify(feedEntryContentDAO).saveOrUpdate(results);
+	}
+
+	@Test
+	void onlyEquivalentContentsHaveTheSameEquivalenceHash() {
+		FeedEntryContent prepared = service.prepare(content("title", "content"), BASE_URL);
+
+		Assertions.assertEquals(prepared.getEquivalenceHash(),
+				service.prepare(content("title", "content"), BASE_URL).getEquivalenceHash());
+		Assertions.assertNotEquals(prepared.getEquivalenceHash(),
+				service.prepare(new Content("title", "content", "other", null, null, null), BASE_URL).getEquivalenceHash());
+		Assertions.assertNotEquals(prepared.getEquivalenceHash(),
+				service.prepare(new Content("title", "content", null, null, null, null), BASE_URL).getEquivalenceHash());
+		Assertions.assertNotEquals(prepared.getEquivalenceHash(),
+				service.prepare(content("titlec", "ontent"), BASE_URL).getEquivalenceHash());
+	}
+
+	private FeedEntryContent prepared(String title, String content) {
+		return service.prepare(content(title, content), BASE_URL);
+	}
+
+	private Content content(String title, String content) {
+		return new Content(title, content, "author", null, null, null);
+	}
+
+	private FeedEntryContent existingContent(Long id, String title, String content) {
+		FeedEntryContent entryContent = new FeedEntryContent();
+		entryContent.setId(id);
+		entryContent.setTitle(title);
+		entryContent.setTitleHash(Digests.sha1Hex(title));
+		entryContent.setContent(content);
+		entryContent.setContentHash(Digests.sha1Hex(content));
+		entryContent.setAuthor("author");
+		return entryContent;
+	}
+
+	private ContentFingerprint fingerprint(FeedEntryContent c) {
+		return new ContentFingerprint(c.getId(), c.getContentHash(), c.getTitleHash(), c.getTitle(), c.getAuthor(), c.getCategories(),
+				c.getEnclosureUrl(), c.getEnclosureType(), c.getMediaThumbnailUrl(), c.getMediaThumbnailWidth(),
+				c.getMediaThumbnailHeight());
+	}
+
+}
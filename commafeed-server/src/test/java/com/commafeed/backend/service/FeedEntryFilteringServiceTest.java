@@ -1,5 +1,7 @@
 package com.commafeed.backend.service;
 
+import java.time.Duration;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import com.commafeed.backend.model.FeedEntry;
 import com.commafeed.backend.model.FeedEntryContent;
 import com.commafeed.backend.service.FeedEntryFilteringService.FeedEntryFilterException;
+import com.commafeed.backend.service.FeedEntryFilteringService.FilterableEntry;
 
 class FeedEntryFilteringServiceTest {
 
@@ -65,6 +68,48 @@ class FeedEntryFilteringServiceTest {
 		Assertions.assertThrows(FeedEntryFilterException.class, () -> service.filterMatchesEntry("while(true) {}", entry));
 	}
 
+	@Test
+	void loopsAreStopped() {
+		FeedEntryFilterException e = Assertions.assertThrows(FeedEntryFilterException.class,
+				() -> service.filterMatchesEntry("while(true) {}", entry));
+		Assertions.assertTrue(e.getMessage().startsWith("Took too long"));
+
+		// the service is still usable afterwards
+		Assertions.assertDoesNotThrow(() -> service.filterMatchesEntry("author eq 'athou'", entry));
+	}
+
+	@Test
+	void catastrophicBacktrackingDoesNotBlockTheCaller() {
+		// matching takes seconds, the jdk optimizes simpler patterns such as (a+)+b
+		entry.getContent().setTitle("a".repeat(26) + "!");
+
+		FeedEntryFilterException e = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(3), () -> Assertions
+				.assertThrows(FeedEntryFilterException.class, () -> service.filterMatchesEntry("title =~ '((a+)+)+b'", entry)));
+		Assertions.assertTrue(e.getMessage().startsWith("Took too long"));
+	}
+
+	@Test
+	void textIsExtractedInLowercase() {
+		entry.getContent().setTitle("<b>Merge</b> Pull Request");
+		entry.getContent().setCategories("Java");
+
+		FilterableEntry filterable = service.toFilterable(entry);
+		Assertions.assertEquals("merge pull request", filterable.title());
+		Assertions.assertEquals("athou", filterable.author());
+		Assertions.assertEquals("https://github.com/athou/commafeed", filterable.url());
+		Assertions.assertEquals("java", filterable.categories());
+	}
+
+	@Test
+	void compiledFiltersCanBeReused() throws FeedEntryFilterException {
+		FilterableEntry filterable = service.toFilterable(entry);
+
+		// assignments must not leak to the next evaluation
+		Assertions.assertFalse(service.filterMatchesEntry("author = 'other'; author eq 'athou'", filterable));
+		Assertions.assertTrue(service.filterMatchesEntry("author eq 'athou'", filterable));
+		Assertions.assertFalse(service.filterMatchesEntry("author = 'other'; author eq 'athou'", filterable));
+	}
+
 	@Test
 	void handlesNullCorrectly() {
 		entry.setUrl(null);
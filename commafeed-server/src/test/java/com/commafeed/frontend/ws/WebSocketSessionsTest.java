@@ -1,5 +1,6 @@
 package com.commafeed.frontend.ws;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -74,6 +75,19 @@ class WebSocketSessionsTest {
 		Mockito.verifyNoInteractions(session1);
 	}
 
+	@Test
+	void usersWithOpenSessionsAreConnected() {
+		Mockito.when(session1.isOpen()).thenReturn(true);
+
+		webSocketSessions.add(1L, session1);
+		webSocketSessions.add(2L, session2);
+		webSocketSessions.remove(session2);
+
+		Assertions.assertTrue(webSocketSessions.isConnected(1L));
+		Assertions.assertFalse(webSocketSessions.isConnected(2L));
+		Assertions.assertFalse(webSocketSessions.isConnected(3L));
+	}
+
 	private User newUser(Long userId) {
 		User user = new User();
 		user.setId(userId);